@@ -0,0 +1,197 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.client.cli;
+
+import static io.dockstore.client.cli.ArgumentUtility.errorMessage;
+import static io.dockstore.client.cli.ArgumentUtility.out;
+import static io.dockstore.client.cli.Client.CACHE;
+import static io.dockstore.client.cli.Client.CLIENT_ERROR;
+import static io.dockstore.client.cli.Client.HELP;
+import static io.dockstore.client.cli.JCommanderUtility.displayJCommanderSuggestions;
+import static io.dockstore.client.cli.JCommanderUtility.getUnknownParameter;
+import static io.dockstore.client.cli.JCommanderUtility.printJCommanderHelp;
+import static io.dockstore.client.cli.JCommanderUtility.wasErrorDueToUnknownParameter;
+import static io.dockstore.client.cli.nested.AbstractEntryClient.VERIFY;
+import static java.lang.String.join;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.MissingCommandException;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import com.beust.jcommander.Parameters;
+import io.dockstore.common.FileProvisionCache;
+import io.dockstore.common.TabExpansionUtil;
+import java.util.List;
+import java.util.Locale;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Inspect and maintain the launcher's input file cache.
+ */
+public final class CacheClient {
+
+    public static final String STATS = "stats";
+    public static final String PRUNE = "prune";
+    private static final double PERCENT = 100.0;
+
+    private CacheClient() {
+        // disable constructor for utility class
+    }
+
+    /**
+     * @param args
+     * @param configFile
+     */
+    public static boolean handleCommand(List<String> args, INIConfiguration configFile) {
+        String[] argv = args.toArray(new String[args.size()]);
+        JCommander jc = new JCommander();
+        CommandCache commandCache = new CommandCache();
+        JCommander jcCache = JCommanderUtility.addCommand(jc, CACHE, commandCache);
+
+        CommandCacheStats commandCacheStats = new CommandCacheStats();
+        JCommanderUtility.addCommand(jcCache, STATS, commandCacheStats);
+        CommandCachePrune commandCachePrune = new CommandCachePrune();
+        JCommanderUtility.addCommand(jcCache, PRUNE, commandCachePrune);
+        CommandCacheVerify commandCacheVerify = new CommandCacheVerify();
+        JCommanderUtility.addCommand(jcCache, VERIFY, commandCacheVerify);
+        // Not parsing with jc because we know the first command was cache.  jc's purpose is to display help
+        try {
+            jcCache.parse(argv);
+            if (commandCache.help || args.isEmpty()) {
+                printJCommanderHelp(jc, "dockstore", CACHE);
+            } else {
+                switch (jcCache.getParsedCommand()) {
+                case STATS:
+                    if (commandCacheStats.help) {
+                        printJCommanderHelp(jcCache, "dockstore " + CACHE, STATS);
+                    } else {
+                        return handleStats(configFile);
+                    }
+                    break;
+                case PRUNE:
+                    if (commandCachePrune.help) {
+                        printJCommanderHelp(jcCache, "dockstore " + CACHE, PRUNE);
+                    } else {
+                        return handlePrune(configFile, commandCachePrune.maxSize);
+                    }
+                    break;
+                case VERIFY:
+                    if (commandCacheVerify.help) {
+                        printJCommanderHelp(jcCache, "dockstore " + CACHE, VERIFY);
+                    } else {
+                        return handleVerify(configFile);
+                    }
+                    break;
+                default:
+                    // fall through
+                }
+            }
+        } catch (MissingCommandException e) {
+            displayJCommanderSuggestions(jcCache, e.getJCommander().getParsedCommand(), args.get(0), CACHE);
+        } catch (ParameterException e) {
+            if (wasErrorDueToUnknownParameter(e.getMessage())) {
+                String incorrectCommand = getUnknownParameter(e.getMessage());
+                displayJCommanderSuggestions(jcCache, e.getJCommander().getParsedCommand(), incorrectCommand, join(" ", CACHE, e.getJCommander().getParsedCommand()));
+            } else {
+                errorMessage(e.getMessage(), CLIENT_ERROR);
+            }
+        }
+        return true;
+    }
+
+    private static boolean handleStats(INIConfiguration configFile) {
+        FileProvisionCache cache = createCache(configFile);
+        FileProvisionCache.Statistics statistics = cache.getStatistics();
+        StringBuilder builder = new StringBuilder();
+        builder.append("Cache directory\t").append(cache.getCacheDirectory()).append('\n');
+        builder.append("Entries\t").append(cache.getEntryCount()).append('\n');
+        builder.append("Size\t").append(FileUtils.byteCountToDisplaySize(cache.getSize())).append('\n');
+        builder.append("Budget\t").append(cache.getMaxSize() > 0 ? FileUtils.byteCountToDisplaySize(cache.getMaxSize()) : "unlimited").append('\n');
+        builder.append("Eviction policy\t").append(cache.getEvictionPolicy().name().toLowerCase(Locale.ROOT)).append('\n');
+        builder.append("Hits\t").append(statistics.getHits()).append('\n');
+        builder.append("Misses\t").append(statistics.getMisses()).append('\n');
+        builder.append("Hit rate\t").append(String.format(Locale.ROOT, "%.1f%%", statistics.getHitRate() * PERCENT)).append('\n');
+        builder.append("Bytes saved\t").append(FileUtils.byteCountToDisplaySize(statistics.getBytesSaved())).append('\n');
+        builder.append("Evictions\t").append(statistics.getEvictions()).append('\n');
+        builder.append("Bytes evicted\t").append(FileUtils.byteCountToDisplaySize(statistics.getBytesEvicted())).append('\n');
+        out(TabExpansionUtil.aligned(builder.toString()));
+        return true;
+    }
+
+    private static boolean handlePrune(INIConfiguration configFile, String maxSize) {
+        FileProvisionCache cache = createCache(configFile);
+        long budget;
+        try {
+            budget = maxSize == null ? cache.getMaxSize() : FileProvisionCache.parseSize(maxSize);
+        } catch (NumberFormatException e) {
+            errorMessage("Could not parse cache size " + maxSize, CLIENT_ERROR);
+            return true;
+        }
+        if (budget <= 0) {
+            errorMessage("No cache budget, set " + FileProvisionCache.CACHE_MAX_SIZE + " in your config file or use --max-size", CLIENT_ERROR);
+            return true;
+        }
+        long before = cache.getSize();
+        int evicted = cache.prune(budget);
+        out("Evicted " + evicted + " cached files, cache went from " + FileUtils.byteCountToDisplaySize(before) + " to "
+            + FileUtils.byteCountToDisplaySize(cache.getSize()));
+        return true;
+    }
+
+    private static boolean handleVerify(INIConfiguration configFile) {
+        FileProvisionCache.VerifyResult result = createCache(configFile).verify();
+        out("Checked " + result.getChecked() + " cached files: " + result.getCorrupt() + " corrupt and removed, " + result.getMissing()
+            + " missing from disk, " + result.getAdopted() + " added to the index");
+        return true;
+    }
+
+    private static FileProvisionCache createCache(INIConfiguration configFile) {
+        try {
+            return FileProvisionCache.fromConfig(configFile);
+        } catch (IllegalArgumentException e) {
+            errorMessage("Could not read the cache configuration: " + e.getMessage(), CLIENT_ERROR);
+            throw e;
+        }
+    }
+
+    @Parameters(separators = "=", commandDescription = "Inspect and maintain the launcher cache")
+    private static class CommandCache {
+        @Parameter(names = HELP, description = "Prints help for " + CACHE + " command", help = true)
+        private boolean help = false;
+    }
+
+    @Parameters(separators = "=", commandDescription = "Print the size, hit rate, bytes saved and eviction counts of the cache")
+    private static class CommandCacheStats {
+        @Parameter(names = HELP, description = "Prints help for " + STATS + " command", help = true)
+        private boolean help = false;
+    }
+
+    @Parameters(separators = "=", commandDescription = "Evict least recently (or frequently) used files until the cache fits its budget")
+    private static class CommandCachePrune {
+        @Parameter(names = "--max-size", description = "Budget to prune to, in bytes or with a K/M/G/T suffix. Defaults to "
+            + FileProvisionCache.CACHE_MAX_SIZE + " from the config file")
+        private String maxSize = null;
+        @Parameter(names = HELP, description = "Prints help for " + PRUNE + " command", help = true)
+        private boolean help = false;
+    }
+
+    @Parameters(separators = "=", commandDescription = "Check cached files against their checksums and reconcile the cache index")
+    private static class CommandCacheVerify {
+        @Parameter(names = HELP, description = "Prints help for " + VERIFY + " command", help = true)
+        private boolean help = false;
+    }
+}
@@ -58,6 +58,7 @@ import io.dockstore.openapi.client.api.UsersApi;
 import io.dockstore.openapi.client.api.WorkflowsApi;
 import io.dockstore.openapi.client.auth.OAuth;
 import io.dockstore.openapi.client.model.TRSService;
+import io.dockstore.provision.TransferEventBus;
 import io.github.collaboratory.cwl.cwlrunner.CWLRunnerFactory;
 import io.github.collaboratory.cwl.cwlrunner.CWLRunnerInterface;
 import jakarta.ws.rs.ProcessingException;
@@ -79,6 +80,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.configuration2.INIConfiguration;
 import org.apache.commons.io.FileUtils;
@@ -111,6 +113,7 @@ public class Client {
     public static final String WORKFLOW = "workflow";
     public static final String CHECKER = "checker";
     public static final String PLUGIN = "plugin";
+    public static final String CACHE = "cache";
     public static final String DEPS = "deps";
     public static final String DEBUG_FLAG = "--debug";
 
@@ -123,6 +126,8 @@ public class Client {
     public static final String CONFIG = "--config";
     public static final String SCRIPT_FLAG = "--script";
     public static final String CLEAN_CACHE = "--clean-cache";
+    public static final String METADATA_CACHE = "metadata-cache";
+    public static final String METADATA_CACHE_TTL = "metadata-cache-ttl";
     private static ObjectMapper objectMapper;
 
     private static final String DOCKSTORE_CLI_REPO_URL = "https://api.github.com/repos/dockstore/dockstore-cli/releases";
@@ -606,6 +611,7 @@ public class Client {
         out("   " + WORKFLOW + "            Puts dockstore into " + WORKFLOW + " mode.");
         out("   " + CHECKER + "             Puts dockstore into " + CHECKER + " mode.");
         out("   " + PLUGIN + "              Configure and debug plugins.");
+        out("   " + CACHE + "               Inspect and maintain the launcher cache.");
         out("   " + DEPS + "                Print " + TOOL + "/" + WORKFLOW + " runner dependencies.");
         out("   " + YAML + "                Puts dockstore into " + YAML + " mode.");
         out("");
@@ -630,7 +636,7 @@ public class Client {
         out("                       Default: ~/.dockstore/config");
         out("  " + SCRIPT_FLAG + "             Will not check Github for newer versions of Dockstore, or ask for user input");
         out("                       Default: false");
-        out("  " + CLEAN_CACHE + "        Delete the Dockstore launcher cache to save space");
+        out("  " + CLEAN_CACHE + "        Delete the Dockstore launcher and metadata caches to save space");
         printHelpFooter();
     }
 
@@ -679,6 +685,7 @@ public class Client {
         final INIConfiguration configuration = Utilities.parseConfig(getConfigFile());
         final String cacheDirectory = getCacheDirectory(configuration);
         FileUtils.deleteDirectory(new File(cacheDirectory));
+        MetadataCache.forCurrentUser(0).clear();
     }
 
     private void run(String[] argv) {
@@ -702,6 +709,8 @@ public class Client {
         } else {
             SCRIPT.set(false);
         }
+        // scripts get file transfer progress as JSON lines rather than a progress bar
+        TransferEventBus.getInstance().setJsonOutput(SCRIPT.get());
 
         try {
             setupClientEnvironment(args);
@@ -727,6 +736,8 @@ public class Client {
                         targetClient = getWorkflowClient();
                     } else if (PLUGIN.equals(mode)) {
                         handled = PluginClient.handleCommand(args, Utilities.parseConfig(configFile));
+                    } else if (CACHE.equals(mode)) {
+                        handled = CacheClient.handleCommand(args, Utilities.parseConfig(configFile));
                     } else if (SEARCH.equals(mode)) {
                         handled = SearchClient.handleCommand(args, this.extendedGA4GHApi);
                     } else if (CHECKER.equals(mode)) {
@@ -786,7 +797,7 @@ public class Client {
                             break;
                         default:
                             List<String> possibleCommands = new ArrayList<>();
-                            possibleCommands.addAll(Arrays.asList(TOOL, WORKFLOW, CHECKER, PLUGIN, DEPS, YAML, VERSION,
+                            possibleCommands.addAll(Arrays.asList(TOOL, WORKFLOW, CHECKER, PLUGIN, CACHE, DEPS, YAML, VERSION,
                                     SERVER_METADATA, UPGRADE, UPGRADE_STABLE, UPGRADE_UNSTABLE, CLEAN_CACHE));
                             possibleCommands.addAll(getGeneralFlags());
                             invalid("", cmd, possibleCommands);
@@ -811,6 +822,14 @@ public class Client {
         return generalFlags;
     }
 
+    /**
+     * @param config the client configuration
+     * @return how long an entry lookup is used without revalidating it, by default 0 so that changes are always seen
+     */
+    static long getMetadataCacheTtlMillis(INIConfiguration config) {
+        return TimeUnit.SECONDS.toMillis(config.getLong(METADATA_CACHE_TTL, MetadataCache.DEFAULT_TTL_SECONDS));
+    }
+
     /**
      * Setup method called by client and by consonance to setup a Dockstore client
      *
@@ -826,9 +845,14 @@ public class Client {
             err(DEPRECATED_PORT_MESSAGE);
         }
         ApiClient defaultApiClient;
-        defaultApiClient = Configuration.getDefaultApiClient();
-        String cliVersion = getClientVersion();
-        final String userAgent = "Dockstore-CLI/" + cliVersion + "/java";
+        if (config.getBoolean(METADATA_CACHE, true)) {
+            // entry lookups are revalidated with the webservice unless they are younger than the configured TTL
+            defaultApiClient = new MetadataCachingApiClient(MetadataCache.forCurrentUser(getMetadataCacheTtlMillis(config)));
+            Configuration.setDefaultApiClient(defaultApiClient);
+        } else {
+            defaultApiClient = Configuration.getDefaultApiClient();
+        }
+        final String userAgent = getUserAgent();
         defaultApiClient.setUserAgent(userAgent);
 
         OAuth bearer = (OAuth)defaultApiClient.getAuthentication("BEARER");
@@ -873,6 +897,13 @@ public class Client {
         return cliVersion;
     }
 
+    /**
+     * @return the User-Agent sent to the webservice
+     */
+    public static String getUserAgent() {
+        return "Dockstore-CLI/" + getClientVersion() + "/java";
+    }
+
     private INIConfiguration getIniConfiguration(List<String> args) {
         String userHome = System.getProperty("user.home");
         String commandLineConfigFile = optVal(args, CONFIG, userHome + File.separator + ".dockstore" + File.separator + "config");
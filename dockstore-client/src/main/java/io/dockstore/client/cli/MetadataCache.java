@@ -0,0 +1,215 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.client.cli;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import jakarta.ws.rs.HttpMethod;
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientRequestFilter;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.Response;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Stream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An on-disk cache of the workflow and tool lookups made by path, so that repeated launch, info and download commands for the
+ * same entry do not fetch every version of it again.
+ *
+ * <p>
+ * A response younger than the TTL is answered from the cache without contacting the webservice. An older one is revalidated with
+ * If-None-Match or If-Modified-Since, and a 304 is answered from the cache. A response without an ETag or Last-Modified header
+ * cannot be revalidated, so it is only stored when the TTL is positive. Responses are keyed by URL and credentials, so
+ * users sharing a machine or switching tokens never see each other's unpublished entries. Any other request to workflows or
+ * containers, such as a refresh or publish, clears the cache.
+ * </p>
+ */
+public class MetadataCache implements ClientRequestFilter, ClientResponseFilter {
+
+    public static final String CACHE_DIRECTORY = "metadata-cache";
+    public static final long DEFAULT_TTL_SECONDS = 0;
+    private static final Logger LOG = LoggerFactory.getLogger(MetadataCache.class);
+    private static final List<String> CACHED_PATHS = List.of("/workflows/path/", "/containers/path/");
+    private static final List<String> INVALIDATING_PATHS = List.of("/workflows", "/containers");
+    private static final String CACHED_ENTRY = MetadataCache.class.getName() + ".entry";
+    private static final String FROM_CACHE = MetadataCache.class.getName() + ".fromCache";
+    private static final Gson GSON = new Gson();
+
+    private final Path cacheDirectory;
+    private final long ttlMillis;
+
+    /**
+     * @param cacheDirectory where responses are stored, one file each
+     * @param ttlMillis      how long a response is used without revalidating it, 0 to always revalidate
+     */
+    public MetadataCache(Path cacheDirectory, long ttlMillis) {
+        this.cacheDirectory = cacheDirectory;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * @param ttlMillis how long a response is used without revalidating it, 0 to always revalidate
+     * @return the cache shared by every command of the current user
+     */
+    public static MetadataCache forCurrentUser(long ttlMillis) {
+        return new MetadataCache(Paths.get(System.getProperty("user.home"), ".dockstore", CACHE_DIRECTORY), ttlMillis);
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext) {
+        final String path = requestContext.getUri().getPath();
+        if (!HttpMethod.GET.equals(requestContext.getMethod())) {
+            if (INVALIDATING_PATHS.stream().anyMatch(path::contains)) {
+                clear();
+            }
+            return;
+        }
+        if (!isCached(path)) {
+            return;
+        }
+        final Entry entry = load(key(requestContext));
+        if (entry == null) {
+            return;
+        }
+        if (System.currentTimeMillis() - entry.storedMillis < ttlMillis) {
+            requestContext.setProperty(FROM_CACHE, Boolean.TRUE);
+            requestContext.abortWith(Response.ok(entry.body, entry.contentType).build());
+            return;
+        }
+        requestContext.setProperty(CACHED_ENTRY, entry);
+        if (entry.etag != null) {
+            requestContext.getHeaders().putSingle(HttpHeaders.IF_NONE_MATCH, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            requestContext.getHeaders().putSingle(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+        }
+    }
+
+    @Override
+    public void filter(ClientRequestContext requestContext, ClientResponseContext responseContext) throws IOException {
+        if (requestContext.getProperty(FROM_CACHE) != null || !HttpMethod.GET.equals(requestContext.getMethod())
+            || !isCached(requestContext.getUri().getPath())) {
+            return;
+        }
+        final Entry cached = (Entry)requestContext.getProperty(CACHED_ENTRY);
+        if (responseContext.getStatus() == Response.Status.NOT_MODIFIED.getStatusCode() && cached != null) {
+            responseContext.setStatus(Response.Status.OK.getStatusCode());
+            responseContext.getHeaders().putSingle(HttpHeaders.CONTENT_TYPE, cached.contentType);
+            responseContext.setEntityStream(new ByteArrayInputStream(cached.body.getBytes(StandardCharsets.UTF_8)));
+            cached.storedMillis = System.currentTimeMillis();
+            save(key(requestContext), cached);
+        } else if (responseContext.getStatus() == Response.Status.OK.getStatusCode() && responseContext.hasEntity()) {
+            final String etag = responseContext.getHeaderString(HttpHeaders.ETAG);
+            final String lastModified = responseContext.getHeaderString(HttpHeaders.LAST_MODIFIED);
+            if (etag == null && lastModified == null && ttlMillis <= 0) {
+                // it would never be used, and the one it replaces is out of date
+                if (cached != null) {
+                    remove(key(requestContext));
+                }
+                return;
+            }
+            final byte[] body;
+            try (InputStream entityStream = responseContext.getEntityStream()) {
+                body = entityStream.readAllBytes();
+            }
+            responseContext.setEntityStream(new ByteArrayInputStream(body));
+            Entry entry = new Entry();
+            entry.body = new String(body, StandardCharsets.UTF_8);
+            entry.contentType = Objects.toString(responseContext.getMediaType(), null);
+            entry.etag = etag;
+            entry.lastModified = lastModified;
+            entry.storedMillis = System.currentTimeMillis();
+            save(key(requestContext), entry);
+        }
+    }
+
+    /**
+     * Forgets every stored response.
+     */
+    public void clear() {
+        if (Files.isDirectory(cacheDirectory)) {
+            try (Stream<Path> files = Files.list(cacheDirectory)) {
+                files.forEach(file -> FileUtils.deleteQuietly(file.toFile()));
+            } catch (IOException e) {
+                LOG.warn("Could not clear metadata cache " + cacheDirectory, e);
+            }
+        }
+    }
+
+    private static boolean isCached(String path) {
+        return CACHED_PATHS.stream().anyMatch(path::contains);
+    }
+
+    private static String key(ClientRequestContext requestContext) {
+        return DigestUtils.sha256Hex(requestContext.getUri() + "\n" + Objects.toString(requestContext.getHeaderString(HttpHeaders.AUTHORIZATION), ""));
+    }
+
+    private Entry load(String key) {
+        final Path file = cacheDirectory.resolve(key + ".json");
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Entry entry = GSON.fromJson(reader, Entry.class);
+            return entry == null || entry.body == null ? null : entry;
+        } catch (IOException | JsonParseException e) {
+            LOG.warn("Could not read metadata cache entry " + file + ", ignoring it", e);
+            return null;
+        }
+    }
+
+    private void remove(String key) {
+        FileUtils.deleteQuietly(cacheDirectory.resolve(key + ".json").toFile());
+    }
+
+    private void save(String key, Entry entry) {
+        try {
+            Files.createDirectories(cacheDirectory);
+            Path temporary = Files.createTempFile(cacheDirectory, key, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                GSON.toJson(entry, writer);
+            }
+            Files.move(temporary, cacheDirectory.resolve(key + ".json"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not write metadata cache entry to " + cacheDirectory, e);
+        }
+    }
+
+    private static class Entry {
+        private String body;
+        private String contentType;
+        private String etag;
+        private String lastModified;
+        private long storedMillis;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.client.cli;
+
+import io.dockstore.openapi.client.ApiClient;
+
+/**
+ * An ApiClient that answers entry lookups from a {@link MetadataCache}. setDebugging replaces the underlying jersey Client, so
+ * the cache is registered again each time.
+ */
+public class MetadataCachingApiClient extends ApiClient {
+
+    private final MetadataCache metadataCache;
+
+    public MetadataCachingApiClient(MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+        getHttpClient().register(metadataCache);
+    }
+
+    @Override
+    public ApiClient setDebugging(boolean debugging) {
+        super.setDebugging(debugging);
+        if (metadataCache != null) {
+            getHttpClient().register(metadataCache);
+        }
+        return this;
+    }
+}
@@ -17,53 +17,204 @@ package io.dockstore.client.cli;
 
 import static io.dockstore.client.cli.nested.AbstractEntryClient.PUBLISH;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.gson.Gson;
 import io.dockstore.openapi.client.ApiClient;
+import io.dockstore.openapi.client.ApiException;
 import io.dockstore.openapi.client.model.PublishRequest;
+import jakarta.ws.rs.client.Invocation;
 import jakarta.ws.rs.core.GenericType;
+import jakarta.ws.rs.core.Response;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 
 public final class SwaggerUtility {
 
+    private static final String BEARER = "BEARER";
+    private static final String ZIP_TYPE = "application/zip";
+    // below this many files per thread, starting threads costs more than it saves
+    private static final int MIN_FILES_PER_THREAD = 8;
+
     private SwaggerUtility() {
 
     }
 
     public static <T> T getArbitraryURL(String url, GenericType<T> type, ApiClient client) {
         return client
-            .invokeAPI(url, "GET", new ArrayList<>(), null, new HashMap<>(), new HashMap<>(), "application/zip", "application/zip",
-                new String[] { "BEARER" }, type);
+            .invokeAPI(url, "GET", new ArrayList<>(), null, new HashMap<>(), new HashMap<>(), ZIP_TYPE, ZIP_TYPE,
+                new String[] { BEARER }, type);
+    }
+
+    /**
+     * Downloads a zip and extracts it as it arrives, so that the zip is never held in memory.
+     *
+     * @param url            the path of the zip, relative to the base path of the client
+     * @param client         the client whose base path and credentials are used
+     * @param zipFile        where the zip is also saved as it is read, null to not keep the zip
+     * @param unzipDirectory where the zip is extracted, null to only save it
+     */
+    public static void downloadZip(String url, ApiClient client, File zipFile, File unzipDirectory) throws IOException {
+        Map<String, String> headerParams = new HashMap<>();
+        headerParams.put("User-Agent", Client.getUserAgent());
+        client.getAuthentication(BEARER).applyToParams(new ArrayList<>(), headerParams);
+        Invocation.Builder invocationBuilder = client.getHttpClient().target(client.getBasePath() + url).request(ZIP_TYPE);
+        headerParams.forEach(invocationBuilder::header);
+
+        try (Response response = invocationBuilder.get()) {
+            if (response.getStatusInfo().getFamily() != Response.Status.Family.SUCCESSFUL) {
+                throw new ApiException(response.getStatus(), response.hasEntity() ? response.readEntity(String.class) : "error");
+            }
+            try (InputStream body = response.readEntity(InputStream.class);
+                OutputStream zipCopy = zipFile == null ? NullOutputStream.INSTANCE : new BufferedOutputStream(new FileOutputStream(zipFile));
+                InputStream tee = new TeeInputStream(body, zipCopy)) {
+                if (unzipDirectory != null) {
+                    unzipStream(tee, unzipDirectory);
+                }
+                // the rest of the zip, such as its central directory, is only needed in the copy
+                IOUtils.consume(tee);
+            }
+        }
+    }
+
+    /**
+     * Extracts the files of a zip as they are read from a stream.
+     *
+     * @param inputStream    the zip, left open
+     * @param unzipDirectory the directory to extract into
+     * @throws IOException if the zip cannot be read or one of its files would be extracted outside of unzipDirectory
+     */
+    public static void unzipStream(InputStream inputStream, File unzipDirectory) throws IOException {
+        final Path root = unzipDirectory.toPath().toAbsolutePath().normalize();
+        // not closed, that would close inputStream as well
+        ZipInputStream zipInputStream = new ZipInputStream(CloseShieldInputStream.wrap(inputStream));
+        for (ZipEntry zipEntry = zipInputStream.getNextEntry(); zipEntry != null; zipEntry = zipInputStream.getNextEntry()) {
+            final Path target = resolveZipEntry(root, zipEntry);
+            if (zipEntry.isDirectory()) {
+                Files.createDirectories(target);
+            } else {
+                Files.createDirectories(target.getParent());
+                Files.copy(zipInputStream, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    /**
+     * @return where a zip entry should be extracted to, guarding against entries such as ../../.bashrc ("zip slip")
+     */
+    static Path resolveZipEntry(Path root, ZipEntry zipEntry) throws IOException {
+        final Path target = root.resolve(zipEntry.getName()).normalize();
+        if (!target.startsWith(root)) {
+            throw new IOException("Zip entry " + zipEntry.getName() + " is outside of " + root);
+        }
+        return target;
     }
 
     public static void unzipFile(File zipFile, File unzipDirectory) throws IOException {
         unzipFile(zipFile, unzipDirectory, false);
     }
 
+    /**
+     * Extracts a zip file. The directory tree is created up front, then the files are decompressed concurrently, which matters
+     * for entries with thousands of files.
+     *
+     * @param zipFile        the zip to extract
+     * @param unzipDirectory the directory to extract into
+     * @param deleteZip      delete the zip afterwards, even if it could not be extracted
+     * @throws IOException if the zip cannot be read or one of its files would be extracted outside of unzipDirectory
+     */
     public static void unzipFile(File zipFile, File unzipDirectory, boolean deleteZip) throws IOException {
         try (ZipFile zipFileActual = new ZipFile(zipFile)) {
-            zipFileActual.stream().forEach((ZipEntry zipEntry) -> {
-                if (!zipEntry.isDirectory()) {
-                    String fileName = zipEntry.getName();
-                    File newFile = new File(unzipDirectory, fileName);
-                    try {
-                        newFile.getParentFile().mkdirs();
-                        FileUtils.copyInputStreamToFile(zipFileActual.getInputStream(zipEntry), newFile);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    } finally {
-                        if (deleteZip) {
-                            FileUtils.deleteQuietly(zipFile);
-                        }
-                    }
+            final Path root = unzipDirectory.toPath().toAbsolutePath().normalize();
+            // every entry is checked before anything is written, and a file listed twice is extracted once, last one wins
+            final Map<Path, ZipEntry> files = new LinkedHashMap<>();
+            final Set<Path> directories = new TreeSet<>();
+            for (ZipEntry zipEntry : Collections.list(zipFileActual.entries())) {
+                final Path target = resolveZipEntry(root, zipEntry);
+                if (zipEntry.isDirectory()) {
+                    directories.add(target);
+                } else {
+                    directories.add(target.getParent());
+                    files.remove(target);
+                    files.put(target, zipEntry);
                 }
-            });
+            }
+            for (Path directory : directories) {
+                Files.createDirectories(directory);
+            }
+            extractFiles(zipFileActual, files);
+        } finally {
+            if (deleteZip) {
+                FileUtils.deleteQuietly(zipFile);
+            }
+        }
+    }
+
+    private static void extractFiles(ZipFile zipFile, Map<Path, ZipEntry> files) throws IOException {
+        final int threads = Math.min(Runtime.getRuntime().availableProcessors(), files.size() / MIN_FILES_PER_THREAD);
+        if (threads <= 1) {
+            for (Map.Entry<Path, ZipEntry> file : files.entrySet()) {
+                extractFile(zipFile, file.getValue(), file.getKey());
+            }
+            return;
+        }
+        // ZipFile can be read from many threads, each entry is inflated independently
+        final ExecutorService executor = Executors.newFixedThreadPool(threads,
+            new ThreadFactoryBuilder().setNameFormat("unzip-%d").setDaemon(true).build());
+        try {
+            List<Future<?>> extractions = new ArrayList<>();
+            for (Map.Entry<Path, ZipEntry> file : files.entrySet()) {
+                extractions.add(executor.submit(() -> {
+                    extractFile(zipFile, file.getValue(), file.getKey());
+                    return null;
+                }));
+            }
+            for (Future<?> extraction : extractions) {
+                extraction.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting " + zipFile.getName());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException)e.getCause();
+            }
+            throw new IOException("Could not extract " + zipFile.getName(), e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void extractFile(ZipFile zipFile, ZipEntry zipEntry, Path target) throws IOException {
+        try (InputStream inputStream = zipFile.getInputStream(zipEntry)) {
+            Files.copy(inputStream, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
 
@@ -50,13 +50,23 @@ import static io.dockstore.client.cli.JCommanderUtility.displayJCommanderSuggest
 import static io.dockstore.client.cli.JCommanderUtility.getUnknownParameter;
 import static io.dockstore.client.cli.JCommanderUtility.wasErrorDueToUnknownParameter;
 import static io.dockstore.client.cli.YamlVerifyUtility.YAML;
+import static io.dockstore.client.cli.nested.WesCommandParser.ALL;
 import static io.dockstore.client.cli.nested.WesCommandParser.ATTACH;
+import static io.dockstore.client.cli.nested.WesCommandParser.BATCH;
+import static io.dockstore.client.cli.nested.WesCommandParser.BATCH_OUTPUT;
+import static io.dockstore.client.cli.nested.WesCommandParser.BUNDLE_ATTACHMENTS;
+import static io.dockstore.client.cli.nested.WesCommandParser.CONCURRENCY;
 import static io.dockstore.client.cli.nested.WesCommandParser.COUNT;
 import static io.dockstore.client.cli.nested.WesCommandParser.ENTRY;
+import static io.dockstore.client.cli.nested.WesCommandParser.FOLLOW;
 import static io.dockstore.client.cli.nested.WesCommandParser.ID;
+import static io.dockstore.client.cli.nested.WesCommandParser.ID_FILE;
 import static io.dockstore.client.cli.nested.WesCommandParser.INLINE_WORKFLOW;
+import static io.dockstore.client.cli.nested.WesCommandParser.INTERVAL;
 import static io.dockstore.client.cli.nested.WesCommandParser.JSON;
 import static io.dockstore.client.cli.nested.WesCommandParser.PAGE_TOKEN;
+import static io.dockstore.client.cli.nested.WesCommandParser.RATE;
+import static io.dockstore.client.cli.nested.WesCommandParser.STATE;
 import static io.dockstore.client.cli.nested.WesCommandParser.VERBOSE;
 import static io.dockstore.client.cli.nested.WesCommandParser.WES_URL;
 import static io.dockstore.common.DescriptorLanguage.CWL;
@@ -85,6 +95,7 @@ import com.google.common.io.Files;
 import com.google.gson.Gson;
 import com.google.gson.JsonParseException;
 import io.cwl.avro.CWL;
+import io.dockstore.client.cli.ArgumentUtility;
 import io.dockstore.client.cli.CheckerClient;
 import io.dockstore.client.cli.Client;
 import io.dockstore.common.DescriptorLanguage;
@@ -105,6 +116,7 @@ import io.openapi.wes.client.model.RunListResponse;
 import io.openapi.wes.client.model.RunLog;
 import io.openapi.wes.client.model.RunStatus;
 import io.openapi.wes.client.model.ServiceInfo;
+import io.openapi.wes.client.model.State;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -116,12 +128,16 @@ import java.nio.file.Paths;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -184,6 +200,7 @@ public abstract class AbstractEntryClient<T> {
     public static final String LOGS = "logs";
     public static final String CANCEL = "cancel";
     public static final String SERVICE_INFO = "service-info";
+    public static final String WATCH = "watch";
     private static final Logger LOG = LoggerFactory.getLogger(AbstractEntryClient.class);
     protected boolean isAdmin = false;
 
@@ -191,6 +208,7 @@ public abstract class AbstractEntryClient<T> {
     boolean ignoreChecksums = false;
 
     private WesRequestData wesRequestData = null;
+    private WorkflowExecutionServiceApi workflowExecutionServiceApi = null;
 
     static String getCleanedDescription(String description) {
         description = MoreObjects.firstNonNull(description, "");
@@ -206,8 +224,9 @@ public abstract class AbstractEntryClient<T> {
         return wesRequestData;
     }
 
-    public void setWesRequestData(WesRequestData wrd) {
+    public synchronized void setWesRequestData(WesRequestData wrd) {
         this.wesRequestData = wrd;
+        this.workflowExecutionServiceApi = null;
     }
 
     boolean isLocalEntry() {
@@ -405,8 +424,10 @@ public abstract class AbstractEntryClient<T> {
 
     /**
      * Refresh all entries of this type.
+     *
+     * @param refresher refreshes the entries concurrently and reports progress
      */
-    protected abstract void refreshAllEntries();
+    protected abstract void refreshAllEntries(ConcurrentRefresher refresher);
 
     /**
      * Refresh a specific entry of this type.
@@ -585,12 +606,23 @@ public abstract class AbstractEntryClient<T> {
     private void refresh(List<String> args) {
         if (containsHelpRequest(args)) {
             refreshHelp();
-        } else if (!args.isEmpty()) {
-            final String toolpath = reqVal(args, ENTRY);
-            refreshTargetEntry(toolpath);
         } else {
+            final String concurrency = optVal(args, CONCURRENCY, String.valueOf(ConcurrentRefresher.DEFAULT_CONCURRENCY));
+            final String rate = optVal(args, RATE, String.valueOf(ConcurrentRefresher.DEFAULT_RATE));
+            if (!args.isEmpty()) {
+                final String toolpath = reqVal(args, ENTRY);
+                refreshTargetEntry(toolpath);
+                return;
+            }
+            final ConcurrentRefresher refresher;
+            try {
+                refresher = new ConcurrentRefresher(Integer.parseInt(concurrency), Double.parseDouble(rate), ArgumentUtility::out);
+            } catch (IllegalArgumentException e) {
+                errorMessage(MessageFormat.format("{0} and {1} must be positive numbers", CONCURRENCY, RATE), CLIENT_ERROR);
+                return;
+            }
             // check user info after usage so that users can get usage without live webservice
-            refreshAllEntries();
+            refreshAllEntries(refresher);
         }
     }
 
@@ -1090,13 +1122,17 @@ public abstract class AbstractEntryClient<T> {
 
 
     /**
-     * Creates a WES API object and sets the endpoint.
+     * Creates a WES API object and sets the endpoint. The object is created once per WES request data and may be used from
+     * several threads at once, so that concurrent requests share its connections.
      */
-    public WorkflowExecutionServiceApi getWorkflowExecutionServiceApi() {
+    public synchronized WorkflowExecutionServiceApi getWorkflowExecutionServiceApi() {
 
         if (this.getWesRequestData() == null) {
             errorMessage("The WES request data object was not created. This must be populated to generate the client APIs", GENERIC_ERROR);
         }
+        if (workflowExecutionServiceApi != null) {
+            return workflowExecutionServiceApi;
+        }
 
         WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi = new WorkflowExecutionServiceApi();
 
@@ -1110,7 +1146,6 @@ public abstract class AbstractEntryClient<T> {
         // Delete these next two lines when Swagger Codegen is fixed
         ApiClientExtended wesApiClient = new ApiClientExtended(wesRequestData);
         clientWorkflowExecutionServiceApi.setApiClient(wesApiClient);
-        wesApiClient.getHttpClient().register(WesChecksumFilter.class);
 
         wesApiClient.setBasePath(wesRequestData.getUrl());
 
@@ -1120,6 +1155,7 @@ public abstract class AbstractEntryClient<T> {
         // TODO Might want to override the default User Agent header with a custom one to make tracking WES requests easier.
 
         clientWorkflowExecutionServiceApi.setApiClient(wesApiClient);
+        workflowExecutionServiceApi = clientWorkflowExecutionServiceApi;
         return clientWorkflowExecutionServiceApi;
     }
 
@@ -1135,6 +1171,13 @@ public abstract class AbstractEntryClient<T> {
     abstract void wesLaunch(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, String entry, boolean inlineWorkflow,
         String paramsPath, List<String> filePaths, boolean verbose);
 
+    /**
+     * Attempts to launch a workflow once for each parameter file listed in a batch file
+     * @param clientWorkflowExecutionServiceApi The WES API client
+     * @param commandLaunch The parsed launch command, including the batch file, rate and concurrency
+     */
+    abstract void wesLaunchBatch(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, WesCommandParser.CommandLaunch commandLaunch);
+
     public void launchWithArgs(final String entry, final String localEntry, final String jsonRun, final String yamlRun, final String wdlOutput, final boolean ignoreChecksumFlag, final String uuid) {
         // Does nothing for tools.
     }
@@ -1173,6 +1216,29 @@ public abstract class AbstractEntryClient<T> {
         }
     }
 
+    /**
+     * This will follow the logs of a run until it finishes, printing only what changed since the previous poll as JSON lines
+     * @param clientWorkflowExecutionServiceApi The API client
+     * @param commandRunLogs The parsed logs command
+     */
+    private void wesFollowLogs(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, WesCommandParser.CommandRunLogs commandRunLogs) {
+        if (commandRunLogs.getInterval() <= 0) {
+            errorMessage(INTERVAL + " must be positive", CLIENT_ERROR);
+        }
+        try (WesAsyncClient client = new WesAsyncClient((ApiClientExtended)clientWorkflowExecutionServiceApi.getApiClient())) {
+            WesLogFollower follower = new WesLogFollower(client, TimeUnit.SECONDS.toMillis(commandRunLogs.getInterval()), ArgumentUtility::out);
+            State state = follower.follow(commandRunLogs.getId());
+            if (commandRunLogs.isVerbose()) {
+                out(MessageFormat.format("Run {0} ended in {1}", commandRunLogs.getId(), state));
+            }
+        } catch (io.openapi.wes.client.ApiException e) {
+            LOG.error("Error getting WES run " + LOGS, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while following WES run " + LOGS, e);
+        }
+    }
+
     /**
      * This will attempt to cancel a WES run
      * @param runId The ID of the run we are cancelling
@@ -1224,6 +1290,119 @@ public abstract class AbstractEntryClient<T> {
         }
     }
 
+    /**
+     * This will print runs as JSON lines as their pages arrive, following the page tokens either until every run is printed or
+     * until the requested number of runs in the requested states are printed
+     * @param clientWorkflowExecutionServiceApi The API client
+     * @param commandRunList The parsed list command
+     */
+    private void wesStreamRuns(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, WesCommandParser.CommandRunList commandRunList) {
+        // Without --state every run is printed, including runs the server reports without a state
+        final Set<State> states = commandRunList.getStates() == null ? null : parseStates(commandRunList.getStates());
+        // With --all every matching run is printed and --count is only the page size
+        final long limit = commandRunList.isAll() ? Long.MAX_VALUE : commandRunList.getPageSize();
+        if (commandRunList.getPageSize() <= 0) {
+            errorMessage(COUNT + " must be positive", CLIENT_ERROR);
+        }
+
+        ((ApiClientExtended)clientWorkflowExecutionServiceApi.getApiClient()).setExitOnError(false);
+        ObjectMapper mapper = new ObjectMapper();
+        long printed = 0;
+        try (WesRunIterator runs = new WesRunIterator(clientWorkflowExecutionServiceApi, commandRunList.getPageSize(), commandRunList.getPageToken())) {
+            while (printed < limit && runs.hasNext()) {
+                final RunStatus run = runs.next();
+                if (states == null || states.contains(run.getState())) {
+                    out(mapper.writeValueAsString(run));
+                    printed++;
+                }
+            }
+        } catch (IllegalStateException e) {
+            LOG.error("Error getting WES Run List", e);
+        } catch (JsonProcessingException e) {
+            LOG.error("Unable to " + CONVERT + " WES response object to JSON", e);
+        }
+        if (commandRunList.isVerbose()) {
+            out(MessageFormat.format("Printed {0} runs", printed));
+        }
+    }
+
+    /**
+     * @param stateNames names of WES run states
+     * @return the corresponding states
+     */
+    private static Set<State> parseStates(List<String> stateNames) {
+        Set<State> states = EnumSet.noneOf(State.class);
+        for (String stateName : stateNames) {
+            try {
+                states.add(State.valueOf(stateName.toUpperCase(Locale.ROOT)));
+            } catch (IllegalArgumentException e) {
+                errorMessage(MessageFormat.format("Unknown run state {0}, expected one of {1}", stateName, Arrays.toString(State.values())), CLIENT_ERROR);
+            }
+        }
+        return states;
+    }
+
+    /**
+     * This will follow the status of many runs until each of them finishes, printing their state changes as JSON lines
+     * @param clientWorkflowExecutionServiceApi The API client
+     * @param commandWatch The parsed watch command
+     */
+    private void wesWatch(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, WesCommandParser.CommandWatch commandWatch) {
+        Set<String> runIds = new LinkedHashSet<>();
+        if (commandWatch.getIds() != null) {
+            runIds.addAll(commandWatch.getIds());
+        }
+        if (commandWatch.getIdFile() != null) {
+            runIds.addAll(readRunIds(commandWatch.getIdFile()));
+        }
+        if (runIds.isEmpty()) {
+            errorMessage("Provide the runs to " + WATCH + " with " + ID + " or " + ID_FILE, CLIENT_ERROR);
+        }
+        if (commandWatch.getInterval() <= 0 || commandWatch.getConcurrency() <= 0) {
+            errorMessage(INTERVAL + " and " + CONCURRENCY + " must be positive", CLIENT_ERROR);
+        }
+
+        // A failed poll is retried later rather than ending the watch, up to a limit
+        ((ApiClientExtended)clientWorkflowExecutionServiceApi.getApiClient()).setExitOnError(false);
+        WesRunWatcher watcher = new WesRunWatcher(clientWorkflowExecutionServiceApi, TimeUnit.SECONDS.toMillis(commandWatch.getInterval()),
+            commandWatch.getConcurrency(), ArgumentUtility::out);
+        try {
+            Map<String, State> finished = watcher.watch(runIds);
+            if (commandWatch.isVerbose()) {
+                finished.values().stream().collect(Collectors.groupingBy(State::toString, Collectors.counting()))
+                    .forEach((state, count) -> out(MessageFormat.format("{0} runs ended in {1}", count, state)));
+                watcher.getLostRuns().forEach((runId, reason) -> out(MessageFormat.format("Stopped watching {0}: {1}", runId, reason)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.error("Interrupted while watching WES runs", e);
+        }
+    }
+
+    /**
+     * @param idFile a file with one run ID per line, or the JSON lines written by a batch launch
+     * @return the run IDs in the file
+     */
+    private static List<String> readRunIds(String idFile) {
+        List<String> runIds = new ArrayList<>();
+        try {
+            for (String line : java.nio.file.Files.readAllLines(Paths.get(idFile), StandardCharsets.UTF_8)) {
+                final String trimmed = line.trim();
+                if (trimmed.startsWith("{")) {
+                    JSONObject launched = new JSONObject(trimmed);
+                    if (launched.has("runId")) {
+                        runIds.add(launched.getString("runId"));
+                    }
+                } else if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+                    runIds.add(trimmed);
+                }
+            }
+        } catch (IOException e) {
+            exceptionMessage(e, "Could not read run IDs from " + idFile, IO_ERROR);
+        }
+        return runIds;
+    }
+
     /**
      * Given the parsed command object, determine if we are to print help commands
      * @param wesCommandParser Parse commands
@@ -1252,6 +1431,9 @@ public abstract class AbstractEntryClient<T> {
         } else if (wesCommandParser.commandRunList.isHelp()) {
             wesRunListHelp();
             return true;
+        } else if (wesCommandParser.commandWatch.isHelp()) {
+            wesWatchHelp();
+            return true;
         }
 
         return false;
@@ -1307,6 +1489,15 @@ public abstract class AbstractEntryClient<T> {
             // Depending on the desired WES request, parse input parameters from the command line
             switch (wesCommandParser.jCommander.getParsedCommand()) {
             case LAUNCH:
+                ((ApiClientExtended)clientWorkflowExecutionServiceApi.getApiClient())
+                    .setBundleAttachments(wesCommandParser.commandLaunch.isBundleAttachments());
+                if (wesCommandParser.commandLaunch.getBatch() != null) {
+                    if (wesCommandParser.commandLaunch.getJson() != null) {
+                        errorMessage(JSON + " cannot be combined with " + BATCH + ", list the parameter files in the batch file instead", CLIENT_ERROR);
+                    }
+                    wesLaunchBatch(clientWorkflowExecutionServiceApi, wesCommandParser.commandLaunch);
+                    break;
+                }
                 wesLaunch(clientWorkflowExecutionServiceApi,
                     wesCommandParser.commandLaunch.getEntry(),
                     wesCommandParser.commandLaunch.getInlineWorkflow(),
@@ -1319,8 +1510,12 @@ public abstract class AbstractEntryClient<T> {
                     wesCommandParser.commandStatus.getId());
                 break;
             case LOGS:
-                wesRunLogs(clientWorkflowExecutionServiceApi,
-                    wesCommandParser.commandRunLogs.getId());
+                if (wesCommandParser.commandRunLogs.isFollow()) {
+                    wesFollowLogs(clientWorkflowExecutionServiceApi, wesCommandParser.commandRunLogs);
+                } else {
+                    wesRunLogs(clientWorkflowExecutionServiceApi,
+                        wesCommandParser.commandRunLogs.getId());
+                }
                 break;
             case CANCEL:
                 wesCancel(clientWorkflowExecutionServiceApi,
@@ -1331,10 +1526,17 @@ public abstract class AbstractEntryClient<T> {
                 wesServiceInfo(clientWorkflowExecutionServiceApi);
                 break;
             case LIST:
-                wesListRuns(clientWorkflowExecutionServiceApi,
-                    wesCommandParser.commandRunList.getPageSize(),
-                    wesCommandParser.commandRunList.getPageToken(),
-                    wesCommandParser.commandRunList.isVerbose());
+                if (wesCommandParser.commandRunList.isAll() || wesCommandParser.commandRunList.getStates() != null) {
+                    wesStreamRuns(clientWorkflowExecutionServiceApi, wesCommandParser.commandRunList);
+                } else {
+                    wesListRuns(clientWorkflowExecutionServiceApi,
+                        wesCommandParser.commandRunList.getPageSize(),
+                        wesCommandParser.commandRunList.getPageToken(),
+                        wesCommandParser.commandRunList.isVerbose());
+                }
+                break;
+            case WATCH:
+                wesWatch(clientWorkflowExecutionServiceApi, wesCommandParser.commandWatch);
                 break;
             default:
                 errorMessage("Unknown WES command.", CLIENT_ERROR);
@@ -1598,6 +1800,7 @@ public abstract class AbstractEntryClient<T> {
         out(join(" ", "       dockstore", getEntryType().toLowerCase(), WES, CANCEL, "[parameters]"));
         out(join(" ", "       dockstore", getEntryType().toLowerCase(), WES, SERVICE_INFO, "[parameters]"));
         out(join(" ", "       dockstore", getEntryType().toLowerCase(), WES, "list [parameters]"));
+        out(join(" ", "       dockstore", getEntryType().toLowerCase(), WES, WATCH, "[parameters]"));
         out("");
         out("Description:");
         out(" Sends a request to a Workflow Execution Service (WES) endpoint.");
@@ -1617,6 +1820,11 @@ public abstract class AbstractEntryClient<T> {
         out("  " + JSON + " <json file>                  JSON parameter file for the WES run. This may be reference an attached file");
         out("  " + ATTACH + " <path>, -a <path>          A list of paths to files that should be included in the WES request. (ex. -a <path1> <path2> OR -a <path1> -a <path2>)");
         out("  " + INLINE_WORKFLOW + "                   Inlines workflow files contents directly into the WES HTTP request. This is required for some WES server implementations.");
+        out("  " + BATCH + " <batch file>                A file listing one JSON parameter file per line, a run is launched for each of them");
+        out("  " + BATCH_OUTPUT + " <file>               Where the IDs of runs launched with " + BATCH + " are written as JSON lines, defaults to <batch file>.runs.jsonl");
+        out("  " + RATE + " <runs per second>            The maximum rate at which runs are launched with " + BATCH + ", defaults to 2");
+        out("  " + CONCURRENCY + " <runs>                The maximum number of runs launched at the same time with " + BATCH + ", defaults to 4");
+        out("  " + BUNDLE_ATTACHMENTS + "                Sends all attachments as a single compressed zip archive, for WES servers that extract zip attachments");
         out("");
     }
 
@@ -1652,6 +1860,9 @@ public abstract class AbstractEntryClient<T> {
         out("  Logs, gets the " + VERBOSE + " run " + LOGS + " of a " + getEntryType() + ".");
         out("Required Parameters:");
         out("  " + ID + " <id>                           Id of a run at the WES endpoint, e.g. id returned from the " + LAUNCH + " command");
+        out("Optional Parameters:");
+        out("  " + FOLLOW + "                          Poll until the run finishes, printing only new logs, stdout and stderr as JSON lines");
+        out("  " + INTERVAL + " <seconds>                How often the run is polled with " + FOLLOW + ", defaults to " + WesLogFollower.DEFAULT_INTERVAL_SECONDS);
         out("");
         printWesHelpFooter();
         printHelpFooter();
@@ -1692,6 +1903,29 @@ public abstract class AbstractEntryClient<T> {
         out("Optional Parameters:");
         out("  " + COUNT + "                           The number of runs to list.");
         out("  " + PAGE_TOKEN + "                      A page token provided from a previous list of runs.");
+        out("  " + ALL + "                             Print every run, following the page tokens. " + COUNT + " is then the page size.");
+        out("  " + STATE + " <state> <state> ...         Only print runs in these states, e.g. RUNNING or EXECUTOR_ERROR.");
+        out("  With " + ALL + " or " + STATE + " each run is printed as a JSON line as soon as its page arrives.");
+        out("");
+        printWesHelpFooter();
+        printHelpFooter();
+    }
+
+    private void wesWatchHelp() {
+        printHelpHeader();
+        out(join(" ", "Usage: dockstore", getEntryType().toLowerCase(), WES, WATCH, HELP));
+        out(join(" ", "       dockstore", getEntryType().toLowerCase(), WES, WATCH, "[parameters]"));
+        out("");
+        out("Description:");
+        out("  Follows the " + STATUS + " of many runs until each of them finishes, printing every state change as a JSON line.");
+        out("  Runs that are queued or have not changed in a while are polled less often than running ones.");
+        out("  Runs the WES endpoint cannot find, or whose " + STATUS + " cannot be read " + WesRunWatcher.MAX_FAILED_POLLS
+            + " times in a row, are printed with an error and no longer followed.");
+        out("Parameters:");
+        out("  " + ID + " <id> <id> ...                  Ids of runs at the WES endpoint, e.g. ids returned from the " + LAUNCH + " command");
+        out("  " + ID_FILE + " <file>                    A file listing one run id per line, or the output of " + LAUNCH + " " + BATCH);
+        out("  " + INTERVAL + " <seconds>                How often running runs are polled, defaults to " + WesRunWatcher.DEFAULT_INTERVAL_SECONDS);
+        out("  " + CONCURRENCY + " <runs>                The maximum number of runs polled at the same time, defaults to " + WesRunWatcher.DEFAULT_CONCURRENCY);
         out("");
         printWesHelpFooter();
         printHelpFooter();
@@ -1810,6 +2044,10 @@ public abstract class AbstractEntryClient<T> {
         out("");
         out("Optional Parameters:");
         out("  " + ENTRY + " <entry>         Complete tool path in Dockstore (ex. quay.io/collaboratory/seqware-bwa-workflow)");
+        out("  " + CONCURRENCY + " <number>  When refreshing all, the maximum number of " + getEntryType() + "s refreshed at the same time, defaults to "
+                + ConcurrentRefresher.DEFAULT_CONCURRENCY);
+        out("  " + RATE + " <number>         When refreshing all, the maximum number of " + getEntryType() + "s refreshed per second, defaults to "
+                + ConcurrentRefresher.DEFAULT_RATE);
         printHelpFooter();
     }
 
@@ -16,7 +16,13 @@ import jakarta.ws.rs.core.GenericType;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.text.DateFormat;
 import java.text.MessageFormat;
 import java.text.SimpleDateFormat;
@@ -26,6 +32,9 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.apache.commons.io.FileUtils;
 import org.apache.http.HttpStatus;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
@@ -43,19 +52,61 @@ public class ApiClientExtended extends ApiClient {
     static final String AWS_WES_SERVICE_NAME = "execute-api";
 
     static final String WORKFLOW_PARAMS = "workflow_params";
+    static final String WORKFLOW_ATTACHMENT = "workflow_attachment";
+    static final String ATTACHMENT_BUNDLE_NAME = "workflow_attachment.zip";
+    static final MediaType ZIP_TYPE = new MediaType("application", "zip");
+
+    /**
+     * The request property holding the {@link AwsSigningContext} of a request, read by {@link WesChecksumFilter}.
+     */
+    static final String AWS_SIGNING_CONTEXT = "io.dockstore.wes.awsSigningContext";
 
     final WesRequestData wesRequestData;
-    private Signer.Builder awsAuthSignature = null;
-    private HttpRequest awsHttpRequest = null;
+    private volatile boolean exitOnError = true;
+    private volatile boolean bundleAttachments = false;
 
+    /**
+     * Requests may be made from several threads at once, each request carries its own signing context
+     * so that nothing about an in-flight request is stored on the client.
+     *
+     * @param wesRequestData the WES endpoint and credentials
+     */
     public ApiClientExtended(WesRequestData wesRequestData) {
         this.wesRequestData = wesRequestData;
+        getHttpClient().register(new WesChecksumFilter(wesRequestData));
     }
 
     public WesRequestData getWesRequestData() {
         return wesRequestData;
     }
 
+    /**
+     * @param exit false to throw an ApiException when a request fails instead of printing an error and exiting,
+     *             for callers that make many requests and report failures themselves
+     */
+    public void setExitOnError(boolean exit) {
+        this.exitOnError = exit;
+    }
+
+    /**
+     * @param bundle true to send all workflow attachments of a request as a single zip archive instead of one part each
+     */
+    public void setBundleAttachments(boolean bundle) {
+        this.bundleAttachments = bundle;
+    }
+
+    boolean isBundleAttachments() {
+        return bundleAttachments;
+    }
+
+    /**
+     * @param headerParams The headers of one request
+     * @return The headers to send with the request, apart from the Authorization header
+     */
+    Map<String, String> requestHeaders(Map<String, String> headerParams) {
+        return mergeHeaders(this.wesRequestData.usesAwsCredentials(), this.wesRequestData.requiresAwsSessionHeader(), headerParams);
+    }
+
     /**
      *
      * @param key Multi-part form body name
@@ -113,6 +164,71 @@ public class ApiClientExtended extends ApiClient {
         }
     }
 
+    /**
+     * Packs attachments into a single zip body part. The archive is compressed one attachment at a time into a temporary file,
+     * which is deleted once the request body has been read from it, so neither the attachments nor the archive are held in memory.
+     * An {@link AttachmentBundle} is sent as it is.
+     *
+     * @param multiPart Multipart form
+     * @param key Multi part form body name
+     * @param attachments The attachments, each stored under its name in the WES request
+     * @throws ApiException if the archive could not be written
+     */
+    void createBundlePart(MultiPart multiPart, String key, List<?> attachments) throws ApiException {
+        final AttachmentBundle prebuiltBundle = AttachmentBundle.of(attachments);
+        if (prebuiltBundle != null) {
+            FormDataContentDisposition contentDisp = FormDataContentDisposition.name(key)
+                .fileName(ATTACHMENT_BUNDLE_NAME).size(prebuiltBundle.length()).build();
+            multiPart.bodyPart(new FormDataBodyPart(contentDisp, prebuiltBundle, ZIP_TYPE));
+            return;
+        }
+        Path bundle = null;
+        try {
+            bundle = Files.createTempFile("dockstore-wes-attachments", ".zip");
+            writeBundle(bundle, attachments);
+            FormDataContentDisposition contentDisp = FormDataContentDisposition.name(key)
+                .fileName(ATTACHMENT_BUNDLE_NAME).size(Files.size(bundle)).build();
+            multiPart.bodyPart(new FormDataBodyPart(contentDisp, Files.newInputStream(bundle, StandardOpenOption.DELETE_ON_CLOSE), ZIP_TYPE));
+        } catch (IOException e) {
+            FileUtils.deleteQuietly(bundle == null ? null : bundle.toFile());
+            throw new ApiException(e);
+        }
+    }
+
+    /**
+     * @param bundle Where to write the archive
+     * @param attachments The files to archive, each stored under its name
+     */
+    static void writeBundle(Path bundle, List<?> attachments) throws IOException {
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(bundle)))) {
+            for (Object attachment : attachments) {
+                File file = (File)attachment;
+                zipOutputStream.putNextEntry(new ZipEntry(file.getName()));
+                Files.copy(file.toPath(), zipOutputStream);
+                zipOutputStream.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * Attachments already packed by {@link #writeBundle}, so that requests sending the same attachments do not pack them again.
+     * The owner of the archive deletes it once no more requests will send it.
+     */
+    static final class AttachmentBundle extends File {
+
+        AttachmentBundle(Path bundle) {
+            super(bundle.toString());
+        }
+
+        /**
+         * @param attachments The workflow attachments of a request
+         * @return the archive if the attachments are one that was already packed, null otherwise
+         */
+        static AttachmentBundle of(List<?> attachments) {
+            return attachments.size() == 1 && attachments.get(0) instanceof AttachmentBundle ? (AttachmentBundle)attachments.get(0) : null;
+        }
+    }
+
     /**
      * Serialize the given Java object into string entity according the given
      * Content-Type (only JSON is supported for now).
@@ -132,6 +248,10 @@ public class ApiClientExtended extends ApiClient {
                     createBodyPart(multiPart, param.getKey(), param.getValue());
                 } else if (param.getValue() instanceof List) {
                     List formListObject = (List)param.getValue();
+                    if (bundleAttachments && WORKFLOW_ATTACHMENT.equals(param.getKey()) && !formListObject.isEmpty()) {
+                        createBundlePart(multiPart, param.getKey(), formListObject);
+                        continue;
+                    }
                     for (int i = 0; i < formListObject.size(); i++) {
                         createBodyPart(multiPart, param.getKey(), formListObject.get(i));
                     }
@@ -210,9 +330,7 @@ public class ApiClientExtended extends ApiClient {
                 throw new ApiException(HttpStatus.SC_INTERNAL_SERVER_ERROR, "unknown method type " + method);
             }
 
-            statusCode = response.getStatusInfo().getStatusCode();
-            responseHeaders = buildResponseHeaders(response);
-
+            // statusCode and responseHeaders are not recorded, they would be shared by every request in flight on this client
             if (response.getStatus() == Response.Status.NO_CONTENT.getStatusCode()) {
                 return null;
             } else if (response.getStatusInfo().getFamily() == Response.Status.Family.SUCCESSFUL) {
@@ -239,6 +357,9 @@ public class ApiClientExtended extends ApiClient {
                     respBody);
             }
         } catch (ProcessingException ex) {
+            if (!exitOnError) {
+                throw new ApiException(ex);
+            }
             // This could be caused by a failed Jersey Interceptor/filter, missing message body writers, or other IO exceptions.
             // Mainly, this error is thrown when the provided WES URL is invalid. For more details, see:
             // https://docs.oracle.com/javaee/7/api/index.html?javax/ws/rs/ProcessingException.html
@@ -246,6 +367,9 @@ public class ApiClientExtended extends ApiClient {
                 ex.getMessage()), Client.CONNECTION_ERROR);
             return null;
         } catch (ApiException ex) {
+            if (!exitOnError) {
+                throw ex;
+            }
             // Different WES servers provide error messages with different levels of verbosity/usefulness, so include both a default
             // message and the message provided from the WES server in the printed error.
             switch (ex.getCode()) {
@@ -327,52 +451,42 @@ public class ApiClientExtended extends ApiClient {
     }
 
     /**
-     * This will set the appropriate variables so the final Authorization header may be calculated in a Jersey hook
+     * This will create what is needed so the final Authorization header may be calculated in a Jersey hook
      *
      * @param target The target endpoint
      * @param method The HTTP method (GET, POST, etc ...)
      * @param allHeaders A list of header parameters custom to this request
+     * @return the signing context for this request
+     */
+    public AwsSigningContext createAwsSigningContext(WebTarget target, String method, Map<String, String> allHeaders) {
+        return createAwsSigningContext(target.getUri(), method, allHeaders);
+    }
+
+    /**
+     * @param uri The request URI
+     * @param method The HTTP method (GET, POST, etc ...)
+     * @param allHeaders The headers that will be sent with the request
+     * @return the signing context for this request
      */
-    public void setAwsHeaderCalculationData(WebTarget target, String method, Map<String, String> allHeaders) {
-        HttpRequest request = new HttpRequest(method, target.getUri());
+    public AwsSigningContext createAwsSigningContext(URI uri, String method, Map<String, String> allHeaders) {
+        HttpRequest request = new HttpRequest(method, uri);
 
         // Our signature object. We will add all necessary headers to this request that comprise the 'canonical' HTTP request.
         // This will then be signed alongside a hash of the body content (if there is a body).
         Signer.Builder authSignature = Signer.builder()
             .awsCredentials(new AwsCredentials(this.wesRequestData.getAwsAccessKey(), this.wesRequestData.getAwsSecretKey()))
             .region(this.wesRequestData.getAwsRegion())
-            .header(HttpHeaders.HOST, target.getUri().getHost()); // Have to manually set the Host header as it's required when signing
+            .header(HttpHeaders.HOST, uri.getHost()); // Have to manually set the Host header as it's required when signing
 
         // add all the headers to the signature object
         for (Map.Entry<String, String> mapEntry : allHeaders.entrySet()) {
             authSignature.header(mapEntry.getKey(), mapEntry.getValue());
         }
 
-        // Not ideal, but we need to save some of the signature creation objects so we have the necessary information
+        // We need to keep some of the signature creation objects so we have the necessary information
         // to calculate the Authorization header for requests with a payload. This isn't calculable until we're already
         // making the request with jersey.
-        setAwsAuthMetadata(authSignature, request);
-    }
-
-    /**
-     * Sets metadata for calculating an AWS Authorization header later in the request process.
-     *
-     * @param authSignature The builder which creates the final request
-     * @param request An HttpRequest object that holds the AWS service type and URI
-     */
-    private void setAwsAuthMetadata(Signer.Builder authSignature, HttpRequest request) {
-        this.awsAuthSignature = authSignature;
-        this.awsHttpRequest = request;
-    }
-
-    /**
-     * Returns an AWS SigV4 String based on some request metadata and a sha256 of the payload content.
-     *
-     * @param contentSha256 A sha256 checksum of the request payload.
-     * @return A SigV4 string that should be set as the Authorization header of an AWS HTTP request
-     */
-    public String generateAwsContentSignature(String contentSha256) {
-        return awsAuthSignature.build(awsHttpRequest, AWS_WES_SERVICE_NAME, contentSha256).getSignature();
+        return new AwsSigningContext(authSignature, request);
     }
 
     /**
@@ -399,18 +513,36 @@ public class ApiClientExtended extends ApiClient {
             invocationBuilder.header(mapEntry.getKey(), mapEntry.getValue());
         }
 
-        // If this request has credentials and is to an AWS endpoint, we need to set some signature calculation data.
+        // If this request has credentials and is to an AWS endpoint, we need to attach some signature calculation data to it.
         // This will allow the jersey hook (WesChecksumFilter.java) to correctly calculate the Authorization header.
         if (this.wesRequestData.hasCredentials() && requiresAwsHeaders) {
-            setAwsHeaderCalculationData(target, method, mergedHeaderMap);
+            invocationBuilder.property(AWS_SIGNING_CONTEXT, createAwsSigningContext(target, method, mergedHeaderMap));
         }
 
-        // Point the jersey filter to this object so we can calculate the Authorization header if needed
-        WesChecksumFilter.setClientExtended(this);
-
         // This invocation has no Authorization header set, that is handle in a Jersey hook
         return invocationBuilder;
     }
 
+    /**
+     * Everything needed to sign one request once the sha256 of its payload is known.
+     */
+    public static final class AwsSigningContext {
+        private final Signer.Builder authSignature;
+        private final HttpRequest request;
 
+        private AwsSigningContext(Signer.Builder authSignature, HttpRequest request) {
+            this.authSignature = authSignature;
+            this.request = request;
+        }
+
+        /**
+         * Returns an AWS SigV4 String based on some request metadata and a sha256 of the payload content.
+         *
+         * @param contentSha256 A sha256 checksum of the request payload.
+         * @return A SigV4 string that should be set as the Authorization header of an AWS HTTP request
+         */
+        public String sign(String contentSha256) {
+            return authSignature.build(request, AWS_WES_SERVICE_NAME, contentSha256).getSignature();
+        }
+    }
 }
@@ -0,0 +1,107 @@
+package io.dockstore.client.cli.nested;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Refreshes many entries at once. At most a fixed number of refreshes are in flight, and new ones are started at a limited rate
+ * so that a user with hundreds of entries does not flood the webservice or GitHub. A progress line is printed as each refresh
+ * finishes, then a summary of the failures.
+ */
+final class ConcurrentRefresher {
+
+    static final int DEFAULT_CONCURRENCY = 4;
+    static final double DEFAULT_RATE = 2;
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentRefresher.class);
+
+    private final int concurrency;
+    private final double rate;
+    private final Consumer<String> output;
+
+    /**
+     * @param concurrency the maximum number of refreshes in flight
+     * @param rate        the maximum number of refreshes started per second
+     * @param output      where progress and the summary are printed
+     */
+    ConcurrentRefresher(int concurrency, double rate, Consumer<String> output) {
+        if (concurrency <= 0 || rate <= 0) {
+            throw new IllegalArgumentException("The concurrency and rate must be positive");
+        }
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.output = output;
+    }
+
+    /**
+     * @param entryType the kind of entry, for messages
+     * @param entries   the entries to refresh
+     * @param pathOf    the path of an entry, for messages
+     * @param refresh   refreshes one entry and returns the updated entry
+     * @return the updated entries that were refreshed, in the order of entries
+     */
+    <T, R> List<R> refreshAll(String entryType, List<T> entries, Function<T, String> pathOf, Function<T, R> refresh) {
+        final RateLimiter rateLimiter = RateLimiter.create(rate);
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+            new ThreadFactoryBuilder().setNameFormat("refresh-%d").setDaemon(true).build());
+        final AtomicInteger finished = new AtomicInteger();
+        final Map<String, String> failures = new LinkedHashMap<>();
+        final List<R> refreshed = new ArrayList<>();
+        try {
+            List<Future<Optional<R>>> results = new ArrayList<>();
+            for (T entry : entries) {
+                final String path = pathOf.apply(entry);
+                results.add(executor.submit(() -> {
+                    rateLimiter.acquire();
+                    try {
+                        final R updated = refresh.apply(entry);
+                        output.accept(MessageFormat.format("[{0}/{1}] Refreshed {2}", finished.incrementAndGet(), entries.size(), path));
+                        return Optional.ofNullable(updated);
+                    } catch (RuntimeException e) {
+                        LOG.debug("Error refreshing " + path, e);
+                        final String message = e.getMessage() != null ? e.getMessage() : e.toString();
+                        synchronized (failures) {
+                            failures.put(path, message);
+                        }
+                        output.accept(MessageFormat.format("[{0}/{1}] Could not refresh {2}: {3}", finished.incrementAndGet(), entries.size(), path,
+                            message));
+                        return Optional.empty();
+                    }
+                }));
+            }
+            for (Future<Optional<R>> result : results) {
+                result.get().ifPresent(refreshed::add);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while refreshing " + entryType, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Could not refresh " + entryType, e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        output.accept(MessageFormat.format("Refreshed {0} of {1} {2}", entries.size() - failures.size(), entries.size(), entryType));
+        if (!failures.isEmpty()) {
+            output.accept(MessageFormat.format("Could not refresh {0} {1}:", failures.size(), entryType));
+            // report the failures in the order the entries were given, not the order they finished in
+            entries.stream().map(pathOf).filter(failures::containsKey)
+                .forEach(path -> output.accept(MessageFormat.format("  {0}: {1}", path, failures.get(path))));
+        }
+        return refreshed;
+    }
+}
@@ -62,10 +62,8 @@ import io.dockstore.openapi.client.model.Tag;
 import io.dockstore.openapi.client.model.ToolDescriptor;
 import io.dockstore.openapi.client.model.User;
 import io.openapi.wes.client.api.WorkflowExecutionServiceApi;
-import jakarta.ws.rs.core.GenericType;
 import java.io.File;
 import java.io.IOException;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -76,7 +74,6 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.validator.routines.EmailValidator;
 import org.slf4j.Logger;
@@ -639,7 +636,7 @@ public class ToolClient extends AbstractEntryClient<DockstoreTool> {
         return Optional.empty();
     }
 
-    protected void refreshAllEntries() {
+    protected void refreshAllEntries(ConcurrentRefresher refresher) {
         try {
             User user = usersApi.getUser();
             if (user == null) {
@@ -647,21 +644,12 @@ public class ToolClient extends AbstractEntryClient<DockstoreTool> {
             }
 
             out("Getting existing tools");
-            final List<DockstoreTool> dockstoreTools = usersApi.userContainers(user.getId());
-            final List<DockstoreTool> containers = dockstoreTools.stream()
+            final List<DockstoreTool> dockstoreTools = usersApi.userContainers(user.getId()).stream()
                     // Skip hosted tools as well as other tools that don't have git url (SEAB-1393)
                     .filter(dockstoreTool -> StringUtils.isNotEmpty(dockstoreTool.getGitUrl()))
-                    .map(dockstoreTool -> {
-                        out(MessageFormat.format("Refreshing {0}", dockstoreTool.getToolPath()));
-                        try {
-                            return containersApi.refresh(dockstoreTool.getId());
-                        } catch (ApiException ex) {
-                            exceptionMessage(ex, "", 0);
-                            return null;
-                        }
-                    })
-                    .filter(Objects::nonNull)
                     .collect(Collectors.toList());
+            final List<DockstoreTool> containers = refresher.refreshAll("tools", dockstoreTools, DockstoreTool::getToolPath,
+                    dockstoreTool -> containersApi.refresh(dockstoreTool.getId()));
 
             out("YOUR UPDATED TOOLS");
             printLineBreak();
@@ -712,19 +700,15 @@ public class ToolClient extends AbstractEntryClient<DockstoreTool> {
             Long versionId = first.get().getId();
             // https://github.com/dockstore/dockstore/issues/1712 client seems to use jersey logging which is not controlled from logback
             containersApi.getApiClient().setDebugging(false);
-            byte[] arbitraryURL = SwaggerUtility
-                .getArbitraryURL("/containers/" + container.getId() + "/zip/" + versionId, new GenericType<byte[]>() {
-                }, containersApi.getApiClient());
-            containersApi.getApiClient().setDebugging(Client.DEBUG.get());
             try {
-                File zipFile = new File(zipFilename(container));
-                FileUtils.writeByteArrayToFile(zipFile, arbitraryURL, false);
-                if (unzip) {
-                    SwaggerUtility.unzipFile(zipFile, directory);
-                }
+                // the zip is saved as before while it is extracted
+                SwaggerUtility.downloadZip("/containers/" + container.getId() + "/zip/" + versionId, containersApi.getApiClient(),
+                    new File(zipFilename(container)), unzip ? directory : null);
                 return new File(directory, type == ToolDescriptor.TypeEnum.CWL ? first.get().getCwlPath() : first.get().getWdlPath());
             } catch (IOException e) {
                 throw new RuntimeException("could not write zip file to disk, out of space?");
+            } finally {
+                containersApi.getApiClient().setDebugging(Client.DEBUG.get());
             }
         } else {
             throw new RuntimeException("version not found");
@@ -1177,6 +1161,16 @@ public class ToolClient extends AbstractEntryClient<DockstoreTool> {
         throw new UnsupportedOperationException("WES " + LAUNCH + " does not currently support tools. Please " + LAUNCH + " a workflow instead.");
     }
 
+    /**
+     * Does nothing currently, as tools are not supported in WES
+     * @param clientWorkflowExecutionServiceApi The WES API client
+     * @param commandLaunch The parsed launch command
+     */
+    void wesLaunchBatch(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, WesCommandParser.CommandLaunch commandLaunch) {
+        // Only supports workflows for the moment
+        throw new UnsupportedOperationException("WES " + LAUNCH + " does not currently support tools. Please " + LAUNCH + " a workflow instead.");
+    }
+
     @Override
     public Client getClient() {
         return client;
@@ -38,6 +38,22 @@ public class WebserviceWorkflowClient {
      * @return
      */
     public Workflow findAndGetDockstoreWorkflowByPath(String entryPath) {
+        Workflow workflow = findDockstoreWorkflowByPath(entryPath);
+        if (workflow == null) {
+            errorMessage("No workflow found with path " + entryPath, Client.ENTRY_NOT_FOUND);
+            return null;
+        }
+        return workflow;
+    }
+
+    /**
+     * Like {@link #findAndGetDockstoreWorkflowByPath(String)}, but returns null instead of exiting when there is no such workflow.
+     * A version in the entry path limits the versions of a published workflow to that one.
+     *
+     * @param entryPath Path of the apptool or bioworkflow, optionally followed by a version
+     * @return the workflow, null if none was found
+     */
+    public Workflow findDockstoreWorkflowByPath(String entryPath) {
         List<Supplier<Workflow>> workflowSuppliers = new ArrayList<>();
         if (searchUnauthenticated) {
             workflowSuppliers.add(getDockstoreBioworkflowByPath(entryPath));
@@ -49,12 +65,7 @@ public class WebserviceWorkflowClient {
         if (searchAppTool) {
             workflowSuppliers.add(getAuthenticatedDockstoreAppToolByPath(entryPath));
         }
-        Workflow workflow = workflowSuppliers.stream().map(Supplier::get).filter(Objects::nonNull).findFirst().orElse(null);
-        if (workflow == null) {
-            errorMessage("No workflow found with path " + entryPath, Client.ENTRY_NOT_FOUND);
-            return null;
-        }
-        return workflow;
+        return workflowSuppliers.stream().map(Supplier::get).filter(Objects::nonNull).findFirst().orElse(null);
     }
 
     private Supplier<Workflow> getDockstoreBioworkflowByPath(String entryPath) {
@@ -92,7 +103,8 @@ public class WebserviceWorkflowClient {
 
     private Workflow getAuthenticatedDockstoreWorkflowByPath(WorkflowSubClass workflowSubClass, String entryPath) {
         try {
-            Workflow workflow = workflowsApi.getWorkflowByPath(entryPath, workflowSubClass, include);
+            // there is no way to ask for a single version here, so any version in the entry path is dropped
+            Workflow workflow = workflowsApi.getWorkflowByPath(entryPath.split(":")[0], workflowSubClass, include);
             if (workflowSubClass.equals(WorkflowSubClass.APPTOOL)) {
                 this.setFoundAppTool(true);
             }
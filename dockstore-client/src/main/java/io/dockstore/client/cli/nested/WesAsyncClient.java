@@ -0,0 +1,501 @@
+package io.dockstore.client.cli.nested;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.openapi.wes.client.ApiException;
+import io.openapi.wes.client.model.RunId;
+import io.openapi.wes.client.model.RunListResponse;
+import io.openapi.wes.client.model.RunLog;
+import io.openapi.wes.client.model.RunStatus;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.http.HttpStatus;
+
+/**
+ * A non-blocking variant of the generated WorkflowExecutionServiceApi for callers that embed the client and keep many requests
+ * in flight, such as an orchestrator polling thousands of runs.
+ *
+ * <p>
+ * Requests are sent with {@link HttpClient#sendAsync}, so a request waiting on the server holds a pooled connection rather than
+ * a thread. The base path, default headers and credentials (bearer token or AWS SigV4) are taken from the
+ * {@link ApiClientExtended} of the blocking client, so both clients talk to the same server in the same way. At most
+ * maxInFlight requests are sent at once, the rest wait in a queue without a thread.
+ * </p>
+ *
+ * <p>
+ * Redirects are followed here rather than by the HttpClient, so that the credentials of the WES endpoint are never sent to
+ * another origin. Once a redirect leaves the origin, the rest of the chain is requested without them.
+ * </p>
+ *
+ * <p>
+ * Failed requests complete their future exceptionally with an {@link ApiException}, the client never prints or exits.
+ * </p>
+ */
+public class WesAsyncClient implements AutoCloseable {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    private static final int CALLBACK_THREADS = 4;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final String CRLF = "\r\n";
+    private static final String APPLICATION_JSON = "application/json";
+    private static final String TEXT_PLAIN = "text/plain";
+    private static final String OCTET_STREAM = "application/octet-stream";
+    private static final int MAX_REDIRECTS = 5;
+    private static final int SC_PERMANENT_REDIRECT = 308;
+    private static final Set<Integer> REDIRECT_CODES = Set.of(HttpStatus.SC_MOVED_PERMANENTLY, HttpStatus.SC_MOVED_TEMPORARILY, HttpStatus.SC_SEE_OTHER,
+        HttpStatus.SC_TEMPORARY_REDIRECT, SC_PERMANENT_REDIRECT);
+    // Headers set by java.net.http itself, which refuses requests that set them
+    private static final Set<String> RESTRICTED_HEADERS = Set.of("connection", "content-length", "expect", "host", "upgrade");
+
+    private final ApiClientExtended apiClient;
+    private final int maxInFlight;
+    private final ExecutorService executor;
+    private final HttpClient httpClient;
+    private final ObjectMapper mapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param apiClient The client of the blocking WorkflowExecutionServiceApi, providing the endpoint and credentials
+     * @param maxInFlight The maximum number of requests sent at the same time
+     */
+    public WesAsyncClient(ApiClientExtended apiClient, int maxInFlight) {
+        if (maxInFlight <= 0) {
+            throw new IllegalArgumentException("maxInFlight must be positive");
+        }
+        this.apiClient = apiClient;
+        this.maxInFlight = maxInFlight;
+        this.executor = Executors.newFixedThreadPool(CALLBACK_THREADS, new ThreadFactoryBuilder().setNameFormat("wes-async-%d").setDaemon(true).build());
+        this.httpClient = HttpClient.newBuilder().executor(executor).connectTimeout(CONNECT_TIMEOUT).followRedirects(HttpClient.Redirect.NEVER).build();
+    }
+
+    public WesAsyncClient(ApiClientExtended apiClient) {
+        this(apiClient, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public CompletableFuture<RunStatus> getRunStatus(String runId) {
+        return send("GET", "/runs/" + encode(runId) + "/status", null, RunStatus.class);
+    }
+
+    public CompletableFuture<RunLog> getRunLog(String runId) {
+        return send("GET", "/runs/" + encode(runId), null, RunLog.class);
+    }
+
+    public CompletableFuture<RunId> cancelRun(String runId) {
+        return send("POST", "/runs/" + encode(runId) + "/cancel", null, RunId.class);
+    }
+
+    /**
+     * @param pageSize The number of runs per page, null for the server's default
+     * @param pageToken The token of the page to list, null for the first page
+     */
+    public CompletableFuture<RunListResponse> listRuns(Long pageSize, String pageToken) {
+        StringBuilder path = new StringBuilder("/runs");
+        String separator = "?";
+        if (pageSize != null) {
+            path.append(separator).append("page_size=").append(pageSize);
+            separator = "&";
+        }
+        if (pageToken != null) {
+            path.append(separator).append("page_token=").append(encode(pageToken));
+        }
+        return send("GET", path.toString(), null, RunListResponse.class);
+    }
+
+    /**
+     * Takes the same arguments as WorkflowExecutionServiceApi#runWorkflow. The multipart body is spooled to a temporary file,
+     * hashing it on the way for AWS requests, and sent from there.
+     */
+    @SuppressWarnings("checkstyle:ParameterNumber")
+    public CompletableFuture<RunId> runWorkflow(File workflowParams, String workflowType, String workflowTypeVersion, String tags,
+        String workflowEngineParameters, String workflowUrl, List<File> workflowAttachment) {
+        Map<String, Object> formParams = new TreeMap<>();
+        putIfNotNull(formParams, ApiClientExtended.WORKFLOW_PARAMS, workflowParams);
+        putIfNotNull(formParams, "workflow_type", workflowType);
+        putIfNotNull(formParams, "workflow_type_version", workflowTypeVersion);
+        putIfNotNull(formParams, "tags", tags);
+        putIfNotNull(formParams, "workflow_engine_parameters", workflowEngineParameters);
+        putIfNotNull(formParams, "workflow_url", workflowUrl);
+        putIfNotNull(formParams, ApiClientExtended.WORKFLOW_ATTACHMENT, workflowAttachment);
+        return send("POST", "/runs", formParams, RunId.class);
+    }
+
+    /**
+     * Reads a stdout or stderr log of a run from an offset onwards. Log URLs on the WES server are requested with the credentials
+     * of the WES endpoint, as the WES specification asks, while URLs elsewhere (such as presigned bucket URLs) are requested
+     * without them.
+     *
+     * @param url The stdout or stderr URL of a run or task log, relative URLs are resolved against the base path
+     * @param offset The number of bytes already read
+     * @return The bytes after the offset, empty if there are none yet or the log is not available yet
+     */
+    public CompletableFuture<byte[]> getLogRange(String url, long offset) {
+        return enqueue(() -> {
+            final URI uri;
+            try {
+                uri = URI.create(apiClient.getBasePath() + "/").resolve(url);
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(new ApiException(e));
+            }
+            Map<String, String> headerParams = new TreeMap<>();
+            headerParams.put("Range", "bytes=" + offset + "-");
+            final RequestSpec spec = new RequestSpec("GET", HttpRequest.BodyPublishers.noBody(), headerParams, DigestUtils.sha256Hex(""));
+            return sendFollowingRedirects(spec, uri, isWesOrigin(uri), HttpResponse.BodyHandlers.ofByteArray(), 0)
+                .thenApply(response -> logRange(response, offset));
+        });
+    }
+
+    /**
+     * Stops the threads that complete futures. Requests still in flight may never complete.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> send(String method, String path, Map<String, Object> formParams, Class<T> returnType) {
+        return enqueue(() -> {
+            Path spool = null;
+            final URI uri;
+            final RequestSpec spec;
+            try {
+                spool = formParams == null ? null : Files.createTempFile("wes-async-request", ".body");
+                uri = URI.create(apiClient.getBasePath() + path);
+                spec = buildRequest(method, formParams, spool);
+            } catch (IOException | RuntimeException e) {
+                FileUtils.deleteQuietly(spool == null ? null : spool.toFile());
+                return CompletableFuture.failedFuture(new ApiException(e));
+            }
+            final Path body = spool;
+            return sendFollowingRedirects(spec, uri, true, HttpResponse.BodyHandlers.ofString(), 0)
+                .whenComplete((response, error) -> {
+                    if (body != null) {
+                        FileUtils.deleteQuietly(body.toFile());
+                    }
+                })
+                .thenApply(response -> deserialize(response, returnType));
+        });
+    }
+
+    private RequestSpec buildRequest(String method, Map<String, Object> formParams, Path body) throws IOException {
+        Map<String, String> headerParams = new TreeMap<>();
+        headerParams.put("Accept", APPLICATION_JSON);
+        String contentSha256 = DigestUtils.sha256Hex("");
+        HttpRequest.BodyPublisher publisher = HttpRequest.BodyPublishers.noBody();
+        if (formParams != null) {
+            final String boundary = "dockstore-" + UUID.randomUUID();
+            headerParams.put("Content-Type", "multipart/form-data; boundary=" + boundary);
+            final MessageDigest digest = DigestUtils.getSha256Digest();
+            try (OutputStream outputStream = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(body)), digest)) {
+                writeMultipart(outputStream, boundary, formParams);
+            }
+            contentSha256 = Hex.encodeHexString(digest.digest());
+            publisher = HttpRequest.BodyPublishers.ofFile(body);
+        }
+
+        return new RequestSpec(method, publisher, headerParams, contentSha256);
+    }
+
+    /**
+     * Sends a request and follows its redirects. A 303, or a 301 or 302 of a request other than GET, is followed with a GET as
+     * the HttpClient would. The credentials are only sent while every request of the chain is on the same origin.
+     *
+     * @param authenticated true to send the credentials of the WES endpoint with this request
+     * @param redirects the number of redirects followed so far
+     */
+    private <T> CompletableFuture<HttpResponse<T>> sendFollowingRedirects(RequestSpec spec, URI uri, boolean authenticated,
+        HttpResponse.BodyHandler<T> bodyHandler, int redirects) {
+        final HttpRequest request;
+        try {
+            if (authenticated) {
+                request = newRequestBuilder(spec.method, uri, spec.publisher, spec.headerParams, spec.contentSha256).build();
+            } else {
+                HttpRequest.Builder builder = HttpRequest.newBuilder(uri).method(spec.method, spec.publisher);
+                spec.headerParams.forEach(builder::header);
+                request = builder.build();
+            }
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(new ApiException(e));
+        }
+        return httpClient.sendAsync(request, bodyHandler).thenCompose(response -> {
+            final Optional<String> location = response.headers().firstValue("Location");
+            if (!REDIRECT_CODES.contains(response.statusCode()) || location.isEmpty() || redirects >= MAX_REDIRECTS) {
+                return CompletableFuture.completedFuture(response);
+            }
+            final URI next;
+            try {
+                next = uri.resolve(location.get());
+            } catch (IllegalArgumentException e) {
+                return CompletableFuture.completedFuture(response);
+            }
+            final boolean keepsMethod = response.statusCode() == HttpStatus.SC_TEMPORARY_REDIRECT || response.statusCode() == SC_PERMANENT_REDIRECT
+                || (response.statusCode() != HttpStatus.SC_SEE_OTHER && "GET".equals(spec.method));
+            return sendFollowingRedirects(keepsMethod ? spec : spec.asGet(), next, authenticated && sameOrigin(uri, next), bodyHandler, redirects + 1);
+        });
+    }
+
+    /**
+     * @return A request with the default headers and credentials of the WES endpoint
+     */
+    private HttpRequest.Builder newRequestBuilder(String method, URI uri, HttpRequest.BodyPublisher publisher, Map<String, String> headerParams,
+        String contentSha256) {
+        final WesRequestData wesRequestData = apiClient.getWesRequestData();
+        final Map<String, String> headers = apiClient.requestHeaders(headerParams);
+        headers.keySet().removeIf(name -> RESTRICTED_HEADERS.contains(name.toLowerCase(Locale.ROOT)));
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).method(method, publisher);
+        headers.forEach(builder::header);
+        if (wesRequestData.hasCredentials()) {
+            builder.header("Authorization", wesRequestData.usesAwsCredentials()
+                ? apiClient.createAwsSigningContext(uri, method, headers).sign(contentSha256)
+                : wesRequestData.getBearerToken());
+        }
+        return builder;
+    }
+
+    /**
+     * Writes the parts the same way ApiClientExtended#createBodyPart does: files are sent as file parts, except for the
+     * workflow parameters which are sent as a JSON value.
+     */
+    private void writeMultipart(OutputStream outputStream, String boundary, Map<String, Object> formParams) throws IOException {
+        for (Map.Entry<String, Object> param : formParams.entrySet()) {
+            final String key = param.getKey();
+            if (param.getValue() instanceof List) {
+                List<?> files = (List<?>)param.getValue();
+                if (apiClient.isBundleAttachments() && ApiClientExtended.WORKFLOW_ATTACHMENT.equals(key) && !files.isEmpty()) {
+                    writeBundlePart(outputStream, boundary, key, files);
+                } else {
+                    for (Object file : files) {
+                        writeFilePart(outputStream, boundary, key, ((File)file).getName(), OCTET_STREAM, ((File)file).toPath());
+                    }
+                }
+            } else if (param.getValue() instanceof File) {
+                final File file = (File)param.getValue();
+                if (ApiClientExtended.WORKFLOW_PARAMS.equals(key)) {
+                    writePartHeader(outputStream, boundary, "form-data; name=\"" + key + "\"", APPLICATION_JSON);
+                    Files.copy(file.toPath(), outputStream);
+                    write(outputStream, CRLF);
+                } else {
+                    writeFilePart(outputStream, boundary, key, file.getName(), OCTET_STREAM, file.toPath());
+                }
+            } else {
+                final String value = String.valueOf(param.getValue());
+                final boolean json = "tags".equals(key) || "workflow_engine_parameters".equals(key);
+                writePartHeader(outputStream, boundary, "form-data; name=\"" + key + "\"", json ? APPLICATION_JSON : TEXT_PLAIN);
+                write(outputStream, value + CRLF);
+            }
+        }
+        write(outputStream, "--" + boundary + "--" + CRLF);
+    }
+
+    private void writeBundlePart(OutputStream outputStream, String boundary, String key, List<?> files) throws IOException {
+        final ApiClientExtended.AttachmentBundle prebuiltBundle = ApiClientExtended.AttachmentBundle.of(files);
+        if (prebuiltBundle != null) {
+            writeFilePart(outputStream, boundary, key, ApiClientExtended.ATTACHMENT_BUNDLE_NAME, ApiClientExtended.ZIP_TYPE.toString(),
+                prebuiltBundle.toPath());
+            return;
+        }
+        final Path bundle = Files.createTempFile("dockstore-wes-attachments", ".zip");
+        try {
+            ApiClientExtended.writeBundle(bundle, files);
+            writeFilePart(outputStream, boundary, key, ApiClientExtended.ATTACHMENT_BUNDLE_NAME, ApiClientExtended.ZIP_TYPE.toString(), bundle);
+        } finally {
+            FileUtils.deleteQuietly(bundle.toFile());
+        }
+    }
+
+    private static void writeFilePart(OutputStream outputStream, String boundary, String key, String fileName, String contentType, Path path)
+        throws IOException {
+        writePartHeader(outputStream, boundary, "form-data; name=\"" + key + "\"; filename=\"" + fileName.replace("\"", "\\\"") + "\"", contentType);
+        Files.copy(path, outputStream);
+        write(outputStream, CRLF);
+    }
+
+    private static void writePartHeader(OutputStream outputStream, String boundary, String contentDisposition, String contentType) throws IOException {
+        write(outputStream, "--" + boundary + CRLF
+            + "Content-Disposition: " + contentDisposition + CRLF
+            + "Content-Type: " + contentType + CRLF
+            + CRLF);
+    }
+
+    private static void write(OutputStream outputStream, String value) throws IOException {
+        outputStream.write(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private <T> T deserialize(HttpResponse<String> response, Class<T> returnType) {
+        try {
+            if (response.statusCode() == HttpStatus.SC_NO_CONTENT) {
+                return null;
+            }
+            if (response.statusCode() < HttpStatus.SC_OK || response.statusCode() >= HttpStatus.SC_MULTIPLE_CHOICES) {
+                throw new ApiException(response.statusCode(), response.body(), response.headers().map(), response.body());
+            }
+            return response.body() == null || response.body().isEmpty() ? null : mapper.readValue(response.body(), returnType);
+        } catch (ApiException e) {
+            throw new CompletionExceptionWrapper(e);
+        } catch (IOException e) {
+            throw new CompletionExceptionWrapper(new ApiException(e));
+        }
+    }
+
+    /**
+     * Servers that ignore the Range header send the whole log, which is cut at the offset here instead.
+     */
+    private static byte[] logRange(HttpResponse<byte[]> response, long offset) {
+        final int statusCode = response.statusCode();
+        final byte[] body = response.body() == null ? new byte[0] : response.body();
+        if (statusCode == HttpStatus.SC_PARTIAL_CONTENT) {
+            return body;
+        }
+        if (statusCode == HttpStatus.SC_OK) {
+            return offset >= body.length ? new byte[0] : Arrays.copyOfRange(body, (int)offset, body.length);
+        }
+        if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE || statusCode == HttpStatus.SC_NOT_FOUND) {
+            // nothing after the offset yet, or the log is not available until the task finishes
+            return new byte[0];
+        }
+        final String message = new String(body, StandardCharsets.UTF_8);
+        throw new CompletionExceptionWrapper(new ApiException(statusCode, message, response.headers().map(), message));
+    }
+
+    private boolean isWesOrigin(URI uri) {
+        return sameOrigin(URI.create(apiClient.getBasePath() + "/"), uri);
+    }
+
+    private static boolean sameOrigin(URI base, URI uri) {
+        return Objects.equals(base.getScheme(), uri.getScheme()) && Objects.equals(base.getHost(), uri.getHost()) && base.getPort() == uri.getPort();
+    }
+
+    /**
+     * Sends a request once fewer than maxInFlight requests are in flight. The request is built on the callback threads, so
+     * neither the caller nor the thread completing an earlier request waits while a request body is written, and a request
+     * that fails before it is sent does not start the next one from within drain.
+     */
+    private <T> CompletableFuture<T> enqueue(Supplier<CompletableFuture<T>> request) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        pending.add(() -> {
+            final CompletableFuture<CompletableFuture<T>> sent;
+            try {
+                sent = CompletableFuture.supplyAsync(request, executor);
+            } catch (RejectedExecutionException e) {
+                // The client was closed
+                inFlight.decrementAndGet();
+                result.completeExceptionally(toApiException(e));
+                return;
+            }
+            sent.thenCompose(Function.identity()).whenComplete((value, error) -> {
+                inFlight.decrementAndGet();
+                drain();
+                if (error != null) {
+                    result.completeExceptionally(toApiException(error));
+                } else {
+                    result.complete(value);
+                }
+            });
+        });
+        drain();
+        return result;
+    }
+
+    private void drain() {
+        while (!pending.isEmpty()) {
+            final int current = inFlight.get();
+            if (current >= maxInFlight) {
+                return;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                final Runnable next = pending.poll();
+                if (next == null) {
+                    inFlight.decrementAndGet();
+                } else {
+                    next.run();
+                }
+            }
+        }
+    }
+
+    private static ApiException toApiException(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof CompletionExceptionWrapper) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof ApiException ? (ApiException)cause : new ApiException(cause);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    private static void putIfNotNull(Map<String, Object> formParams, String key, Object value) {
+        if (value != null && !(value instanceof List && ((List<?>)value).isEmpty())) {
+            formParams.put(key, value);
+        }
+    }
+
+    /**
+     * What is needed to build a request again for another URL, with or without the credentials of the WES endpoint.
+     */
+    private static final class RequestSpec {
+        private final String method;
+        private final HttpRequest.BodyPublisher publisher;
+        private final Map<String, String> headerParams;
+        private final String contentSha256;
+
+        private RequestSpec(String method, HttpRequest.BodyPublisher publisher, Map<String, String> headerParams, String contentSha256) {
+            this.method = method;
+            this.publisher = publisher;
+            this.headerParams = headerParams;
+            this.contentSha256 = contentSha256;
+        }
+
+        private RequestSpec asGet() {
+            Map<String, String> getHeaders = new TreeMap<>(headerParams);
+            getHeaders.remove("Content-Type");
+            return new RequestSpec("GET", HttpRequest.BodyPublishers.noBody(), getHeaders, DigestUtils.sha256Hex(""));
+        }
+    }
+
+    /**
+     * Carries a checked ApiException out of a completion stage, unwrapped again before it reaches the caller.
+     */
+    private static final class CompletionExceptionWrapper extends RuntimeException {
+        private CompletionExceptionWrapper(ApiException cause) {
+            super(cause);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package io.dockstore.client.cli.nested;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers the sha256 of files attached to WES requests, keyed by absolute path and invalidated when the size or modification
+ * time of a file changes, so that repeated submissions of the same attachments do not hash them again.
+ *
+ * <p>
+ * The manifest is rewritten atomically by {@link #save()}. Concurrent dockstore processes may lose each other's entries, which
+ * only means those files are hashed again next time.
+ * </p>
+ */
+final class WesAttachmentManifest {
+
+    static final String MANIFEST_FILENAME = "wes-attachments.json";
+    private static final Logger LOG = LoggerFactory.getLogger(WesAttachmentManifest.class);
+    private static final Gson GSON = new Gson();
+
+    private final Path manifestPath;
+    private ManifestFile manifestFile = new ManifestFile();
+    private boolean changed;
+
+    WesAttachmentManifest(Path manifestPath) {
+        this.manifestPath = manifestPath;
+        load();
+    }
+
+    /**
+     * @return the manifest shared by every WES launch of the current user
+     */
+    static WesAttachmentManifest forCurrentUser() {
+        return new WesAttachmentManifest(Paths.get(System.getProperty("user.home"), ".dockstore", MANIFEST_FILENAME));
+    }
+
+    /**
+     * @param file an attachment
+     * @return the sha256 of the file's contents, from the manifest if the file is unchanged since it was last hashed
+     */
+    synchronized String sha256(File file) throws IOException {
+        final Path path = file.toPath().toAbsolutePath();
+        final long size = Files.size(path);
+        final long lastModified = Files.getLastModifiedTime(path).toMillis();
+        Entry entry = manifestFile.entries.get(path.toString());
+        if (entry != null && entry.size == size && entry.lastModified == lastModified) {
+            return entry.sha256;
+        }
+        entry = new Entry();
+        entry.size = size;
+        entry.lastModified = lastModified;
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            entry.sha256 = DigestUtils.sha256Hex(inputStream);
+        }
+        manifestFile.entries.put(path.toString(), entry);
+        changed = true;
+        return entry.sha256;
+    }
+
+    /**
+     * Forgets files that no longer exist and writes the manifest if anything changed.
+     */
+    synchronized void save() {
+        changed |= manifestFile.entries.keySet().removeIf(path -> !Files.isRegularFile(Paths.get(path)));
+        if (!changed) {
+            return;
+        }
+        try {
+            Files.createDirectories(manifestPath.getParent());
+            Path temporary = Files.createTempFile(manifestPath.getParent(), MANIFEST_FILENAME, ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                GSON.toJson(manifestFile, writer);
+            }
+            Files.move(temporary, manifestPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            changed = false;
+        } catch (IOException e) {
+            LOG.warn("Could not write attachment manifest " + manifestPath, e);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(manifestPath)) {
+            return;
+        }
+        try (Reader reader = Files.newBufferedReader(manifestPath, StandardCharsets.UTF_8)) {
+            ManifestFile loaded = GSON.fromJson(reader, ManifestFile.class);
+            if (loaded != null && loaded.entries != null) {
+                manifestFile = loaded;
+            }
+        } catch (IOException | JsonParseException e) {
+            LOG.warn("Could not read attachment manifest " + manifestPath + ", starting a new one", e);
+        }
+    }
+
+    private static class Entry {
+        private long size;
+        private long lastModified;
+        private String sha256;
+    }
+
+    private static class ManifestFile {
+        private Map<String, Entry> entries = new HashMap<>();
+    }
+}
@@ -9,16 +9,24 @@ import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.ext.MessageBodyWriter;
 import jakarta.ws.rs.ext.Provider;
 import jakarta.ws.rs.ext.Providers;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import org.apache.commons.codec.binary.Hex;
 import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 
 @Provider
 @Priority(Priorities.AUTHENTICATION)
 public class WesChecksumFilter implements ClientRequestFilter {
 
-    // This filter is a singleton, so the static variable shouldn't cause any issues, but this is not thread safe.
-    private static ApiClientExtended clientExtended = null;
+    private final WesRequestData wesRequestData;
 
     /**
      * Injectable helper to look up appropriate {@link Provider}s
@@ -28,19 +36,18 @@ public class WesChecksumFilter implements ClientRequestFilter {
     private Providers providers;
 
     /**
-     * Sets the static variables for this filter.
-     *
-     * @param clientExtended The extended WES API client. We will call back to this client to get our final Authorization header.
+     * One filter is registered with each WES client, requests in flight at the same time only share the credentials.
      *
+     * @param wesRequestData The WES endpoint and credentials of the client this filter is registered with.
      */
-    public static void setClientExtended(ApiClientExtended clientExtended) {
-        WesChecksumFilter.clientExtended = clientExtended;
+    public WesChecksumFilter(WesRequestData wesRequestData) {
+        this.wesRequestData = wesRequestData;
     }
 
     /**
      * This filter intercepts the jersey request before it is sent and attempts to calculate an AWS SigV4 Authorization header if needed.
-     * If the request does not have a body, or if the static class variable clientExtended is not set, this filter will not do anything. This
-     * Covers scenarios where the request has no payload and/or is not to an AWS endpoint.
+     * If the request has no credentials, this filter will not do anything. For AWS endpoints the signing context is taken from the
+     * request's {@link ApiClientExtended#AWS_SIGNING_CONTEXT} property.
      *
      * @param requestContext jersey requestContext
      * @throws IOException
@@ -48,9 +55,6 @@ public class WesChecksumFilter implements ClientRequestFilter {
     @Override
     public void filter(ClientRequestContext requestContext) throws IOException {
 
-        // Get the credentials object for this request
-        final WesRequestData wesRequestData = clientExtended.getWesRequestData();
-
         // If credentials were passed in, then we want to add an Authorization header, otherwise do nothing
         if (wesRequestData.hasCredentials()) {
 
@@ -64,7 +68,9 @@ public class WesChecksumFilter implements ClientRequestFilter {
     }
 
     /**
-     * This will calculate the appropriate AWS SigV4 signature for the current request
+     * This will calculate the appropriate AWS SigV4 signature for the current request.
+     * The body is hashed as it is spooled to a temporary file, which is then sent in place of the entity, so that large
+     * attachments are neither held in memory nor serialized twice.
      *
      * @param requestContext The request context
      * @return A string signature that should be set as the Authorization for this HTTP request
@@ -86,26 +92,39 @@ public class WesChecksumFilter implements ClientRequestFilter {
                 requestContext.getEntityAnnotations(),
                 requestContext.getMediaType());
 
-            // Write the Entity to a byte stream using the MessageBodyWriter for our entity type
-            try (ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
-                bodyWriter.writeTo(requestContext.getEntity(),
-                    requestContext.getEntity().getClass(),
-                    requestContext.getEntity().getClass(),
-                    requestContext.getEntityAnnotations(),
-                    requestContext.getMediaType(),
-                    requestContext.getHeaders(),
-                    buffer);
-
-
-                // Calculate a sha256 of the content in the buffer
-                byte[] content = buffer.toByteArray();
-                contentSha256 = DigestUtils.sha256Hex(content);
+            // Write the Entity to a temporary file using the MessageBodyWriter for our entity type, calculating a sha256 on the way
+            Path spool = null;
+            try {
+                spool = Files.createTempFile("wes-request", ".body");
+                final MessageDigest digest = DigestUtils.getSha256Digest();
+                try (OutputStream buffer = new DigestOutputStream(new BufferedOutputStream(Files.newOutputStream(spool)), digest)) {
+                    bodyWriter.writeTo(requestContext.getEntity(),
+                        requestContext.getEntity().getClass(),
+                        requestContext.getEntity().getClass(),
+                        requestContext.getEntityAnnotations(),
+                        requestContext.getMediaType(),
+                        requestContext.getHeaders(),
+                        buffer);
+                }
+                contentSha256 = Hex.encodeHexString(digest.digest());
+
+                // Send the spooled bytes rather than serializing the entity again, the writer may have added a multipart boundary
+                // to the media type so it has to be read back from the headers. A known length lets the body be streamed.
+                final long length = Files.size(spool);
+                final InputStream body = Files.newInputStream(spool, StandardOpenOption.DELETE_ON_CLOSE);
+                requestContext.setEntity(body, requestContext.getEntityAnnotations(), requestContext.getMediaType());
+                requestContext.getHeaders().putSingle(HttpHeaders.CONTENT_LENGTH, length);
             } catch (IOException ioe) {
+                if (spool != null) {
+                    FileUtils.deleteQuietly(spool.toFile());
+                }
                 throw new RuntimeException("Unable to write content body to buffer.", ioe);
             }
         }
 
         // Return the AWS Authorization header calculated from the content sha
-        return clientExtended.generateAwsContentSignature(contentSha256);
+        final ApiClientExtended.AwsSigningContext signingContext =
+            (ApiClientExtended.AwsSigningContext)requestContext.getProperty(ApiClientExtended.AWS_SIGNING_CONTEXT);
+        return signingContext.sign(contentSha256);
     }
 }
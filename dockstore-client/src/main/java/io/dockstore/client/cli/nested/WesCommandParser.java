@@ -8,6 +8,7 @@ import static io.dockstore.client.cli.nested.AbstractEntryClient.LIST;
 import static io.dockstore.client.cli.nested.AbstractEntryClient.LOGS;
 import static io.dockstore.client.cli.nested.AbstractEntryClient.SERVICE_INFO;
 import static io.dockstore.client.cli.nested.AbstractEntryClient.STATUS;
+import static io.dockstore.client.cli.nested.AbstractEntryClient.WATCH;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.Parameter;
@@ -25,6 +26,16 @@ public class WesCommandParser {
     public static final String ID = "--id";
     public static final String COUNT = "--count";
     public static final String PAGE_TOKEN = "--page-token";
+    public static final String BATCH = "--batch";
+    public static final String BATCH_OUTPUT = "--batch-output";
+    public static final String RATE = "--rate";
+    public static final String CONCURRENCY = "--concurrency";
+    public static final String ID_FILE = "--id-file";
+    public static final String INTERVAL = "--interval";
+    public static final String ALL = "--all";
+    public static final String STATE = "--state";
+    public static final String BUNDLE_ATTACHMENTS = "--bundle-attachments";
+    public static final String FOLLOW = "--follow";
     public WesMain wesMain;
     public CommandLaunch commandLaunch;
     public CommandCancel commandCancel;
@@ -32,6 +43,7 @@ public class WesCommandParser {
     public CommandRunLogs commandRunLogs;
     public CommandServiceInfo commandServiceInfo;
     public CommandRunList commandRunList;
+    public CommandWatch commandWatch;
     public JCommander jCommander;
 
     public WesCommandParser() {
@@ -42,6 +54,7 @@ public class WesCommandParser {
         this.commandRunLogs = new CommandRunLogs();
         this.commandServiceInfo = new CommandServiceInfo();
         this.commandRunList = new CommandRunList();
+        this.commandWatch = new CommandWatch();
 
         this.jCommander = buildWesCommandParser();
     }
@@ -57,6 +70,7 @@ public class WesCommandParser {
             .addCommand(LOGS, this.commandRunLogs)
             .addCommand(SERVICE_INFO, this.commandServiceInfo)
             .addCommand(LIST, this.commandRunList)
+            .addCommand(WATCH, this.commandWatch)
             .build();
     }
 
@@ -84,6 +98,9 @@ public class WesCommandParser {
 
     @Parameters(commandDescription = "Launch a " + WORKFLOW + " using WES")
     public static class CommandLaunch extends WesMain {
+        private static final double DEFAULT_RATE = 2;
+        private static final int DEFAULT_CONCURRENCY = 4;
+
         @Parameter(names = ENTRY, description = "Complete " + WORKFLOW + " path in Dockstore (ex. NCI-GDC/gdc-dnaseq-cwl/GDC_DNASeq:master)", required = true)
         private String entry;
         @Parameter(names = INLINE_WORKFLOW, description = "Inlines " + WORKFLOW + " files contents directly into the WES HTTP request. This is required for some WES server implementations.")
@@ -92,6 +109,16 @@ public class WesCommandParser {
         private String json;
         @Parameter(names = {ATTACH, "-a"}, description = "A list of paths to files that should be included in the WES request. (ex. -a <path1> <path2> OR -a <path1> -a <path2>)", variableArity = true)
         private List<String> attachments;
+        @Parameter(names = BATCH, description = "A file listing one JSON parameter file per line. A run is launched for each of them instead of for " + JSON + ".")
+        private String batch;
+        @Parameter(names = BATCH_OUTPUT, description = "Where to write the ID of each run launched with " + BATCH + " as JSON lines. Defaults to the batch file with a .runs.jsonl suffix.")
+        private String batchOutput;
+        @Parameter(names = RATE, description = "The maximum number of runs launched per second with " + BATCH + ".")
+        private double rate = DEFAULT_RATE;
+        @Parameter(names = CONCURRENCY, description = "The maximum number of runs launched at the same time with " + BATCH + ".")
+        private int concurrency = DEFAULT_CONCURRENCY;
+        @Parameter(names = BUNDLE_ATTACHMENTS, description = "Sends all attachments as a single zip archive, for WES servers that extract zip attachments.")
+        private boolean bundleAttachments = false;
 
         public String getEntry() {
             return entry;
@@ -108,6 +135,26 @@ public class WesCommandParser {
         public List<String> getAttachments() {
             return attachments;
         }
+
+        public String getBatch() {
+            return batch;
+        }
+
+        public String getBatchOutput() {
+            return batchOutput;
+        }
+
+        public double getRate() {
+            return rate;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
+
+        public boolean isBundleAttachments() {
+            return bundleAttachments;
+        }
     }
 
     @Parameters(commandDescription = "Cancel a remote WES entry")
@@ -135,10 +182,22 @@ public class WesCommandParser {
     public static class CommandRunLogs extends WesMain {
         @Parameter(names = ID, description = "The ID of the " + WORKFLOW + " to " + CANCEL, required = true)
         private String id;
+        @Parameter(names = FOLLOW, description = "Keep polling until the run finishes, printing only new logs and output as JSON lines")
+        private boolean follow = false;
+        @Parameter(names = INTERVAL, description = "How often, in seconds, the run is polled with " + FOLLOW)
+        private long interval = WesLogFollower.DEFAULT_INTERVAL_SECONDS;
 
         public String getId() {
             return id;
         }
+
+        public boolean isFollow() {
+            return follow;
+        }
+
+        public long getInterval() {
+            return interval;
+        }
     }
 
     @Parameters(commandDescription = "Retrieve info about a WES server")
@@ -153,6 +212,10 @@ public class WesCommandParser {
         private int pageSize = DEFAULT_PAGE_SIZE;
         @Parameter(names = PAGE_TOKEN, description = "The page token returned from a previous list of runs")
         private String pageToken = null;
+        @Parameter(names = ALL, description = "Follow the page tokens and print every run, one JSON line per run")
+        private boolean all = false;
+        @Parameter(names = STATE, description = "Only print runs in these states, one JSON line per run", variableArity = true)
+        private List<String> states;
 
         public int getPageSize() {
             return pageSize;
@@ -161,6 +224,42 @@ public class WesCommandParser {
         public String getPageToken() {
             return pageToken;
         }
+
+        public boolean isAll() {
+            return all;
+        }
+
+        public List<String> getStates() {
+            return states;
+        }
+    }
+
+    @Parameters(commandDescription = "Follow the " + STATUS + " of many runs until they finish")
+    public static class CommandWatch extends WesMain {
+        @Parameter(names = ID, description = "The IDs of the runs to " + WATCH, variableArity = true)
+        private List<String> ids;
+        @Parameter(names = ID_FILE, description = "A file listing the IDs of the runs to " + WATCH + ", one per line, such as the output of " + LAUNCH + " " + BATCH)
+        private String idFile;
+        @Parameter(names = INTERVAL, description = "How often, in seconds, a running run is polled. Waiting runs and runs that do not change are polled less often.")
+        private long interval = WesRunWatcher.DEFAULT_INTERVAL_SECONDS;
+        @Parameter(names = CONCURRENCY, description = "The maximum number of runs polled at the same time")
+        private int concurrency = WesRunWatcher.DEFAULT_CONCURRENCY;
+
+        public List<String> getIds() {
+            return ids;
+        }
+
+        public String getIdFile() {
+            return idFile;
+        }
+
+        public long getInterval() {
+            return interval;
+        }
+
+        public int getConcurrency() {
+            return concurrency;
+        }
     }
 
 }
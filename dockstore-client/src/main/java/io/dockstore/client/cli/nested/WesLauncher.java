@@ -11,25 +11,41 @@ import static io.dockstore.client.cli.nested.WesCommandParser.ID;
 import static io.dockstore.common.DescriptorLanguage.CWL;
 import static io.github.collaboratory.cwl.CWLClient.WES;
 
-import io.dockstore.client.cli.SwaggerUtility;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
 import io.dockstore.openapi.client.ApiClient;
 import io.dockstore.openapi.client.ApiException;
-import io.dockstore.openapi.client.model.ToolDescriptor;
+import io.dockstore.openapi.client.api.Ga4Ghv20Api;
+import io.dockstore.openapi.client.model.FileWrapper;
+import io.dockstore.openapi.client.model.ToolFile;
 import io.dockstore.openapi.client.model.Workflow;
 import io.dockstore.openapi.client.model.WorkflowSubClass;
 import io.dockstore.openapi.client.model.WorkflowVersion;
 import io.openapi.wes.client.api.WorkflowExecutionServiceApi;
 import io.openapi.wes.client.model.RunId;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +55,8 @@ public final class WesLauncher {
     private static final String TAGS = "{\"Client\":\"Dockstore\"}";
     private static final String WORKFLOW_TYPE_VERSION = "1.0";
     private static final String WORKFLOW_ENGINE_PARAMETERS = "{}";
+    private static final String BATCH_OUTPUT_SUFFIX = ".runs.jsonl";
+    private static final String SHA_256 = "sha-256";
 
     private static final String DOCKSTORE_ROOT_TEMP_DIR_PREFIX = "DockstoreWesLaunch";
     private static final String DOCKSTORE_NESTED_TEMP_DIR_PREFIX = "UnzippedWorkflow";
@@ -59,34 +77,165 @@ public final class WesLauncher {
      */
     public static void launchWesCommand(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, WorkflowClient workflowClient, String workflowEntry, boolean inlineWorkflow, String workflowParamPath, List<String> filePaths, boolean verbose) {
 
-        // Get the workflow object associated with the provided entry path
-        final Workflow workflow = getWorkflowForEntry(workflowClient, workflowEntry);
+        final PreparedLaunch launch = prepareLaunch(workflowClient, workflowEntry, inlineWorkflow, filePaths, verbose);
 
-        // The descriptor type
-        String workflowType = workflow.getDescriptorType().getValue();
+        // A JSON object containing a key/value pair that points to the test parameter file in the 'attachments' list
+        // The key is WES server implementation specific. e.g. {"workflowInput":"params.json"}.
+        File workflowParams = fetchFile(workflowParamPath, null, null).orElse(null);
 
-        // Get the workflow version we are launching
-        final String versionId = workflowClient.getVersionID(workflowEntry);
-        final Optional<WorkflowVersion> workflowVersionOpt = workflow.getWorkflowVersions()
-            .stream()
-            .filter(wv -> wv.getName().equals(versionId))
-            .findFirst();
+        try {
+            String runID = launch.submit(clientWorkflowExecutionServiceApi, workflowParams);
 
-        if (workflowVersionOpt.isEmpty()) {
-            errorMessage(MessageFormat.format("Unable to locate version: {0}", versionId), CLIENT_ERROR);
+            // If verbose launches, print verbose messages and helper commands, otherwise just print the runId
+            if (verbose) {
+                out("Launched WES run with id: " + runID);
+                wesCommandSuggestions(runID);
+            } else {
+                out(runID);
+            }
+
+        } catch (io.openapi.wes.client.ApiException e) {
+            LOG.error("Error launching WES run", e);
         }
-        final WorkflowVersion workflowVersion = workflowVersionOpt.get();
+    }
+
+    /**
+     * Launches one run for each parameter file listed in a batch file. The entry is looked up and its attachments are gathered
+     * once, then the runs are submitted concurrently at a limited rate. The ID of each run, or the reason it could not be
+     * launched, is written to a JSON lines file as soon as it is known.
+     *
+     * @param clientWorkflowExecutionServiceApi The WES API client
+     * @param workflowClient The WorkflowClient for the request
+     * @param commandLaunch The parsed launch command, including the batch options
+     */
+    public static void launchWesBatch(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, WorkflowClient workflowClient,
+        WesCommandParser.CommandLaunch commandLaunch) {
+        final List<String> paramPaths = readBatchFile(commandLaunch.getBatch());
+        if (paramPaths.isEmpty()) {
+            errorMessage(MessageFormat.format("No parameter files are listed in {0}", commandLaunch.getBatch()), CLIENT_ERROR);
+        }
+        if (commandLaunch.getRate() <= 0 || commandLaunch.getConcurrency() <= 0) {
+            errorMessage(MessageFormat.format("{0} and {1} must be positive", WesCommandParser.RATE, WesCommandParser.CONCURRENCY), CLIENT_ERROR);
+        }
+        // Check every parameter file before anything is launched, fetchFile exits if one is missing
+        final List<File> paramFiles = paramPaths.stream().map(path -> (File)fetchFile(path, null, null).orElse(null)).collect(Collectors.toList());
+
+        final ApiClientExtended apiClient = (ApiClientExtended)clientWorkflowExecutionServiceApi.getApiClient();
+        final PreparedLaunch preparedLaunch = prepareLaunch(workflowClient, commandLaunch.getEntry(), commandLaunch.getInlineWorkflow(),
+            commandLaunch.getAttachments(), commandLaunch.isVerbose());
+        // Every run sends the same attachments, so they are packed once for the whole batch
+        final PreparedLaunch launch = apiClient.isBundleAttachments() ? preparedLaunch.withBundledAttachments() : preparedLaunch;
+
+        // A failed run should be recorded, not end the batch
+        apiClient.setExitOnError(false);
+
+        final Path outputPath = Paths.get(commandLaunch.getBatchOutput() != null ? commandLaunch.getBatchOutput() : commandLaunch.getBatch() + BATCH_OUTPUT_SUFFIX);
+        final RateLimiter rateLimiter = RateLimiter.create(commandLaunch.getRate());
+        final ExecutorService executor = Executors.newFixedThreadPool(commandLaunch.getConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat("wes-launch-%d").setDaemon(true).build());
+        final Gson gson = new Gson();
+        final AtomicInteger failures = new AtomicInteger();
+        try (BufferedWriter writer = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
+            List<Future<?>> runs = new ArrayList<>();
+            for (int i = 0; i < paramFiles.size(); i++) {
+                final String paramPath = paramPaths.get(i);
+                final File paramFile = paramFiles.get(i);
+                runs.add(executor.submit(() -> {
+                    rateLimiter.acquire();
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("params", paramPath);
+                    try {
+                        final String runId = launch.submit(clientWorkflowExecutionServiceApi, paramFile);
+                        result.put("runId", runId);
+                        result.put("success", true);
+                    } catch (io.openapi.wes.client.ApiException | RuntimeException e) {
+                        LOG.error("Error launching WES run for " + paramPath, e);
+                        failures.incrementAndGet();
+                        result.put("success", false);
+                        result.put("error", e.getMessage() != null ? e.getMessage() : e.toString());
+                    }
+                    writeBatchResult(writer, gson.toJson(result));
+                    return null;
+                }));
+            }
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        } catch (IOException ex) {
+            exceptionMessage(ex, "Could not write the launched runs to " + outputPath, IO_ERROR);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            exceptionMessage(ex, "Interrupted while launching runs", CLIENT_ERROR);
+        } catch (ExecutionException ex) {
+            exceptionMessage(ex, "Could not launch runs", CLIENT_ERROR);
+        } finally {
+            executor.shutdownNow();
+            launch.deleteBundle();
+        }
+
+        out(MessageFormat.format("Launched {0} of {1} runs, run IDs were written to {2}", paramFiles.size() - failures.get(), paramFiles.size(),
+            outputPath));
+        if (failures.get() > 0) {
+            errorMessage(MessageFormat.format("{0} runs could not be launched", failures.get()), CLIENT_ERROR);
+        }
+    }
+
+    /**
+     * @param batchPath a file listing one parameter file per line, blank lines and lines starting with # are skipped
+     * @return the listed parameter files
+     */
+    static List<String> readBatchFile(String batchPath) {
+        try {
+            return Files.readAllLines(Paths.get(batchPath), StandardCharsets.UTF_8).stream()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .collect(Collectors.toList());
+        } catch (IOException ex) {
+            exceptionMessage(ex, "Could not read the batch file " + batchPath, IO_ERROR);
+            throw new RuntimeException(ex);
+        }
+    }
+
+    private static void writeBatchResult(BufferedWriter writer, String line) throws IOException {
+        synchronized (writer) {
+            writer.write(line);
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    /**
+     * Looks up the entry and gathers everything a run of it needs apart from its parameter file.
+     *
+     * @param workflowClient The WorkflowClient for the request
+     * @param workflowEntry The entry path, (i.e. github.com/myRepo/myWorkflow:version)
+     * @param inlineWorkflow Determines if the entry is locally provisioned or not, this alters the format that the WES request is made in.
+     * @param filePaths A list of paths to files to be attached to the request.
+     * @param verbose Whether or not to print verbose info messages
+     * @return what is needed to launch the entry
+     */
+    private static PreparedLaunch prepareLaunch(WorkflowClient workflowClient, String workflowEntry, boolean inlineWorkflow, List<String> filePaths,
+        boolean verbose) {
+
+        // Look up the entry once, everything else about it is derived from this
+        final ResolvedEntry entry = resolveEntry(workflowClient, workflowEntry);
+        final WorkflowVersion workflowVersion = entry.version;
+
+        // The descriptor type
+        String workflowType = entry.workflow.getDescriptorType().getValue();
 
         // Can take the following values:
         // 1. A TRS URL returning the raw primary descriptor file contents
         // 2. The name of a file in the attachments list
         String workflowUrl = inlineWorkflow
             ? workflowVersion.getWorkflowPath().replaceAll("^/+", "") // Remove all leading slashes
-            : combineTrsUrlComponents(workflowClient, workflowEntry, workflow, workflowVersion);
+            : trsUrl(workflowClient, entry);
 
-        // A JSON object containing a key/value pair that points to the test parameter file in the 'attachments' list
-        // The key is WES server implementation specific. e.g. {"workflowInput":"params.json"}.
-        File workflowParams = fetchFile(workflowParamPath, null, null).orElse(null);
+        // The workflow files of inline workflows are downloaded while the local attachments are gathered
+        final ExecutorService executor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("wes-prepare-%d").setDaemon(true).build());
+        final Future<File> unzippedWorkflowDirFuture = inlineWorkflow ? executor.submit(() -> provisionFilesLocally(workflowClient, entry)) : null;
+        executor.shutdown();
 
         // A list of supplementary files that are required to run the workflow. This may include any/all of the following:
         // 1. The primary descriptor file
@@ -96,16 +245,25 @@ public final class WesLauncher {
         // TODO: Allow users to specify a directory to upload?
         // 6. Automatically attach all files referenced in remote Dockstore entry?
         List<File> workflowAttachment = new ArrayList<>(fetchFilesAndDirectories(filePaths));
+        final Map<String, String> publishedChecksums;
         if (inlineWorkflow) {
             // Download all workflow files and place them into a temporary directory, then add them as attachments to the WES request
-            final File unzippedWorkflowDir = provisionFilesLocally(workflowClient, workflowEntry, workflowType);
+            final File unzippedWorkflowDir = await(unzippedWorkflowDirFuture);
             workflowAttachment.addAll(fetchFilesFromLocalDirectory(unzippedWorkflowDir.getAbsolutePath()));
+            publishedChecksums = Collections.emptyMap();
 
             if (verbose) {
                 out("Workflow files provisioned to temporary directory: " + unzippedWorkflowDir.getAbsolutePath());
             }
+        } else {
+            // Descriptors that the WES server can resolve relative to a TRS workflow URL do not need to be sent again
+            publishedChecksums = getPublishedDescriptorChecksums(workflowClient, entry, workflowType, workflowAttachment);
         }
 
+        final WesAttachmentManifest manifest = WesAttachmentManifest.forCurrentUser();
+        workflowAttachment = deduplicateAttachments(workflowAttachment, manifest, publishedChecksums, verbose);
+        manifest.save();
+
         // The workflow version
         String workflowTypeVersion = createWorkflowTypeVersion(workflowType);
 
@@ -113,30 +271,7 @@ public final class WesLauncher {
             out("Primary descriptor URI: " + workflowUrl);
             out("Number of file attachments: " + workflowAttachment.size());
         }
-
-        try {
-            RunId response = clientWorkflowExecutionServiceApi.runWorkflow(
-                    workflowParams,
-                    workflowType,
-                    workflowTypeVersion,
-                    TAGS,                       // TODO: User specified tags?
-                    WORKFLOW_ENGINE_PARAMETERS, // TODO: User specified engine parameters?
-                    workflowUrl,
-                    workflowAttachment);
-
-            String runID = response.getRunId();
-
-            // If verbose launches, print verbose messages and helper commands, otherwise just print the runId
-            if (verbose) {
-                out("Launched WES run with id: " + runID);
-                wesCommandSuggestions(runID);
-            } else {
-                out(runID);
-            }
-
-        } catch (io.openapi.wes.client.ApiException e) {
-            LOG.error("Error launching WES run", e);
-        }
+        return new PreparedLaunch(workflowType, workflowTypeVersion, workflowUrl, Collections.unmodifiableList(workflowAttachment));
     }
 
     /**
@@ -147,55 +282,80 @@ public final class WesLauncher {
      * @return A Workflow object for the corresponding workflow+version
      */
     public static Workflow getWorkflowForEntry(WorkflowClient workflowClient, String workflowEntry) throws ApiException {
-        String[] parts = workflowEntry.split(":");
-        String path = parts[0];
-        String version = workflowClient.getVersionID(workflowEntry);
-        return workflowClient.getWorkflowsApi().getPublishedWorkflowByPath(path, WorkflowSubClass.BIOWORKFLOW, null, version);
+        return resolveEntry(workflowClient, workflowEntry).workflow;
     }
 
     /**
-     * Provisions a workflow's associated files in a temporary local directory
+     * Looks up the published workflow and version of an entry with a single request.
      *
      * @param workflowClient The WorkflowClient
      * @param workflowEntry The workflow entry (i.e. github.com/myRepo/myWorkflow:version)
-     * @param descriptorType The type of descriptor for this workflow (WDL, CWL, etc...)
-     * @return A zipped File object
+     * @return the workflow, its version and its TRS ID
      */
-    public static File provisionFilesLocally(WorkflowClient workflowClient, String workflowEntry, String descriptorType) {
-
-        // A temporary directory which will house all downloaded content
-        File tempDir;
+    private static ResolvedEntry resolveEntry(WorkflowClient workflowClient, String workflowEntry) throws ApiException {
+        final String[] parts = workflowEntry.split(":");
+        final String path = parts[0];
+        final String versionName = parts.length > 1 ? parts[1] : "master";
+        // Only the requested version is needed, all of them are only needed to fall back to the latest one
+        Workflow workflow = null;
+        try {
+            workflow = workflowClient.getWorkflowsApi().getPublishedWorkflowByPath(path, WorkflowSubClass.BIOWORKFLOW, null, versionName);
+        } catch (ApiException ex) {
+            LOG.debug("Could not find version " + versionName + " of " + path, ex);
+        }
+        if (!WorkflowClient.hasVersion(workflow, versionName)) {
+            workflow = workflowClient.getWorkflowsApi().getPublishedWorkflowByPath(path, WorkflowSubClass.BIOWORKFLOW, "versions", null);
+        }
+        final Optional<WorkflowVersion> workflowVersion = WorkflowClient.selectVersion(workflow, workflowEntry);
+        if (workflowVersion.isEmpty()) {
+            errorMessage(MessageFormat.format("Unable to locate version: {0}", workflowEntry), CLIENT_ERROR);
+        }
+        return new ResolvedEntry(workflow, workflowVersion.get(), workflowClient.getTrsId(path));
+    }
 
+    private static <T> T await(Future<T> future) {
         try {
-            tempDir = Files.createTempDirectory(DOCKSTORE_ROOT_TEMP_DIR_PREFIX).toFile().getAbsoluteFile();
-        } catch (IOException ex) {
-            exceptionMessage(ex, "Could not create a temporary working directory.", IO_ERROR);
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ex.getCause();
+            }
+            throw new RuntimeException(ex.getCause());
         }
+    }
+
+    /**
+     * Provisions a workflow's associated files in a temporary local directory
+     *
+     * @param workflowClient The WorkflowClient
+     * @param entry The workflow entry, already looked up
+     * @return The directory the workflow's files were unzipped into
+     */
+    private static File provisionFilesLocally(WorkflowClient workflowClient, ResolvedEntry entry) {
 
-        // A zip file containing the content of the provided workflow
-        File zippedWorkflow;
+        // A temporary directory which will house all downloaded content
+        File tempDir;
 
-        // Download the contents locally
         try {
-            zippedWorkflow = workflowClient.downloadTargetEntry(workflowEntry,
-                ToolDescriptor.TypeEnum.fromValue(descriptorType), false, tempDir);
-            zippedWorkflow.deleteOnExit();
+            tempDir = Files.createTempDirectory(DOCKSTORE_ROOT_TEMP_DIR_PREFIX).toFile().getAbsoluteFile();
         } catch (IOException ex) {
-            exceptionMessage(ex, "A problem was encountered while downloading the entry.", IO_ERROR);
+            exceptionMessage(ex, "Could not create a temporary working directory.", IO_ERROR);
             throw new RuntimeException(ex);
         }
 
         // The directory where the unzipped workflow contents are located
         File unzippedWorkflowDir;
 
-        // Unzip the workflow to a nested temporary directory
+        // Unzip the workflow to a nested temporary directory as it is downloaded
         try {
             unzippedWorkflowDir = Files.createTempDirectory(Path.of(tempDir.getAbsolutePath()), DOCKSTORE_NESTED_TEMP_DIR_PREFIX).toFile().getAbsoluteFile();
-            SwaggerUtility.unzipFile(zippedWorkflow, unzippedWorkflowDir);
             unzippedWorkflowDir.deleteOnExit();
+            workflowClient.downloadWorkflowZip(entry.workflow, entry.version, null, unzippedWorkflowDir);
         } catch (IOException ex) {
-            exceptionMessage(ex, "A problem was encountered while unzipping the entry.", IO_ERROR);
+            exceptionMessage(ex, "A problem was encountered while downloading the entry.", IO_ERROR);
             throw new RuntimeException(ex);
         }
 
@@ -211,16 +371,22 @@ public final class WesLauncher {
      * @return A string representing a TRS URL for an entry
      */
     public static String combineTrsUrlComponents(WorkflowClient workflowClient, String workflowEntry, Workflow workflow, WorkflowVersion workflowVersion) {
-        ApiClient client = workflowClient.getClient().getGa4Ghv20Api().getApiClient();
-
         // Entries are passed in the form {PATH}:{VERSION} or {PATH}
         final String[] pathAndVersion = workflowEntry.split(":");
         final String path = pathAndVersion[0];
 
+        return trsUrl(workflowClient, workflowClient.getTrsId(path), workflowClient.getVersionID(workflowEntry), workflow, workflowVersion);
+    }
+
+    private static String trsUrl(WorkflowClient workflowClient, ResolvedEntry entry) {
+        return trsUrl(workflowClient, entry.trsId, entry.version.getName(), entry.workflow, entry.version);
+    }
+
+    private static String trsUrl(WorkflowClient workflowClient, String entryId, String versionId, Workflow workflow, WorkflowVersion workflowVersion) {
+        ApiClient client = workflowClient.getClient().getGa4Ghv20Api().getApiClient();
+
         // Calculate the values needed to supply a TRS URL
-        final String basePath = workflowClient.getClient().getGa4Ghv20Api().getApiClient().getBasePath();
-        final String versionId = workflowClient.getVersionID(workflowEntry);
-        final String entryId = workflowClient.getTrsId(path);
+        final String basePath = client.getBasePath();
         final String type = "PLAIN_" + workflow.getDescriptorType().getValue();
 
         // Escape each of the URL path values
@@ -317,6 +483,95 @@ public final class WesLauncher {
         return workflowAttachments;
     }
 
+    /**
+     * Removes attachments that would be sent more than once. Attachments with the same name and contents are sent once, and
+     * attachments that are identical to a published descriptor with the same relative path are not sent at all because the WES
+     * server resolves them from the TRS workflow URL.
+     *
+     * @param workflowAttachment The attachments of a WES request
+     * @param manifest Hashes of previously attached files
+     * @param publishedChecksums The sha256 of each published descriptor, keyed by its path relative to the primary descriptor
+     * @param verbose Whether or not to print verbose info messages
+     * @return the attachments to send
+     */
+    static List<File> deduplicateAttachments(List<File> workflowAttachment, WesAttachmentManifest manifest, Map<String, String> publishedChecksums,
+        boolean verbose) {
+        Map<String, String> attachedChecksums = new LinkedHashMap<>();
+        List<File> deduplicated = new ArrayList<>();
+        for (File attachment : workflowAttachment) {
+            final String name = attachment.getName();
+            final String sha256;
+            try {
+                sha256 = manifest.sha256(attachment);
+            } catch (IOException ex) {
+                exceptionMessage(ex, "Unable to read attachment " + attachment.getAbsolutePath(), IO_ERROR);
+                throw new RuntimeException(ex);
+            }
+
+            final String attachedChecksum = attachedChecksums.putIfAbsent(name, sha256);
+            if (attachedChecksum != null) {
+                if (!attachedChecksum.equals(sha256)) {
+                    errorMessage(MessageFormat.format("Two different files would be attached as {0}", name), CLIENT_ERROR);
+                }
+                continue;
+            }
+            if (sha256.equals(publishedChecksums.get(name))) {
+                if (verbose) {
+                    out("Not attaching " + name + ", it is identical to the published descriptor");
+                }
+                continue;
+            }
+            deduplicated.add(attachment);
+        }
+        return deduplicated;
+    }
+
+    /**
+     * Looks up the checksums of the published descriptors of a workflow version that could be replaced by one of the attachments.
+     * Nothing is requested when there are no attachments, and only descriptors whose relative path is the name of an attachment
+     * are fetched. Any problem is logged and treated as there being no published descriptors, which only means every attachment
+     * is sent.
+     *
+     * @param workflowClient The WorkflowClient
+     * @param entry The workflow entry, already looked up
+     * @param workflowType WDL/CWL/NEXTFLOW/etc...
+     * @param workflowAttachment The attachments of the WES request
+     * @return the sha256 of each matching descriptor, keyed by its path relative to the primary descriptor
+     */
+    private static Map<String, String> getPublishedDescriptorChecksums(WorkflowClient workflowClient, ResolvedEntry entry, String workflowType,
+        List<File> workflowAttachment) {
+        if (workflowAttachment.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Set<String> attachmentNames = workflowAttachment.stream().map(File::getName).collect(Collectors.toSet());
+        final Ga4Ghv20Api ga4ghv20api = workflowClient.getClient().getGa4Ghv20Api();
+        final String entryId = entry.trsId;
+        final String versionId = entry.version.getName();
+        Map<String, String> checksums = new LinkedHashMap<>();
+        try {
+            for (ToolFile toolFile : ga4ghv20api.toolsIdVersionsVersionIdTypeFilesGet(entryId, workflowType, versionId, null)) {
+                if (!ToolFile.FileTypeEnum.PRIMARY_DESCRIPTOR.equals(toolFile.getFileType())
+                    && !ToolFile.FileTypeEnum.SECONDARY_DESCRIPTOR.equals(toolFile.getFileType())) {
+                    continue;
+                }
+                final String relativePath = toolFile.getPath().replaceAll("^/+", "");
+                if (!attachmentNames.contains(relativePath)) {
+                    continue;
+                }
+                final FileWrapper descriptor = ga4ghv20api.toolsIdVersionsVersionIdTypeDescriptorRelativePathGet(entryId, workflowType, versionId,
+                    toolFile.getPath());
+                descriptor.getChecksum().stream()
+                    .filter(checksum -> SHA_256.equals(checksum.getType()))
+                    .findFirst()
+                    .ifPresent(checksum -> checksums.put(relativePath, checksum.getChecksum()));
+            }
+        } catch (ApiException | RuntimeException ex) {
+            LOG.info("Unable to look up the published descriptors of " + entryId + ", attaching every file", ex);
+            return Collections.emptyMap();
+        }
+        return checksums;
+    }
+
     /**
      * Calculates the proper versioning for a workflow
      *
@@ -337,4 +592,84 @@ public final class WesLauncher {
         out(MessageFormat.format("\tdockstore workflow {0} {1} {2} {3}", WES, STATUS, ID, runId));
         out(MessageFormat.format("\tdockstore workflow {0} {1} {2} {3}", WES, LOGS, ID, runId));
     }
+
+    /**
+     * A workflow and the version of it being launched, looked up once per launch.
+     */
+    private static final class ResolvedEntry {
+        private final Workflow workflow;
+        private final WorkflowVersion version;
+        private final String trsId;
+
+        private ResolvedEntry(Workflow workflow, WorkflowVersion version, String trsId) {
+            this.workflow = workflow;
+            this.version = version;
+            this.trsId = trsId;
+        }
+    }
+
+    /**
+     * Everything needed to launch an entry except the parameter file, which may be shared by many concurrent launches.
+     */
+    private static final class PreparedLaunch {
+        private final String workflowType;
+        private final String workflowTypeVersion;
+        private final String workflowUrl;
+        private final List<File> workflowAttachment;
+
+        private PreparedLaunch(String workflowType, String workflowTypeVersion, String workflowUrl, List<File> workflowAttachment) {
+            this.workflowType = workflowType;
+            this.workflowTypeVersion = workflowTypeVersion;
+            this.workflowUrl = workflowUrl;
+            this.workflowAttachment = workflowAttachment;
+        }
+
+        /**
+         * Packs the attachments into a single zip archive, so that launches sending them as a bundle do not each pack them again.
+         *
+         * @return a launch sending the archive, which is deleted by {@link #deleteBundle()}
+         */
+        private PreparedLaunch withBundledAttachments() {
+            if (workflowAttachment.isEmpty()) {
+                return this;
+            }
+            Path bundle = null;
+            try {
+                bundle = Files.createTempFile("dockstore-wes-attachments", ".zip");
+                // In case the batch exits before the bundle is deleted
+                bundle.toFile().deleteOnExit();
+                ApiClientExtended.writeBundle(bundle, workflowAttachment);
+            } catch (IOException ex) {
+                FileUtils.deleteQuietly(bundle == null ? null : bundle.toFile());
+                exceptionMessage(ex, "Could not pack the attachments", IO_ERROR);
+                throw new RuntimeException(ex);
+            }
+            return new PreparedLaunch(workflowType, workflowTypeVersion, workflowUrl, List.of(new ApiClientExtended.AttachmentBundle(bundle)));
+        }
+
+        private void deleteBundle() {
+            if (ApiClientExtended.AttachmentBundle.of(workflowAttachment) != null) {
+                FileUtils.deleteQuietly(workflowAttachment.get(0));
+            }
+        }
+
+        /**
+         * @return the ID of the launched run
+         */
+        private String submit(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, File workflowParams)
+            throws io.openapi.wes.client.ApiException {
+            RunId response = clientWorkflowExecutionServiceApi.runWorkflow(
+                    workflowParams,
+                    workflowType,
+                    workflowTypeVersion,
+                    TAGS,                       // TODO: User specified tags?
+                    WORKFLOW_ENGINE_PARAMETERS, // TODO: User specified engine parameters?
+                    workflowUrl,
+                    workflowAttachment);
+            if (response == null) {
+                throw new io.openapi.wes.client.ApiException("The WES server did not return a run ID");
+            }
+            return response.getRunId();
+        }
+    }
 }
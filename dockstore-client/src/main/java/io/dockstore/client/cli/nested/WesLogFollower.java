@@ -0,0 +1,215 @@
+package io.dockstore.client.cli.nested;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.openapi.wes.client.ApiException;
+import io.openapi.wes.client.model.Log;
+import io.openapi.wes.client.model.RunLog;
+import io.openapi.wes.client.model.State;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Follows the logs of a WES run until it reaches a terminal state, printing only what changed since the previous poll as JSON
+ * lines: state changes, new or updated run and task logs, and the new bytes of their stdout and stderr.
+ *
+ * <p>
+ * WES has no way to ask for the changes to a RunLog, so the RunLog is still requested on every poll, but stdout and stderr are
+ * read with Range requests from where the previous poll stopped. Their URLs may change between polls, so the offsets are kept
+ * per task and stream rather than per URL.
+ * </p>
+ *
+ * <p>
+ * A stream is not read again until its task or run log changes once a read found nothing after the offset, or once it was read
+ * after the task ended (an end time or exit code is set). Tasks that have finished, or that are not writing anything, therefore
+ * cost no requests, and the end of a task, which changes its log, always gets a final read.
+ * </p>
+ */
+final class WesLogFollower {
+
+    static final long DEFAULT_INTERVAL_SECONDS = 10;
+    static final String RUN_LOG = "run";
+    private static final Logger LOG = LoggerFactory.getLogger(WesLogFollower.class);
+    private static final String STDOUT = "stdout";
+    private static final String STDERR = "stderr";
+
+    private final WesAsyncClient client;
+    private final long intervalMillis;
+    private final Consumer<String> output;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Map<String, Log> seenLogs = new HashMap<>();
+    private final Map<String, Long> offsets = new HashMap<>();
+    private final Set<String> settledStreams = new HashSet<>();
+    private State state;
+
+    /**
+     * @param client         the WES client, also used for the stdout and stderr URLs
+     * @param intervalMillis how long to wait between polls
+     * @param output         receives one JSON object per change
+     */
+    WesLogFollower(WesAsyncClient client, long intervalMillis, Consumer<String> output) {
+        this.client = client;
+        this.intervalMillis = intervalMillis;
+        this.output = output;
+    }
+
+    /**
+     * @param runId the run to follow
+     * @return the terminal state of the run
+     * @throws ApiException if the first request for the run fails, later failures are retried on the next poll
+     */
+    State follow(String runId) throws ApiException, InterruptedException {
+        boolean first = true;
+        while (true) {
+            try {
+                poll(runId);
+            } catch (ApiException e) {
+                if (first) {
+                    throw e;
+                }
+                LOG.info("Could not get the logs of " + runId + ", trying again", e);
+            }
+            first = false;
+            if (state != null && WesRunWatcher.TERMINAL_STATES.contains(state)) {
+                return state;
+            }
+            Thread.sleep(intervalMillis);
+        }
+    }
+
+    /**
+     * Prints what changed in the run since the previous poll.
+     */
+    void poll(String runId) throws ApiException, InterruptedException {
+        final RunLog runLog = await(client.getRunLog(runId));
+        if (runLog == null) {
+            return;
+        }
+        if (runLog.getState() != state) {
+            ObjectNode event = event(runId);
+            event.put("state", runLog.getState() == null ? null : runLog.getState().toString());
+            event.put("previousState", state == null ? null : state.toString());
+            output.accept(event.toString());
+            state = runLog.getState();
+        }
+
+        final Map<String, Log> logs = new LinkedHashMap<>();
+        if (runLog.getRunLog() != null) {
+            logs.put(RUN_LOG, runLog.getRunLog());
+        }
+        if (runLog.getTaskLogs() != null) {
+            final Map<String, Integer> occurrences = new HashMap<>();
+            for (Log taskLog : runLog.getTaskLogs()) {
+                // scattered tasks may share a name, so repeats are told apart by the order they are listed in
+                final String name = Objects.toString(taskLog.getName(), "");
+                final int occurrence = occurrences.merge(name, 1, Integer::sum);
+                logs.put(occurrence == 1 ? name : name + "#" + occurrence, taskLog);
+            }
+        }
+
+        final List<StreamRange> ranges = new ArrayList<>();
+        for (Map.Entry<String, Log> log : logs.entrySet()) {
+            if (!log.getValue().equals(seenLogs.put(log.getKey(), log.getValue()))) {
+                // the streams of a changed log may have new URLs, or a final read to make
+                settledStreams.remove(streamKey(log.getKey(), STDOUT));
+                settledStreams.remove(streamKey(log.getKey(), STDERR));
+                ObjectNode event = event(runId);
+                event.put("task", log.getKey());
+                event.set("log", mapper.valueToTree(log.getValue()));
+                output.accept(event.toString());
+            }
+            final boolean ended = log.getValue().getEndTime() != null || log.getValue().getExitCode() != null;
+            addRange(ranges, log.getKey(), STDOUT, log.getValue().getStdout(), ended);
+            addRange(ranges, log.getKey(), STDERR, log.getValue().getStderr(), ended);
+        }
+        // every new range is requested before any is printed
+        ranges.forEach(range -> range.bytes = client.getLogRange(range.url, range.offset));
+        for (StreamRange range : ranges) {
+            final byte[] bytes = await(range.bytes);
+            final int length = completeUtf8Length(bytes);
+            if (bytes.length == 0 || range.ended) {
+                settledStreams.add(range.key);
+            }
+            if (length > 0) {
+                offsets.put(range.key, range.offset + length);
+                ObjectNode event = event(runId);
+                event.put("task", range.task);
+                event.put("stream", range.stream);
+                event.put("offset", range.offset);
+                event.put("text", new String(bytes, 0, length, StandardCharsets.UTF_8));
+                output.accept(event.toString());
+            }
+        }
+    }
+
+    private void addRange(List<StreamRange> ranges, String task, String stream, String url, boolean ended) {
+        final String key = streamKey(task, stream);
+        if (url != null && !url.isEmpty() && !settledStreams.contains(key)) {
+            ranges.add(new StreamRange(task, stream, key, url, offsets.getOrDefault(key, 0L), ended));
+        }
+    }
+
+    private static String streamKey(String task, String stream) {
+        return task + "/" + stream;
+    }
+
+    private ObjectNode event(String runId) {
+        ObjectNode event = mapper.createObjectNode();
+        event.put("runId", runId);
+        return event;
+    }
+
+    /**
+     * @param bytes the new bytes of a log
+     * @return how many of them can be printed without splitting a UTF-8 character, the rest are read again on the next poll
+     */
+    static int completeUtf8Length(byte[] bytes) {
+        final ByteBuffer input = ByteBuffer.wrap(bytes);
+        // without the end of input, a decoder stops before a character that is cut short
+        StandardCharsets.UTF_8.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE)
+            .decode(input, CharBuffer.allocate(bytes.length), false);
+        return input.position();
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws ApiException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof ApiException ? (ApiException)e.getCause() : new ApiException(e.getCause());
+        }
+    }
+
+    private static final class StreamRange {
+        private final String task;
+        private final String stream;
+        private final String key;
+        private final String url;
+        private final long offset;
+        private final boolean ended;
+        private CompletableFuture<byte[]> bytes;
+
+        private StreamRange(String task, String stream, String key, String url, long offset, boolean ended) {
+            this.task = task;
+            this.stream = stream;
+            this.key = key;
+            this.url = url;
+            this.offset = offset;
+            this.ended = ended;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.dockstore.client.cli.nested;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.openapi.wes.client.ApiException;
+import io.openapi.wes.client.api.WorkflowExecutionServiceApi;
+import io.openapi.wes.client.model.RunListResponse;
+import io.openapi.wes.client.model.RunStatus;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Iterates over every run at a WES endpoint, following next_page_token from page to page. The next page is requested as soon
+ * as the current one arrives, so it is usually ready by the time the current page has been consumed.
+ *
+ * <p>
+ * A failed request is thrown from {@link #hasNext()} as an {@link IllegalStateException} caused by the {@link ApiException}.
+ * </p>
+ */
+final class WesRunIterator implements Iterator<RunStatus>, AutoCloseable {
+
+    private final WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi;
+    private final long pageSize;
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("wes-list-%d").setDaemon(true).build());
+    private Iterator<RunStatus> currentPage = Collections.emptyIterator();
+    private Future<RunListResponse> nextPage;
+
+    /**
+     * @param clientWorkflowExecutionServiceApi the WES API client, which should throw rather than exit on errors
+     * @param pageSize the number of runs requested per page
+     * @param pageToken the page to start from, null to start from the latest run
+     */
+    WesRunIterator(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, long pageSize, String pageToken) {
+        this.clientWorkflowExecutionServiceApi = clientWorkflowExecutionServiceApi;
+        this.pageSize = pageSize;
+        this.nextPage = requestPage(pageToken);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (!currentPage.hasNext() && nextPage != null) {
+            final RunListResponse response = awaitNextPage();
+            final String nextPageToken = response == null ? null : response.getNextPageToken();
+            nextPage = nextPageToken == null || nextPageToken.isEmpty() ? null : requestPage(nextPageToken);
+            currentPage = response == null || response.getRuns() == null ? Collections.emptyIterator() : response.getRuns().iterator();
+        }
+        return currentPage.hasNext();
+    }
+
+    @Override
+    public RunStatus next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return currentPage.next();
+    }
+
+    /**
+     * Stops prefetching, for when the caller does not need the remaining runs.
+     */
+    @Override
+    public void close() {
+        prefetcher.shutdownNow();
+    }
+
+    private Future<RunListResponse> requestPage(String pageToken) {
+        return prefetcher.submit(() -> clientWorkflowExecutionServiceApi.listRuns(pageSize, pageToken));
+    }
+
+    private RunListResponse awaitNextPage() {
+        try {
+            return nextPage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while listing runs", e);
+        } catch (ExecutionException e) {
+            nextPage = null;
+            throw new IllegalStateException("Unable to list runs", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package io.dockstore.client.cli.nested;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.gson.Gson;
+import io.openapi.wes.client.ApiException;
+import io.openapi.wes.client.api.WorkflowExecutionServiceApi;
+import io.openapi.wes.client.model.RunListResponse;
+import io.openapi.wes.client.model.RunStatus;
+import io.openapi.wes.client.model.State;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches many WES runs from one process until each of them reaches a terminal state, printing every state change as a JSON line.
+ *
+ * <p>
+ * Each run is polled on its own schedule. Runs that are waiting (QUEUED, PAUSED, ...) are polled less often than runs that are
+ * making progress, and a run whose state did not change is polled less and less often until it changes again. When many runs
+ * are due at once their states are read from pages of listRuns, and only the runs that were not listed are requested one
+ * at a time. Servers that cannot list runs are polled one run at a time.
+ * </p>
+ *
+ * <p>
+ * A run that the server does not know about, or whose status could not be read several times in a row, stops being watched
+ * and is reported as lost.
+ * </p>
+ */
+final class WesRunWatcher {
+
+    static final long DEFAULT_INTERVAL_SECONDS = 10;
+    static final int DEFAULT_CONCURRENCY = 8;
+    static final int MAX_FAILED_POLLS = 5;
+    static final Set<State> TERMINAL_STATES = EnumSet.of(State.COMPLETE, State.EXECUTOR_ERROR, State.SYSTEM_ERROR, State.CANCELED);
+    private static final Set<State> WAITING_STATES = EnumSet.of(State.QUEUED, State.PAUSED, State.UNKNOWN);
+    private static final Logger LOG = LoggerFactory.getLogger(WesRunWatcher.class);
+    private static final int WAITING_FACTOR = 4;
+    private static final int MAX_BACKOFF_FACTOR = 8;
+    private static final double BACKOFF_MULTIPLIER = 1.5;
+    private static final int LIST_THRESHOLD = 5;
+    private static final long LIST_PAGE_SIZE = 100;
+
+    private final WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi;
+    private final long baseIntervalMillis;
+    private final int concurrency;
+    private final Consumer<String> output;
+    private final Gson gson = new Gson();
+    private final Map<String, String> lostRuns = new LinkedHashMap<>();
+    private boolean listRunsSupported = true;
+
+    /**
+     * @param clientWorkflowExecutionServiceApi the WES API client, which should throw rather than exit on errors
+     * @param baseIntervalMillis how often a running run is polled while its state keeps changing
+     * @param concurrency        how many runs are polled one at a time concurrently
+     * @param output             receives one JSON object per state change
+     */
+    WesRunWatcher(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, long baseIntervalMillis, int concurrency, Consumer<String> output) {
+        this.clientWorkflowExecutionServiceApi = clientWorkflowExecutionServiceApi;
+        this.baseIntervalMillis = baseIntervalMillis;
+        this.concurrency = concurrency;
+        this.output = output;
+    }
+
+    /**
+     * @param runIds the runs to watch
+     * @return the terminal state of each run
+     */
+    Map<String, State> watch(Collection<String> runIds) throws InterruptedException {
+        final Map<String, WatchedRun> watching = new LinkedHashMap<>();
+        runIds.forEach(runId -> watching.put(runId, new WatchedRun(runId)));
+        final Map<String, State> finished = new LinkedHashMap<>();
+        final ExecutorService executor = Executors.newFixedThreadPool(concurrency,
+            new ThreadFactoryBuilder().setNameFormat("wes-watch-%d").setDaemon(true).build());
+        try {
+            while (!watching.isEmpty()) {
+                final long now = System.currentTimeMillis();
+                final List<WatchedRun> due = watching.values().stream().filter(run -> run.nextPollMillis <= now).collect(Collectors.toList());
+                if (due.size() >= LIST_THRESHOLD && listRunsSupported) {
+                    pollByListing(watching, due);
+                }
+                pollIndividually(executor, due.stream().filter(run -> run.lastPolledMillis < now).collect(Collectors.toList()));
+
+                watching.values().removeIf(run -> {
+                    if (lostRuns.containsKey(run.runId)) {
+                        return true;
+                    }
+                    if (run.state != null && TERMINAL_STATES.contains(run.state)) {
+                        finished.put(run.runId, run.state);
+                        return true;
+                    }
+                    return false;
+                });
+                final long nextPoll = watching.values().stream().mapToLong(run -> run.nextPollMillis).min().orElse(now);
+                final long sleepMillis = nextPoll - System.currentTimeMillis();
+                if (sleepMillis > 0) {
+                    Thread.sleep(sleepMillis);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return finished;
+    }
+
+    /**
+     * @return the runs that stopped being watched before reaching a terminal state, and why
+     */
+    Map<String, String> getLostRuns() {
+        return lostRuns;
+    }
+
+    /**
+     * Reads the states of due runs from pages of listRuns, stopping once they have all been seen. Watched runs that are not due
+     * but happen to be listed are updated too.
+     */
+    private void pollByListing(Map<String, WatchedRun> watching, List<WatchedRun> due) {
+        final long maxPages = 2 + 2 * watching.size() / LIST_PAGE_SIZE;
+        final Set<WatchedRun> unseen = new HashSet<>(due);
+        String pageToken = null;
+        try {
+            for (long page = 0; page < maxPages && !unseen.isEmpty(); page++) {
+                RunListResponse response = clientWorkflowExecutionServiceApi.listRuns(LIST_PAGE_SIZE, pageToken);
+                if (response == null || response.getRuns() == null) {
+                    break;
+                }
+                final long polledMillis = System.currentTimeMillis();
+                for (RunStatus status : response.getRuns()) {
+                    WatchedRun run = watching.get(status.getRunId());
+                    if (run != null && run.lastPolledMillis < polledMillis) {
+                        unseen.remove(run);
+                        update(run, status.getState(), polledMillis);
+                    }
+                }
+                pageToken = response.getNextPageToken();
+                if (pageToken == null || pageToken.isEmpty()) {
+                    break;
+                }
+            }
+        } catch (ApiException | RuntimeException e) {
+            LOG.info("Could not list runs, polling runs one at a time instead", e);
+            listRunsSupported = false;
+        }
+    }
+
+    private void pollIndividually(ExecutorService executor, List<WatchedRun> runs) throws InterruptedException {
+        List<Future<State>> polls = new ArrayList<>();
+        for (WatchedRun run : runs) {
+            polls.add(executor.submit(() -> {
+                RunStatus status = clientWorkflowExecutionServiceApi.getRunStatus(run.runId);
+                return status == null ? null : status.getState();
+            }));
+        }
+        for (int i = 0; i < runs.size(); i++) {
+            final WatchedRun run = runs.get(i);
+            Throwable failure = null;
+            State state = null;
+            try {
+                state = polls.get(i).get();
+            } catch (ExecutionException e) {
+                LOG.debug("Could not get the status of " + run.runId, e.getCause());
+                failure = e.getCause();
+            }
+            final long polledMillis = System.currentTimeMillis();
+            if (failure instanceof ApiException && ((ApiException)failure).getCode() == HttpStatus.SC_NOT_FOUND) {
+                lose(run, "not found", polledMillis);
+            } else if (state != null) {
+                run.failedPolls = 0;
+                update(run, state, polledMillis);
+            } else {
+                run.failedPolls++;
+                if (run.failedPolls >= MAX_FAILED_POLLS) {
+                    lose(run, failure == null ? "no state after " + run.failedPolls + " polls"
+                        : "could not get the status after " + run.failedPolls + " polls: " + failure.getMessage(), polledMillis);
+                } else {
+                    // try again later, backing off as if nothing changed
+                    update(run, run.state, polledMillis);
+                }
+            }
+        }
+    }
+
+    private void lose(WatchedRun run, String reason, long polledMillis) {
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("runId", run.runId);
+        event.put("state", null);
+        event.put("previousState", run.state == null ? null : run.state.toString());
+        event.put("time", Instant.ofEpochMilli(polledMillis).toString());
+        event.put("error", reason);
+        output.accept(gson.toJson(event));
+        lostRuns.put(run.runId, reason);
+    }
+
+    private void update(WatchedRun run, State state, long polledMillis) {
+        final boolean changed = state != run.state;
+        if (changed) {
+            Map<String, Object> event = new LinkedHashMap<>();
+            event.put("runId", run.runId);
+            event.put("state", state == null ? null : state.toString());
+            event.put("previousState", run.state == null ? null : run.state.toString());
+            event.put("time", Instant.ofEpochMilli(polledMillis).toString());
+            output.accept(gson.toJson(event));
+        }
+        run.intervalMillis = nextInterval(state, run.intervalMillis, changed, baseIntervalMillis);
+        run.state = state;
+        run.lastPolledMillis = polledMillis;
+        run.nextPollMillis = polledMillis + run.intervalMillis;
+    }
+
+    /**
+     * @param state              the latest state of a run, null if it is not known yet
+     * @param previousInterval   the previous polling interval, 0 if the run has not been polled
+     * @param changed            true if the state just changed
+     * @param baseIntervalMillis the polling interval of a run that is making progress
+     * @return how long to wait before polling the run again
+     */
+    static long nextInterval(State state, long previousInterval, boolean changed, long baseIntervalMillis) {
+        final long stateInterval = state == null || WAITING_STATES.contains(state) ? baseIntervalMillis * WAITING_FACTOR : baseIntervalMillis;
+        if (changed || previousInterval <= 0) {
+            return stateInterval;
+        }
+        return Math.min((long)(previousInterval * BACKOFF_MULTIPLIER), stateInterval * MAX_BACKOFF_FACTOR);
+    }
+
+    /**
+     * Only touched from the thread running {@link #watch(Collection)}.
+     */
+    private static final class WatchedRun {
+        private final String runId;
+        private State state;
+        private long intervalMillis;
+        private int failedPolls;
+        private long lastPolledMillis = Long.MIN_VALUE;
+        private long nextPollMillis = Long.MIN_VALUE;
+
+        private WatchedRun(String runId) {
+            this.runId = runId;
+        }
+    }
+}
@@ -75,11 +75,8 @@ import io.dockstore.openapi.client.model.Workflow;
 import io.dockstore.openapi.client.model.WorkflowSubClass;
 import io.dockstore.openapi.client.model.WorkflowVersion;
 import io.openapi.wes.client.api.WorkflowExecutionServiceApi;
-import jakarta.ws.rs.core.GenericType;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
@@ -89,7 +86,6 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.EnumUtils;
@@ -110,6 +106,7 @@ public class WorkflowClient extends AbstractEntryClient<Workflow> {
     public static final String LAUNCH_COMMAND_NAME = LAUNCH;
     public static final String GITHUB_APP_COMMAND_ERROR = "Command not supported for GitHub App entries";
     public static final String UPDATE_WORKFLOW = "update_workflow";
+    private static final String DEFAULT_VERSION_NAME = "master";
 
 
     protected static final Logger LOG = LoggerFactory.getLogger(WorkflowClient.class);
@@ -366,42 +363,59 @@ public class WorkflowClient extends AbstractEntryClient<Workflow> {
      * @return A path to the primary descriptor if contents were unzipped, otherwise return a path to the zip file itself
      */
     public File downloadTargetEntry(String toolpath, ToolDescriptor.TypeEnum type, boolean unzip, File directory) throws IOException {
-        String[] parts = toolpath.split(":");
-        String path = parts[0];
         // match behaviour from getDescriptorFromServer, use master if no version is provided
-        Workflow workflow = findAndGetDockstoreWorkflowByPath(path, "versions", true, true);
-        String tag = getVersionID(toolpath);
-        Optional<WorkflowVersion> first = workflow.getWorkflowVersions().stream().filter(foo -> foo.getName().equalsIgnoreCase(tag))
-            .findFirst();
+        Workflow workflow = findAndGetDockstoreWorkflowWithVersion(toolpath);
+        Optional<WorkflowVersion> first = selectVersion(workflow, toolpath);
 
         if (first.isPresent()) {
-            boolean isValid = first.get().isValid();
-            if (!isValid) {
-                errorMessage("Cannot use workflow version '" + first.get().getName() + "' because it is not valid. Please pick a"
-                    + " workflow version that is recognized as valid by Dockstore.", CLIENT_ERROR);
-            }
-            Long versionId = first.get().getId();
-            // https://github.com/dockstore/dockstore/issues/1712 client seems to use jersey logging which is not controlled from logback
-            workflowsApi.getApiClient().setDebugging(false);
-            byte[] arbitraryURL = SwaggerUtility
-                .getArbitraryURL("/workflows/" + workflow.getId() + "/zip/" + versionId, new GenericType<byte[]>() {
-                }, workflowsApi.getApiClient());
-            workflowsApi.getApiClient().setDebugging(Client.DEBUG.get());
-            File zipFile = new File(directory, zipFilename(workflow));
-            FileUtils.writeByteArrayToFile(zipFile, arbitraryURL, false);
-
             // If we unzip the file, we can provide a path to the primary descriptor, otherwise just provide a path to the zip file
             if (unzip) {
-                SwaggerUtility.unzipFile(zipFile, directory);
-                Files.delete(zipFile.toPath());
+                downloadWorkflowZip(workflow, first.get(), null, directory);
                 return new File(directory, first.get().getWorkflowPath());
             }
-            return zipFile;
+            return downloadWorkflowZip(workflow, first.get(), directory);
         } else {
             throw new RuntimeException("version not found");
         }
     }
 
+    /**
+     * Downloads the zip of a workflow version that has already been looked up
+     *
+     * @param workflow  the workflow
+     * @param version   one of the workflow's versions
+     * @param directory directory to write the zip file into
+     * @return the zip file
+     */
+    public File downloadWorkflowZip(Workflow workflow, WorkflowVersion version, File directory) throws IOException {
+        File zipFile = new File(directory, zipFilename(workflow));
+        downloadWorkflowZip(workflow, version, zipFile, null);
+        return zipFile;
+    }
+
+    /**
+     * Streams the zip of a workflow version that has already been looked up, extracting it as it arrives
+     *
+     * @param workflow       the workflow
+     * @param version        one of the workflow's versions
+     * @param zipFile        where to save the zip, null to not keep it
+     * @param unzipDirectory where to extract the zip, null to not extract it
+     */
+    public void downloadWorkflowZip(Workflow workflow, WorkflowVersion version, File zipFile, File unzipDirectory) throws IOException {
+        if (!version.isValid()) {
+            errorMessage("Cannot use workflow version '" + version.getName() + "' because it is not valid. Please pick a"
+                + " workflow version that is recognized as valid by Dockstore.", CLIENT_ERROR);
+        }
+        // https://github.com/dockstore/dockstore/issues/1712 client seems to use jersey logging which is not controlled from logback
+        workflowsApi.getApiClient().setDebugging(false);
+        try {
+            SwaggerUtility.downloadZip("/workflows/" + workflow.getId() + "/zip/" + version.getId(), workflowsApi.getApiClient(), zipFile,
+                unzipDirectory);
+        } finally {
+            workflowsApi.getApiClient().setDebugging(Client.DEBUG.get());
+        }
+    }
+
     /**
      * Appends the #workflow/ prefix to the start of the provided path if necessary
      *
@@ -424,10 +438,50 @@ public class WorkflowClient extends AbstractEntryClient<Workflow> {
     @Override
     public String getVersionID(String entryPath) {
         final String[] parts = entryPath.split(":");
+        final Workflow workflow = findAndGetDockstoreWorkflowWithVersion(entryPath);
+        return selectVersion(workflow, entryPath).map(WorkflowVersion::getName).orElse(parts.length > 1 ? parts[1] : DEFAULT_VERSION_NAME);
+    }
 
-        final String versionID = parts.length > 1 ? parts[1] : "master";
+    /**
+     * Looks up a workflow with only the version named by an entry path, master if none is named, rather than with every one
+     * of its versions. All versions are only fetched when there is no version with that name, for
+     * {@link #selectVersion(Workflow, String)} to fall back to the latest one.
+     *
+     * @param entryPath Workflow path, optionally followed by a version
+     * @return the workflow, whose versions include the named version if there is one
+     */
+    public Workflow findAndGetDockstoreWorkflowWithVersion(String entryPath) {
+        final String[] parts = entryPath.split(":");
+        final String versionName = parts.length > 1 ? parts[1] : DEFAULT_VERSION_NAME;
+        WebserviceWorkflowClient webserviceWorkflowClient = new WebserviceWorkflowClient(workflowsApi, "versions", true, true);
+        final Workflow workflow = webserviceWorkflowClient.findDockstoreWorkflowByPath(parts[0] + ":" + versionName);
+        if (hasVersion(workflow, versionName)) {
+            this.isAppTool = webserviceWorkflowClient.isFoundAppTool();
+            return workflow;
+        }
+        return findAndGetDockstoreWorkflowByPath(parts[0], "versions", true, true);
+    }
+
+    /**
+     * @param workflow    a workflow, may be null
+     * @param versionName the name of a version
+     * @return true if the versions of the workflow include one with that name
+     */
+    public static boolean hasVersion(Workflow workflow, String versionName) {
+        return workflow != null && workflow.getWorkflowVersions() != null
+            && workflow.getWorkflowVersions().stream().anyMatch(version -> version.getName().equalsIgnoreCase(versionName));
+    }
+
+    /**
+     * Picks the version named by an entry path from a workflow fetched with its versions, falls back to the latest version
+     *
+     * @param workflow  Workflow including its versions
+     * @param entryPath Workflow path, optionally followed by a version
+     */
+    public static Optional<WorkflowVersion> selectVersion(Workflow workflow, String entryPath) {
+        final String[] parts = entryPath.split(":");
 
-        final Workflow workflow = findAndGetDockstoreWorkflowByPath(parts[0], "versions", true, true);
+        final String versionID = parts.length > 1 ? parts[1] : DEFAULT_VERSION_NAME;
 
         // ensure workflow has version
         Optional<WorkflowVersion> first = workflow.getWorkflowVersions().stream().filter(foo -> foo.getName().equalsIgnoreCase(versionID))
@@ -440,8 +494,7 @@ public class WorkflowClient extends AbstractEntryClient<Workflow> {
                 "Could not locate workflow with version '" + versionID + "'. Using last modified version '" + workflowVersion.getName()
                     + "' instead."));
         }
-
-        return first.isEmpty() ? versionID : first.get().getName();
+        return first;
     }
 
     @Override
@@ -543,6 +596,15 @@ public class WorkflowClient extends AbstractEntryClient<Workflow> {
         WesLauncher.launchWesCommand(clientWorkflowExecutionServiceApi, this, entry, inlineWorkflow, paramsPath, filePaths, verbose);
     }
 
+    /**
+     * Attempts to launch a workflow on a WES server once for each parameter file in a batch file
+     * @param clientWorkflowExecutionServiceApi The WES API client
+     * @param commandLaunch The parsed launch command
+     */
+    void wesLaunchBatch(WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi, WesCommandParser.CommandLaunch commandLaunch) {
+        WesLauncher.launchWesBatch(clientWorkflowExecutionServiceApi, this, commandLaunch);
+    }
+
     @Override
     public Client getClient() {
         return this.client;
@@ -663,7 +725,7 @@ public class WorkflowClient extends AbstractEntryClient<Workflow> {
         }
     }
 
-    protected void refreshAllEntries() {
+    protected void refreshAllEntries(ConcurrentRefresher refresher) {
         try {
             User user = usersApi.getUser();
             if (user == null) {
@@ -671,23 +733,12 @@ public class WorkflowClient extends AbstractEntryClient<Workflow> {
             }
 
             // add user to all workflows
-            final List<Workflow> updatedWorkflows = usersApi.addUserToDockstoreWorkflows(user.getId(), "").stream()
+            final List<Workflow> workflows = usersApi.addUserToDockstoreWorkflows(user.getId(), "").stream()
                 // Skip hosted workflows
                 .filter(workflow -> StringUtils.isNotEmpty(workflow.getGitUrl()))
-                .map(workflow -> {
-                    out(MessageFormat.format("Refreshing {0}", workflow.getFullWorkflowPath()));
-                    try {
-                        return workflowsApi.refresh1(workflow.getId(), true);
-                    } catch (ApiException ex) {
-                        err(ex.getMessage());
-                        return null;
-                    } catch (Exception ex) {
-                        exceptionMessage(ex, "", 0);
-                        return null;
-                    }
-                })
-                .filter(Objects::nonNull)
                 .collect(Collectors.toList());
+            final List<Workflow> updatedWorkflows = refresher.refreshAll("workflows", workflows, Workflow::getFullWorkflowPath,
+                workflow -> workflowsApi.refresh1(workflow.getId(), true));
             printLineBreak();
             printWorkflowList(updatedWorkflows);
         } catch (ApiException ex) {
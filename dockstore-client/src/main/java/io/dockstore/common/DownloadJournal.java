@@ -0,0 +1,201 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A small sidecar file recording which byte ranges of a partial download are known to be on disk.
+ *
+ * <p>
+ * Resumable downloads are written to <code>destination.part</code> with the journal in <code>destination.part.journal</code>.
+ * Sequential downloads only ever have one range starting at zero, segmented downloads have one range per segment.
+ * The journal also records where the download came from and a validator for the remote file, so that a partial file is never
+ * resumed against a different or changed source.
+ * </p>
+ */
+final class DownloadJournal {
+
+    static final String PART_SUFFIX = ".part";
+    static final String JOURNAL_SUFFIX = ".journal";
+    private static final Logger LOG = LoggerFactory.getLogger(DownloadJournal.class);
+    private static final Gson GSON = new Gson();
+
+    private transient Path journalPath;
+    private String source;
+    private String validator;
+    private long size = -1;
+    private boolean segmented;
+    private List<Range> completed = new ArrayList<>();
+
+    private DownloadJournal(Path journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    static Path getPartPath(Path destination) {
+        return Paths.get(destination.toString() + PART_SUFFIX);
+    }
+
+    static Path getJournalPath(Path partPath) {
+        return Paths.get(partPath.toString() + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * Opens the journal of a partial download, starting over when the partial download came from somewhere else.
+     *
+     * @param partPath  the partial download
+     * @param source    where the download comes from
+     * @param validator something that changes when the source changes, may be empty
+     * @return the journal
+     */
+    static DownloadJournal open(Path partPath, String source, String validator) throws IOException {
+        DownloadJournal journal = load(partPath);
+        if (!Objects.equals(source, journal.source) || !Objects.equals(validator, journal.validator) || !Files.exists(partPath)) {
+            Files.deleteIfExists(partPath);
+            journal = new DownloadJournal(getJournalPath(partPath));
+            journal.source = source;
+            journal.validator = validator;
+            journal.save();
+        }
+        return journal;
+    }
+
+    /**
+     * @param partPath the partial download
+     * @return the journal of partPath as last saved, empty if there is none
+     */
+    static DownloadJournal load(Path partPath) {
+        final Path journalPath = getJournalPath(partPath);
+        if (Files.exists(journalPath)) {
+            try (Reader reader = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+                DownloadJournal journal = GSON.fromJson(reader, DownloadJournal.class);
+                if (journal != null && journal.completed != null) {
+                    journal.journalPath = journalPath;
+                    return journal;
+                }
+            } catch (IOException | JsonParseException e) {
+                LOG.warn("Could not read download journal " + journalPath + ", starting over", e);
+            }
+        }
+        return new DownloadJournal(journalPath);
+    }
+
+    /**
+     * Forget everything downloaded so far, as the partial file is about to be rewritten.
+     *
+     * @param totalSize  the size of the complete file, -1 if unknown
+     * @param isSegmented true if ranges will be written out of order
+     */
+    synchronized void reset(long totalSize, boolean isSegmented) {
+        this.size = totalSize;
+        this.segmented = isSegmented;
+        completed.clear();
+    }
+
+    synchronized void addCompleted(long start, long end) {
+        List<Range> merged = new ArrayList<>();
+        Range added = new Range(start, end);
+        for (Range range : completed) {
+            if (range.end < added.start || range.start > added.end) {
+                merged.add(range);
+            } else {
+                added = new Range(Math.min(range.start, added.start), Math.max(range.end, added.end));
+            }
+        }
+        merged.add(added);
+        merged.sort((a, b) -> Long.compare(a.start, b.start));
+        completed = merged;
+    }
+
+    /**
+     * @return how many bytes from the start of the file are on disk
+     */
+    synchronized long getContiguousOffset() {
+        return getCompletedUpTo(0);
+    }
+
+    /**
+     * @param position a position in the file
+     * @return the end of the completed range containing position, or position if it has not been downloaded yet
+     */
+    synchronized long getCompletedUpTo(long position) {
+        for (Range range : completed) {
+            if (range.start <= position && position < range.end) {
+                return range.end;
+            }
+        }
+        return position;
+    }
+
+    synchronized long getCompletedBytes() {
+        return completed.stream().mapToLong(range -> range.end - range.start).sum();
+    }
+
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized boolean isSegmented() {
+        return segmented;
+    }
+
+    synchronized void save() {
+        try {
+            Path temporary = Files.createTempFile(journalPath.toAbsolutePath().getParent(), journalPath.getFileName().toString(), ".tmp");
+            try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                GSON.toJson(this, writer);
+            }
+            Files.move(temporary, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.error("Could not write download journal " + journalPath, e);
+        }
+    }
+
+    void delete() {
+        try {
+            Files.deleteIfExists(journalPath);
+        } catch (IOException e) {
+            LOG.error("Could not delete download journal " + journalPath, e);
+        }
+    }
+
+    /**
+     * Half-open range of bytes.
+     */
+    private static final class Range {
+        private final long start;
+        private final long end;
+
+        private Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A checksum that a provisioned file is expected to have, in the <code>algorithm$hex</code> form used by the CWL
+ * <code>checksum</code> field, e.g. <code>sha1$47a013e660d408619d894b20806b1d5086aab03b</code>.
+ *
+ * <p>
+ * Supported algorithms are md5, sha1, sha256, sha512 and crc32c. Downloads are checked while they are written with
+ * {@link #verifying(OutputStream)} so that the bytes are only read once.
+ * </p>
+ */
+final class ExpectedChecksum {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExpectedChecksum.class);
+    private static final String CRC32C_ALGORITHM = "crc32c";
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final String algorithm;
+    private final String hex;
+
+    private ExpectedChecksum(String algorithm, String hex) {
+        this.algorithm = algorithm;
+        this.hex = hex;
+    }
+
+    /**
+     * @param checksum a checksum in the form algorithm$hex, may be null
+     * @return the parsed checksum, empty if there is none or the algorithm is not supported
+     */
+    static Optional<ExpectedChecksum> parse(String checksum) {
+        if (checksum == null || checksum.isBlank()) {
+            return Optional.empty();
+        }
+        final int separator = checksum.indexOf('$');
+        if (separator <= 0 || separator == checksum.length() - 1) {
+            LOG.warn("Ignoring checksum " + checksum + ", expected algorithm$hex");
+            return Optional.empty();
+        }
+        final String algorithm = normalizeAlgorithm(checksum.substring(0, separator));
+        if (algorithm == null) {
+            LOG.warn("Ignoring checksum " + checksum + ", the algorithm is not supported");
+            return Optional.empty();
+        }
+        return Optional.of(new ExpectedChecksum(algorithm, checksum.substring(separator + 1).trim().toLowerCase(Locale.ROOT)));
+    }
+
+    private static String normalizeAlgorithm(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT).replace("-", "")) {
+        case "md5":
+            return "MD5";
+        case "sha1":
+            return "SHA-1";
+        case "sha256":
+            return "SHA-256";
+        case "sha512":
+            return "SHA-512";
+        case CRC32C_ALGORITHM:
+            return CRC32C_ALGORITHM;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @param out where the bytes go
+     * @return a stream that passes bytes on to out while computing their checksum
+     */
+    VerifyingOutputStream verifying(OutputStream out) {
+        return new VerifyingOutputStream(out);
+    }
+
+    /**
+     * Checks a file that was written without going through {@link #verifying(OutputStream)}.
+     *
+     * @param file the file to read
+     * @throws MismatchException if the file does not have this checksum
+     */
+    void verify(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file);
+            VerifyingOutputStream out = verifying(OutputStream.nullOutputStream())) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            out.check(file.toString());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + '$' + hex;
+    }
+
+    /**
+     * Thrown when provisioned bytes do not have the expected checksum, so whatever was written should be discarded.
+     */
+    static class MismatchException extends IOException {
+        MismatchException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Computes the checksum of everything written through it.
+     */
+    final class VerifyingOutputStream extends FilterOutputStream {
+
+        private final MessageDigest digest;
+        private final CRC32C crc32c;
+
+        private VerifyingOutputStream(OutputStream out) {
+            super(out);
+            if (CRC32C_ALGORITHM.equals(algorithm)) {
+                this.digest = null;
+                this.crc32c = new CRC32C();
+            } else {
+                try {
+                    this.digest = MessageDigest.getInstance(algorithm);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException("Missing required digest " + algorithm, e);
+                }
+                this.crc32c = null;
+            }
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (digest != null) {
+                digest.update((byte)b);
+            } else {
+                crc32c.update(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (digest != null) {
+                digest.update(b, off, len);
+            } else {
+                crc32c.update(b, off, len);
+            }
+        }
+
+        /**
+         * Call once everything has been written.
+         *
+         * @param description what was written, for the error message
+         * @throws MismatchException if the bytes written do not have the expected checksum
+         */
+        void check(String description) throws MismatchException {
+            final String actual = digest != null ? Hex.encodeHexString(digest.digest()) : String.format("%08x", crc32c.getValue());
+            if (!hex.equals(actual)) {
+                throw new MismatchException("Checksum mismatch for " + description + ", expected " + ExpectedChecksum.this + " but got "
+                    + algorithm + '$' + actual);
+            }
+        }
+    }
+}
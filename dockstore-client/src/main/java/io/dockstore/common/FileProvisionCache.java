@@ -0,0 +1,687 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import com.google.common.util.concurrent.Striped;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A content-addressed cache for provisioned input files.
+ *
+ * <p>
+ * Entries are keyed by the sha256 of the target path plus a validator (the ETag, Last-Modified and Content-Length of http(s) inputs,
+ * or the size and modification time of local inputs) and are laid out using a two character prefix directory, same as before.
+ * Each key is a hard link to a blob under {@value #CONTENT_DIRECTORY} named after the sha256 of its contents, so identical
+ * files provisioned from different locations share storage.
+ * </p>
+ *
+ * <p>
+ * Keys are guarded by striped locks rather than a single monitor, so independent inputs are looked up and populated in parallel
+ * while concurrent requests for the same key coalesce into a single download.
+ * </p>
+ *
+ * <p>
+ * Accesses are recorded in a {@link FileProvisionCacheIndex}. When {@value #CACHE_MAX_SIZE} is configured, blobs are evicted
+ * least recently (or least frequently) used first once the cache outgrows it. Keys that are being provisioned are pinned
+ * and never evicted. Evicting a blob only removes the links in the cache, files already linked into a working directory survive.
+ * </p>
+ */
+public class FileProvisionCache {
+
+    public static final String CACHE_MAX_SIZE = "cache-max-size";
+    public static final String CACHE_EVICTION_POLICY = "cache-eviction-policy";
+    static final String CONTENT_DIRECTORY = "content";
+    private static final Logger LOG = LoggerFactory.getLogger(FileProvisionCache.class);
+    private static final int LOCK_STRIPES = 1024;
+    private static final int PREFIX_LENGTH = 2;
+    private static final String SIZE_UNITS = "KMGT";
+    private static final int BITS_PER_UNIT = 10;
+    private static final Duration VALIDATOR_TIMEOUT = Duration.ofSeconds(10);
+    private static final HttpClient VALIDATOR_CLIENT = HttpClient.newBuilder().connectTimeout(VALIDATOR_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL).build();
+
+    private final Path cacheDirectory;
+    private final long maxSize;
+    private final EvictionPolicy evictionPolicy;
+    private final FileProvisionCacheIndex index;
+    private final Striped<Lock> locks = Striped.lazyWeakLock(LOCK_STRIPES);
+    // the number of threads provisioning each key, a key stays pinned until the last of them is done
+    private final Map<String, Integer> pinnedKeys = new ConcurrentHashMap<>();
+
+    public FileProvisionCache(String cacheDirectory) {
+        this(cacheDirectory, 0, EvictionPolicy.LRU);
+    }
+
+    /**
+     * @param cacheDirectory where the cache lives
+     * @param maxSize        the byte budget of the cache, 0 for unlimited
+     * @param evictionPolicy which entries to evict first when over budget
+     */
+    public FileProvisionCache(String cacheDirectory, long maxSize, EvictionPolicy evictionPolicy) {
+        this.cacheDirectory = Paths.get(cacheDirectory);
+        this.maxSize = maxSize;
+        this.evictionPolicy = evictionPolicy;
+        this.index = new FileProvisionCacheIndex(this.cacheDirectory);
+    }
+
+    /**
+     * Creates a cache using cache-dir, {@value #CACHE_MAX_SIZE} (bytes, or with a K/M/G/T suffix) and
+     * {@value #CACHE_EVICTION_POLICY} (lru or lfu) from the dockstore config.
+     *
+     * @param config the dockstore config
+     * @return the cache
+     */
+    public static FileProvisionCache fromConfig(INIConfiguration config) {
+        final long maxSize = parseSize(config.getString(CACHE_MAX_SIZE, "0"));
+        final EvictionPolicy policy = EvictionPolicy.valueOf(config.getString(CACHE_EVICTION_POLICY, "lru").trim().toUpperCase(Locale.ROOT));
+        return new FileProvisionCache(FileProvisioning.getCacheDirectory(config), maxSize, policy);
+    }
+
+    /**
+     * @param size a number of bytes, optionally followed by a binary K, M, G or T suffix
+     * @return the number of bytes
+     */
+    public static long parseSize(String size) {
+        String trimmed = size.trim().toUpperCase(Locale.ROOT);
+        if (trimmed.endsWith("B")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1);
+        }
+        int unit = trimmed.isEmpty() ? -1 : SIZE_UNITS.indexOf(trimmed.charAt(trimmed.length() - 1));
+        if (unit >= 0) {
+            return Long.parseLong(trimmed.substring(0, trimmed.length() - 1).trim()) << (BITS_PER_UNIT * (unit + 1));
+        }
+        return Long.parseLong(trimmed);
+    }
+
+    /**
+     * Provision a file through the cache. If a matching entry is cached, it is linked (or copied) into place, otherwise
+     * the download is run and the result is added to the cache.
+     *
+     * @param targetPath where the file comes from
+     * @param localPath  where the file should end up
+     * @param download   provisions targetPath to localPath when there is no usable cache entry
+     * @return true if the file was served from the cache
+     */
+    public boolean provision(String targetPath, Path localPath, Runnable download) {
+        return provision(targetPath, currentDirectory(), localPath, download);
+    }
+
+    /**
+     * Like {@link #provision(String, Path, Runnable)}, for a targetPath that may be relative to a directory other than the
+     * current one, such as the directory of a parameter file.
+     *
+     * @param targetPath    where the file comes from
+     * @param baseDirectory what a relative local targetPath is relative to
+     * @param localPath     where the file should end up
+     * @param download      provisions targetPath to localPath when there is no usable cache entry
+     * @return true if the file was served from the cache
+     */
+    public boolean provision(String targetPath, Path baseDirectory, Path localPath, Runnable download) {
+        final String key = createKey(targetPath, findValidator(targetPath, baseDirectory).orElse(""));
+        final Lock lock = locks.get(key);
+        pin(key);
+        lock.lock();
+        try {
+            final Path keyPath = getShardedPath(cacheDirectory, key);
+            if (Files.exists(keyPath) && linkFromCache(targetPath, keyPath, localPath)) {
+                index.recordHit(key, sizeOf(keyPath));
+                return true;
+            }
+            index.recordMiss();
+            download.run();
+            store(key, keyPath, localPath);
+            evictIfOverBudget();
+            return false;
+        } finally {
+            lock.unlock();
+            unpin(key);
+        }
+    }
+
+    /**
+     * Like {@link #provision(String, Path, Runnable)}, for files that are downloaded as part of a set. On a miss nothing is
+     * downloaded, the caller downloads the file and then calls {@link #add(String, Path)}. The miss is recorded here, so each
+     * lookup counts once however the file is added afterwards.
+     *
+     * @param targetPath where the file comes from
+     * @param localPath  where the file should end up
+     * @return true if the file was served from the cache
+     */
+    public boolean provisionIfCached(String targetPath, Path localPath) {
+        final String key = createKey(targetPath, findValidator(targetPath).orElse(""));
+        final Lock lock = locks.get(key);
+        pin(key);
+        lock.lock();
+        try {
+            final Path keyPath = getShardedPath(cacheDirectory, key);
+            if (Files.exists(keyPath) && linkFromCache(targetPath, keyPath, localPath)) {
+                index.recordHit(key, sizeOf(keyPath));
+                return true;
+            }
+            index.recordMiss();
+            return false;
+        } finally {
+            lock.unlock();
+            unpin(key);
+        }
+    }
+
+    /**
+     * Adds a file that was downloaded after a miss in {@link #provisionIfCached(String, Path)}.
+     *
+     * @param targetPath where the file came from
+     * @param localPath  where the file was downloaded to
+     */
+    public void add(String targetPath, Path localPath) {
+        final String key = createKey(targetPath, findValidator(targetPath).orElse(""));
+        final Lock lock = locks.get(key);
+        pin(key);
+        lock.lock();
+        try {
+            store(key, getShardedPath(cacheDirectory, key), localPath);
+            evictIfOverBudget();
+        } finally {
+            lock.unlock();
+            unpin(key);
+        }
+    }
+
+    /**
+     * Writes any pending changes to the index to disk. Accesses are only recorded in memory until then.
+     */
+    public void flush() {
+        index.flush();
+    }
+
+    /**
+     * Evicts unpinned blobs, along with every key linked to them, until the cache fits in the budget.
+     *
+     * @param budget the number of bytes the cache may use
+     * @return the number of blobs evicted
+     */
+    public int prune(long budget) {
+        try {
+            return evict(budget);
+        } finally {
+            flush();
+        }
+    }
+
+    void pin(String key) {
+        pinnedKeys.merge(key, 1, Integer::sum);
+    }
+
+    void unpin(String key) {
+        pinnedKeys.computeIfPresent(key, (pinned, count) -> count > 1 ? count - 1 : null);
+    }
+
+    /**
+     * Only looks at the entries when the tracked size is over the budget, so that a cache within its budget costs nothing.
+     */
+    private void evictIfOverBudget() {
+        if (maxSize > 0 && index.getSize() > maxSize) {
+            evict(maxSize);
+        }
+    }
+
+    private synchronized int evict(long budget) {
+        if (index.getSize() <= budget) {
+            // another thread already evicted enough while this one waited
+            return 0;
+        }
+        Map<String, List<FileProvisionCacheIndex.Entry>> blobs = groupByBlob(index.getEntries());
+        long size = blobs.values().stream().mapToLong(FileProvisionCache::blobSize).sum();
+        int evicted = 0;
+        for (List<FileProvisionCacheIndex.Entry> blob : sortForEviction(blobs.values())) {
+            if (size <= budget) {
+                break;
+            }
+            if (blob.stream().anyMatch(entry -> pinnedKeys.containsKey(entry.getKey()))) {
+                continue;
+            }
+            try {
+                for (FileProvisionCacheIndex.Entry entry : blob) {
+                    Files.deleteIfExists(getShardedPath(cacheDirectory, entry.getKey()));
+                }
+                deleteBlob(blob.get(0).getContent());
+            } catch (IOException e) {
+                LOG.error("Could not evict cache entry " + blob.get(0).getKey(), e);
+                continue;
+            }
+            final long blobSize = blobSize(blob);
+            index.recordEviction(blob.stream().map(FileProvisionCacheIndex.Entry::getKey).collect(Collectors.toList()), blobSize);
+            size -= blobSize;
+            evicted++;
+        }
+        return evicted;
+    }
+
+    /**
+     * Reconciles the index with the cache directory. Blobs whose contents no longer match their sha256 are removed along with
+     * their keys, index entries whose files are gone are dropped and files cached before the index existed are adopted.
+     *
+     * @return what was found
+     */
+    public synchronized VerifyResult verify() {
+        VerifyResult result = new VerifyResult();
+        Map<String, List<FileProvisionCacheIndex.Entry>> blobs = groupByBlob(index.getEntries());
+        try (Stream<Path> contents = listShardedFiles(cacheDirectory.resolve(CONTENT_DIRECTORY))) {
+            for (Path blobPath : contents.collect(Collectors.toList())) {
+                result.checked++;
+                final String expected = blobPath.getParent().getFileName().toString() + blobPath.getFileName();
+                if (!expected.equals(sha256(blobPath))) {
+                    result.corrupt++;
+                    List<FileProvisionCacheIndex.Entry> keys = blobs.getOrDefault(expected, List.of());
+                    for (FileProvisionCacheIndex.Entry entry : keys) {
+                        Files.deleteIfExists(getShardedPath(cacheDirectory, entry.getKey()));
+                    }
+                    Files.deleteIfExists(blobPath);
+                    index.remove(keys.stream().map(FileProvisionCacheIndex.Entry::getKey).collect(Collectors.toList()));
+                }
+            }
+            for (FileProvisionCacheIndex.Entry entry : index.getEntries()) {
+                if (!Files.exists(getShardedPath(cacheDirectory, entry.getKey()))) {
+                    result.missing++;
+                    index.remove(List.of(entry.getKey()));
+                }
+            }
+            adoptUnindexedKeys(result);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            flush();
+        }
+        return result;
+    }
+
+    public Path getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    public Statistics getStatistics() {
+        return index.getStatistics();
+    }
+
+    public int getEntryCount() {
+        return index.getEntries().size();
+    }
+
+    /**
+     * @return the number of bytes used by the cache, counting blobs shared by several keys once
+     */
+    public long getSize() {
+        return index.getSize();
+    }
+
+    /**
+     * Keys stay compatible with entries created before validators were introduced when no validator can be determined.
+     *
+     * @param targetPath where a file comes from
+     * @param validator  something that changes when the contents of targetPath change, may be empty
+     * @return a sha256 key
+     */
+    static String createKey(String targetPath, String validator) {
+        return DigestUtils.sha256Hex(validator.isEmpty() ? targetPath : targetPath + '\n' + validator);
+    }
+
+    static Path getShardedPath(Path directory, String sha256) {
+        return directory.resolve(sha256.substring(0, PREFIX_LENGTH)).resolve(sha256.substring(PREFIX_LENGTH));
+    }
+
+    /**
+     * Figure out a validator for a target path without downloading it.
+     *
+     * @param targetPath where a file comes from
+     * @return ETag/Last-Modified/Content-Length for http(s), size and modification time for local files, empty when unknown
+     */
+    static Optional<String> findValidator(String targetPath) {
+        return findValidator(targetPath, currentDirectory());
+    }
+
+    /**
+     * Figure out a validator for a target path without downloading it.
+     *
+     * @param targetPath    where a file comes from
+     * @param baseDirectory what a relative local targetPath is relative to
+     * @return ETag/Last-Modified/Content-Length for http(s), size and modification time for local files, empty when unknown
+     */
+    static Optional<String> findValidator(String targetPath, Path baseDirectory) {
+        try {
+            URI uri = FileProvisioning.createURIFromUnencodedPath(targetPath);
+            String scheme = uri.getScheme() == null ? "" : uri.getScheme().toLowerCase();
+            switch (scheme) {
+            case "http":
+            case "https":
+                return findHttpValidator(uri);
+            case "file":
+                return findLocalValidator(Paths.get(uri));
+            case "":
+                return findLocalValidator(baseDirectory.resolve(targetPath));
+            default:
+                return Optional.empty();
+            }
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Could not determine a cache validator for " + targetPath, e);
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<String> findHttpValidator(URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(uri).method("HEAD", HttpRequest.BodyPublishers.noBody()).timeout(VALIDATOR_TIMEOUT).build();
+        try {
+            HttpResponse<Void> response = VALIDATOR_CLIENT.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= HttpStatus.SC_BAD_REQUEST) {
+                return Optional.empty();
+            }
+            Optional<String> eTag = response.headers().firstValue("ETag");
+            if (eTag.isPresent()) {
+                return eTag;
+            }
+            Optional<String> lastModified = response.headers().firstValue("Last-Modified");
+            Optional<String> contentLength = response.headers().firstValue("Content-Length");
+            if (lastModified.isEmpty() && contentLength.isEmpty()) {
+                return Optional.empty();
+            }
+            return Optional.of(lastModified.orElse("") + '/' + contentLength.orElse(""));
+        } catch (IOException e) {
+            LOG.debug("Could not probe " + uri + " for a cache validator", e);
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    private static Path currentDirectory() {
+        return Paths.get(System.getProperty("user.dir"));
+    }
+
+    private static Optional<String> findLocalValidator(Path path) {
+        try {
+            if (Files.isRegularFile(path)) {
+                return Optional.of(Files.size(path) + "/" + Files.getLastModifiedTime(path).toMillis());
+            }
+        } catch (IOException e) {
+            LOG.debug("Could not stat " + path + " for a cache validator", e);
+        }
+        return Optional.empty();
+    }
+
+    private boolean linkFromCache(String targetPath, Path keyPath, Path localPath) {
+        System.out.println("Found file " + targetPath + " in cache, hard-linking");
+        try {
+            Files.createDirectories(localPath.getParent());
+            Files.createLink(localPath, keyPath);
+        } catch (FileAlreadyExistsException e) {
+            LOG.info(localPath + " already exists, not replacing it with the cached copy");
+        } catch (IOException e) {
+            LOG.error("Cannot create hard link to cached file, you may want to move your cache \n" + e.getMessage());
+            try {
+                Files.copy(keyPath, localPath);
+            } catch (IOException e1) {
+                LOG.error("Could not copy " + targetPath + " from cache to " + localPath, e1);
+                return false;
+            }
+            System.out.println("Found file " + targetPath + " in cache, copied");
+        }
+        return true;
+    }
+
+    /**
+     * Adds a freshly provisioned file to the cache, sharing a blob with any cached file that has the same contents.
+     */
+    private void store(String key, Path keyPath, Path localPath) {
+        // do not cache directories or files that failed to provision
+        if (!Files.isRegularFile(localPath) || Files.exists(keyPath)) {
+            return;
+        }
+        System.out.println("Caching file " + localPath + " in cache, hard-linking");
+        try {
+            final String contentSha256 = sha256(localPath);
+            final Path blobPath = getShardedPath(cacheDirectory.resolve(CONTENT_DIRECTORY), contentSha256);
+            Files.createDirectories(blobPath.getParent());
+            createLinkIfAbsent(blobPath, localPath);
+            Files.createDirectories(keyPath.getParent());
+            createLinkIfAbsent(keyPath, blobPath);
+            index.recordStore(key, contentSha256, Files.size(blobPath));
+        } catch (IOException e) {
+            LOG.error("Cannot create hard link for local file, skipping", e);
+        }
+    }
+
+    private void adoptUnindexedKeys(VerifyResult result) throws IOException {
+        Set<String> indexed = index.getEntries().stream().map(FileProvisionCacheIndex.Entry::getKey).collect(Collectors.toSet());
+        try (Stream<Path> keys = listShardedFiles(cacheDirectory)) {
+            for (Path keyPath : keys.collect(Collectors.toList())) {
+                final String key = keyPath.getParent().getFileName().toString() + keyPath.getFileName();
+                if (!indexed.contains(key)) {
+                    final String contentSha256 = sha256(keyPath);
+                    final Path blobPath = getShardedPath(cacheDirectory.resolve(CONTENT_DIRECTORY), contentSha256);
+                    Files.createDirectories(blobPath.getParent());
+                    createLinkIfAbsent(blobPath, keyPath);
+                    index.adopt(key, contentSha256, Files.size(keyPath), Files.getLastModifiedTime(keyPath).toMillis());
+                    result.adopted++;
+                }
+            }
+        }
+    }
+
+    private void deleteBlob(String contentSha256) throws IOException {
+        if (!contentSha256.isEmpty()) {
+            Files.deleteIfExists(getShardedPath(cacheDirectory.resolve(CONTENT_DIRECTORY), contentSha256));
+        }
+    }
+
+    private List<List<FileProvisionCacheIndex.Entry>> sortForEviction(Iterable<List<FileProvisionCacheIndex.Entry>> blobs) {
+        Comparator<List<FileProvisionCacheIndex.Entry>> lastAccess = Comparator
+            .comparingLong(blob -> blob.stream().mapToLong(FileProvisionCacheIndex.Entry::getLastAccess).max().orElse(0));
+        Comparator<List<FileProvisionCacheIndex.Entry>> accessCount = Comparator
+            .comparingLong(blob -> blob.stream().mapToLong(FileProvisionCacheIndex.Entry::getAccessCount).sum());
+        Comparator<List<FileProvisionCacheIndex.Entry>> order = evictionPolicy == EvictionPolicy.LFU
+            ? accessCount.thenComparing(lastAccess) : lastAccess.thenComparing(accessCount);
+        List<List<FileProvisionCacheIndex.Entry>> sorted = new ArrayList<>();
+        blobs.forEach(sorted::add);
+        sorted.sort(order);
+        return sorted;
+    }
+
+    /**
+     * Keys sharing a blob are grouped together, keys cached before blobs were introduced each form their own group.
+     */
+    private static Map<String, List<FileProvisionCacheIndex.Entry>> groupByBlob(List<FileProvisionCacheIndex.Entry> entries) {
+        Map<String, List<FileProvisionCacheIndex.Entry>> blobs = new LinkedHashMap<>();
+        for (FileProvisionCacheIndex.Entry entry : entries) {
+            final String blob = entry.getContent().isEmpty() ? "key:" + entry.getKey() : entry.getContent();
+            blobs.computeIfAbsent(blob, k -> new ArrayList<>()).add(entry);
+        }
+        return blobs;
+    }
+
+    private static long blobSize(List<FileProvisionCacheIndex.Entry> blob) {
+        return blob.stream().mapToLong(FileProvisionCacheIndex.Entry::getSize).max().orElse(0);
+    }
+
+    private static Stream<Path> listShardedFiles(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Stream.empty();
+        }
+        return Files.walk(directory, 2).filter(path -> directory.equals(path.getParent().getParent()))
+            .filter(path -> path.getParent().getFileName().toString().length() == PREFIX_LENGTH).filter(Files::isRegularFile);
+    }
+
+    private static String sha256(Path path) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return DigestUtils.sha256Hex(inputStream);
+        }
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static void createLinkIfAbsent(Path link, Path existing) throws IOException {
+        try {
+            Files.createLink(link, existing);
+        } catch (FileAlreadyExistsException e) {
+            // another dockstore process populated this entry first, which is fine since the contents are identical
+            LOG.debug(link + " was created concurrently", e);
+        }
+    }
+
+    public enum EvictionPolicy {
+        /**
+         * Evict the least recently used blobs first, breaking ties by frequency.
+         */
+        LRU,
+        /**
+         * Evict the least frequently used blobs first, breaking ties by recency.
+         */
+        LFU
+    }
+
+    /**
+     * Cumulative counters since the cache was created or last cleaned.
+     */
+    public static class Statistics {
+        private long hits;
+        private long misses;
+        private long bytesSaved;
+        private long evictions;
+        private long bytesEvicted;
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getBytesSaved() {
+            return bytesSaved;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getBytesEvicted() {
+            return bytesEvicted;
+        }
+
+        public double getHitRate() {
+            return hits + misses == 0 ? 0 : (double)hits / (hits + misses);
+        }
+
+        void recordHit(long size) {
+            hits++;
+            bytesSaved += size;
+        }
+
+        void recordMiss() {
+            misses++;
+        }
+
+        void recordEviction(long size) {
+            evictions++;
+            bytesEvicted += size;
+        }
+
+        void add(Statistics other) {
+            hits += other.hits;
+            misses += other.misses;
+            bytesSaved += other.bytesSaved;
+            evictions += other.evictions;
+            bytesEvicted += other.bytesEvicted;
+        }
+
+        Statistics copy() {
+            Statistics statistics = new Statistics();
+            statistics.hits = hits;
+            statistics.misses = misses;
+            statistics.bytesSaved = bytesSaved;
+            statistics.evictions = evictions;
+            statistics.bytesEvicted = bytesEvicted;
+            return statistics;
+        }
+    }
+
+    /**
+     * What {@link #verify()} found.
+     */
+    public static class VerifyResult {
+        private int checked;
+        private int corrupt;
+        private int missing;
+        private int adopted;
+
+        public int getChecked() {
+            return checked;
+        }
+
+        public int getCorrupt() {
+            return corrupt;
+        }
+
+        public int getMissing() {
+            return missing;
+        }
+
+        public int getAdopted() {
+            return adopted;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The on-disk access index of a {@link FileProvisionCache}, tracking the size, last access and access count of each key along
+ * with cumulative hit/miss/eviction counters.
+ *
+ * <p>
+ * Changes are kept in memory and the index is rewritten atomically by {@link #flush()}, so that recording an access does not
+ * cost a rewrite of every entry. The size of the cache is tracked as entries change, counting blobs shared by several keys
+ * once.
+ * </p>
+ *
+ * <p>
+ * Several dockstore processes may share a cache directory. A flush holds a lock on {@value #LOCK_FILENAME}, reads the index
+ * that is on disk and applies only the changes made by this process since its last flush (stores, accesses, evictions and
+ * counters) before replacing it, so entries added by other processes are kept and count towards the budget. The merged index
+ * then becomes this process's view of the cache.
+ * </p>
+ */
+final class FileProvisionCacheIndex {
+
+    static final String INDEX_FILENAME = "index.json";
+    static final String LOCK_FILENAME = INDEX_FILENAME + ".lock";
+    private static final Logger LOG = LoggerFactory.getLogger(FileProvisionCacheIndex.class);
+    private static final Gson GSON = new Gson();
+    // file locks are held by the whole JVM, so indexes of the same directory in one JVM take turns here first
+    private static final Map<Path, Object> WRITE_LOCKS = new ConcurrentHashMap<>();
+
+    private final Path indexPath;
+    private final Object writeLock;
+    private final Map<String, Integer> blobReferences = new HashMap<>();
+    private IndexFile indexFile = new IndexFile();
+    private Changes changes = new Changes();
+    private long size;
+
+    FileProvisionCacheIndex(Path cacheDirectory) {
+        this.indexPath = cacheDirectory.resolve(INDEX_FILENAME);
+        this.writeLock = WRITE_LOCKS.computeIfAbsent(indexPath.toAbsolutePath().normalize(), path -> new Object());
+        final IndexFile loaded = read();
+        if (loaded != null) {
+            indexFile = loaded;
+            indexFile.entries.values().forEach(this::track);
+        }
+    }
+
+    synchronized void recordHit(String key, long hitSize) {
+        Entry entry = untrack(indexFile.entries.computeIfAbsent(key, Entry::new));
+        entry.size = hitSize;
+        entry.touch();
+        track(entry);
+        indexFile.statistics.recordHit(hitSize);
+        changes.put(entry, 1);
+        changes.statistics.recordHit(hitSize);
+    }
+
+    synchronized void recordMiss() {
+        indexFile.statistics.recordMiss();
+        changes.statistics.recordMiss();
+        changes.dirty = true;
+    }
+
+    synchronized void recordStore(String key, String content, long storedSize) {
+        Entry entry = untrack(indexFile.entries.computeIfAbsent(key, Entry::new));
+        entry.content = content;
+        entry.size = storedSize;
+        entry.touch();
+        track(entry);
+        changes.put(entry, 1);
+    }
+
+    synchronized void recordEviction(Collection<String> keys, long evictedSize) {
+        remove(keys);
+        indexFile.statistics.recordEviction(evictedSize);
+        changes.statistics.recordEviction(evictedSize);
+    }
+
+    synchronized void remove(Collection<String> keys) {
+        keys.forEach(key -> {
+            untrack(indexFile.entries.remove(key));
+            changes.remove(key);
+        });
+    }
+
+    /**
+     * Adds an entry that exists on disk but is unknown to the index, such as one created before the index existed.
+     */
+    synchronized void adopt(String key, String content, long size, long lastAccess) {
+        if (!indexFile.entries.containsKey(key)) {
+            Entry entry = new Entry(key);
+            entry.content = content;
+            entry.size = size;
+            entry.lastAccess = lastAccess;
+            indexFile.entries.put(key, entry);
+            track(entry);
+            changes.put(entry, 0);
+        }
+    }
+
+    /**
+     * @return the number of bytes used by the indexed entries, counting blobs shared by several keys once
+     */
+    synchronized long getSize() {
+        return size;
+    }
+
+    synchronized List<Entry> getEntries() {
+        List<Entry> copies = new ArrayList<>();
+        indexFile.entries.values().forEach(entry -> copies.add(entry.copy()));
+        return copies;
+    }
+
+    synchronized FileProvisionCache.Statistics getStatistics() {
+        return indexFile.statistics.copy();
+    }
+
+    /**
+     * @return the index on disk, null if there is none or it cannot be read
+     */
+    private IndexFile read() {
+        if (!Files.exists(indexPath)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(indexPath, StandardCharsets.UTF_8)) {
+            IndexFile loaded = GSON.fromJson(reader, IndexFile.class);
+            if (loaded != null && loaded.entries != null && loaded.statistics != null) {
+                return loaded;
+            }
+        } catch (IOException | JsonParseException e) {
+            LOG.warn("Could not read cache index " + indexPath + ", starting a new one", e);
+        }
+        return null;
+    }
+
+    /**
+     * Merges the changes made since the last flush into the index on disk, if there are any. Only taking the changes and
+     * installing the merged index hold the index's monitor, so accesses are not blocked by the write.
+     */
+    void flush() {
+        synchronized (writeLock) {
+            final Changes flushed;
+            final IndexFile current;
+            synchronized (this) {
+                if (!changes.dirty) {
+                    return;
+                }
+                flushed = changes;
+                changes = new Changes();
+                current = indexFile.copy();
+            }
+            final IndexFile merged;
+            try {
+                Files.createDirectories(indexPath.getParent());
+                final Path lockPath = indexPath.resolveSibling(LOCK_FILENAME);
+                try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                    FileLock ignored = channel.lock()) {
+                    final IndexFile onDisk = read();
+                    if (onDisk == null) {
+                        merged = current;
+                    } else {
+                        flushed.applyTo(onDisk);
+                        merged = onDisk;
+                    }
+                    Path temporary = Files.createTempFile(indexPath.getParent(), INDEX_FILENAME, ".tmp");
+                    try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+                        GSON.toJson(merged, writer);
+                    }
+                    Files.move(temporary, indexPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                LOG.error("Could not write cache index " + indexPath, e);
+                synchronized (this) {
+                    flushed.addAll(changes);
+                    changes = flushed;
+                }
+                return;
+            }
+            synchronized (this) {
+                // what other processes wrote becomes visible, along with what this one changed during the write
+                changes.applyTo(merged);
+                indexFile = merged;
+                blobReferences.clear();
+                size = 0;
+                indexFile.entries.values().forEach(this::track);
+            }
+        }
+    }
+
+    /**
+     * Keys sharing a blob are counted once, keys cached before blobs were introduced each count on their own.
+     */
+    private static String blobOf(Entry entry) {
+        return entry.content.isEmpty() ? "key:" + entry.key : entry.content;
+    }
+
+    private void track(Entry entry) {
+        if (blobReferences.merge(blobOf(entry), 1, Integer::sum) == 1) {
+            size += entry.size;
+        }
+    }
+
+    private Entry untrack(Entry entry) {
+        if (entry != null && blobReferences.containsKey(blobOf(entry))) {
+            if (blobReferences.merge(blobOf(entry), -1, Integer::sum) == 0) {
+                blobReferences.remove(blobOf(entry));
+                size -= entry.size;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * One cache key. Keys that share a content blob are evicted together.
+     */
+    static class Entry {
+        private String key;
+        private String content = "";
+        private long size;
+        private long lastAccess;
+        private long accessCount;
+
+        Entry(String key) {
+            this.key = key;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the sha256 of the contents, empty for entries cached before blobs were introduced
+         */
+        String getContent() {
+            return content;
+        }
+
+        long getSize() {
+            return size;
+        }
+
+        long getLastAccess() {
+            return lastAccess;
+        }
+
+        long getAccessCount() {
+            return accessCount;
+        }
+
+        private void touch() {
+            lastAccess = System.currentTimeMillis();
+            accessCount++;
+        }
+
+        private void merge(Entry existing, long accesses) {
+            lastAccess = Math.max(lastAccess, existing.lastAccess);
+            accessCount = existing.accessCount + accesses;
+        }
+
+        private Entry copy() {
+            Entry entry = new Entry(key);
+            entry.content = content;
+            entry.size = size;
+            entry.lastAccess = lastAccess;
+            entry.accessCount = accessCount;
+            return entry;
+        }
+    }
+
+    private static class IndexFile {
+        private Map<String, Entry> entries = new HashMap<>();
+        private FileProvisionCache.Statistics statistics = new FileProvisionCache.Statistics();
+
+        private IndexFile copy() {
+            IndexFile copy = new IndexFile();
+            entries.forEach((key, entry) -> copy.entries.put(key, entry.copy()));
+            copy.statistics = statistics.copy();
+            return copy;
+        }
+    }
+
+    /**
+     * What this process changed in the index since it was last flushed.
+     */
+    private static final class Changes {
+        private final Map<String, Entry> stored = new HashMap<>();
+        private final Map<String, Long> accesses = new HashMap<>();
+        private final Set<String> removed = new HashSet<>();
+        private final FileProvisionCache.Statistics statistics = new FileProvisionCache.Statistics();
+        private boolean dirty;
+
+        /**
+         * @param entry       the entry as it is now
+         * @param newAccesses the number of accesses that were just recorded
+         */
+        private void put(Entry entry, long newAccesses) {
+            stored.put(entry.key, entry.copy());
+            accesses.merge(entry.key, newAccesses, Long::sum);
+            removed.remove(entry.key);
+            dirty = true;
+        }
+
+        private void remove(String key) {
+            stored.remove(key);
+            accesses.remove(key);
+            removed.add(key);
+            dirty = true;
+        }
+
+        /**
+         * Applies these changes on top of an index that other processes may have changed too. The access counts of entries
+         * that are already there are added to rather than replaced.
+         */
+        private void applyTo(IndexFile indexFile) {
+            removed.forEach(indexFile.entries::remove);
+            stored.forEach((key, entry) -> {
+                final Entry merged = entry.copy();
+                final Entry existing = indexFile.entries.get(key);
+                if (existing != null) {
+                    merged.merge(existing, accesses.getOrDefault(key, 0L));
+                }
+                indexFile.entries.put(key, merged);
+            });
+            indexFile.statistics.add(statistics);
+        }
+
+        /**
+         * Adds changes that were made after these ones.
+         */
+        private void addAll(Changes later) {
+            later.removed.forEach(this::remove);
+            later.stored.forEach((key, entry) -> put(entry, later.accesses.getOrDefault(key, 0L)));
+            statistics.add(later.statistics);
+            dirty |= later.dirty;
+        }
+    }
+}
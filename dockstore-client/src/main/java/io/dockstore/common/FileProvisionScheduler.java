@@ -0,0 +1,158 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The long-lived scheduler behind a {@link FileProvisioning}.
+ *
+ * <p>
+ * Transfers from every plugin share one bounded pool of daemon threads. Schemes listed in the
+ * {@value #FILE_PROVISION_SCHEME_THREADS} config (e.g. <code>s3:4,gs:2</code>) are additionally capped, excess transfers for
+ * such a scheme wait in a queue rather than occupying a pool thread. Per-plugin work that needs to wait on transfers, such as
+ * prepareFileSet and finalizeFileSet around a group of uploads, runs on separate coordinator threads so it never blocks the
+ * transfer pool and different plugins overlap freely.
+ * </p>
+ */
+class FileProvisionScheduler {
+
+    static final String FILE_PROVISION_SCHEME_THREADS = "file-provision-scheme-threads";
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final int threads;
+    private final ExecutorService transferPool;
+    private final ExecutorService coordinatorPool;
+    private final Map<String, SchemeQueue> schemeQueues = new HashMap<>();
+
+    /**
+     * @param threads      the number of concurrent transfers across all schemes
+     * @param schemeLimits the number of concurrent transfers allowed for particular schemes
+     */
+    FileProvisionScheduler(int threads, Map<String, Integer> schemeLimits) {
+        this.threads = threads;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("file-provision-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        this.transferPool = executor;
+        this.coordinatorPool = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("file-provision-coordinator-%d").setDaemon(true).build());
+        schemeLimits.forEach((scheme, limit) -> schemeQueues.put(scheme.toLowerCase(Locale.ROOT), new SchemeQueue(limit)));
+    }
+
+    /**
+     * @param value a comma separated list of scheme:threads, may be empty
+     * @return threads by scheme
+     */
+    static Map<String, Integer> parseSchemeLimits(String value) {
+        Map<String, Integer> limits = new HashMap<>();
+        for (String limit : Splitter.on(',').trimResults().omitEmptyStrings().split(value)) {
+            int separator = limit.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected scheme:threads in " + FILE_PROVISION_SCHEME_THREADS + " but found " + limit);
+            }
+            limits.put(limit.substring(0, separator).trim(), Integer.parseInt(limit.substring(separator + 1).trim()));
+        }
+        return limits;
+    }
+
+    /**
+     * Schedule a single transfer.
+     *
+     * @param scheme the scheme of the remote end of the transfer, null for local files
+     * @param task   the transfer
+     * @return the result of the transfer
+     */
+    <T> Future<T> submitTransfer(String scheme, Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        SchemeQueue queue = scheme == null ? null : schemeQueues.get(scheme.toLowerCase(Locale.ROOT));
+        if (queue == null) {
+            transferPool.execute(future);
+        } else {
+            queue.offer(future);
+        }
+        return future;
+    }
+
+    /**
+     * @param scheme the scheme of the remote end of transfers, null for local files
+     * @return how many transfers for scheme can run at once
+     */
+    int getConcurrency(String scheme) {
+        SchemeQueue queue = scheme == null ? null : schemeQueues.get(scheme.toLowerCase(Locale.ROOT));
+        return Math.max(1, queue == null ? threads : Math.min(threads, queue.limit));
+    }
+
+    /**
+     * Schedule work that waits on transfers, such as a whole group of uploads for one plugin.
+     *
+     * @param task the work
+     * @return the result of the work
+     */
+    <T> Future<T> submitCoordinator(Callable<T> task) {
+        return coordinatorPool.submit(task);
+    }
+
+    /**
+     * Transfers for a scheme with a concurrency limit, handed to the transfer pool as permits free up.
+     */
+    private final class SchemeQueue {
+        private final int limit;
+        private final Deque<Runnable> pending = new ArrayDeque<>();
+        private int running;
+
+        private SchemeQueue(int limit) {
+            this.limit = Math.max(1, limit);
+        }
+
+        private synchronized void offer(Runnable transfer) {
+            pending.add(transfer);
+            drain();
+        }
+
+        private synchronized void finished() {
+            running--;
+            drain();
+        }
+
+        private void drain() {
+            while (running < limit && !pending.isEmpty()) {
+                Runnable transfer = pending.poll();
+                running++;
+                transferPool.execute(() -> {
+                    try {
+                        transfer.run();
+                    } finally {
+                        finished();
+                    }
+                });
+            }
+        }
+    }
+}
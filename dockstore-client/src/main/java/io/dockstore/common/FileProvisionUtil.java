@@ -20,7 +20,7 @@ import static io.dockstore.client.cli.Client.PLUGIN;
 
 import com.google.gson.Gson;
 import com.google.gson.stream.JsonReader;
-import io.dockstore.provision.ProgressPrinter;
+import io.dockstore.provision.TransferEventBus;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -77,6 +77,14 @@ public final class FileProvisionUtil {
     }
 
     static boolean downloadFromVFS2(String path, Path targetFilePath, int threads) {
+        return downloadFromVFS2(path, targetFilePath, threads, null);
+    }
+
+    /**
+     * @param checksum checked while the file is written, may be null
+     * @return true on success, false if the download failed or did not match checksum
+     */
+    static boolean downloadFromVFS2(String path, Path targetFilePath, int threads, ExpectedChecksum checksum) {
 
         /** An extension of the Http4sFileProvider class to allow for setting the cookie specification to something
          * other than DEFAULT. This cannot be set through the fileSystemOptions argument.
@@ -127,9 +135,14 @@ public final class FileProvisionUtil {
             // trigger a copy from the URL to a local file path that's a UUID to avoid collision
             try (FileObject src = fsManager.resolveFile(newPath, opts);
                 FileObject dest = fsManager.resolveFile(targetFilePath.toFile().getAbsolutePath())) {
-                copyFromInputStreamToOutputStream(src, dest, threads);
+                copyFromInputStreamToOutputStream(src, dest, threads, checksum);
             }
             return true;
+        } catch (ExpectedChecksum.MismatchException e) {
+            LOG.error(e.getMessage());
+            // a corrupt file must not be resumed or reused
+            FileUtils.deleteQuietly(targetFilePath.toFile());
+            return false;
         } catch (IOException e) {
             LOG.error(e.getMessage());
             return false;
@@ -142,9 +155,20 @@ public final class FileProvisionUtil {
      * @throws IOException throws an exception if unable to provision input files
      */
     static void copyFromInputStreamToOutputStream(FileObject src, FileObject dest, int threads) throws IOException {
-        CopyStreamListener listener = new CopyStreamListener() {
-            ProgressPrinter printer = new ProgressPrinter(threads, threads > 1 ? src.toString() : "");
+        copyFromInputStreamToOutputStream(src, dest, threads, null);
+    }
 
+    /**
+     * Copy from file object to file object while displaying progress and computing the checksum of the copied bytes
+     *
+     * @param checksum the checksum the copied bytes must have, may be null
+     * @throws IOException throws an exception if unable to provision input files
+     * @throws ExpectedChecksum.MismatchException if the copied bytes do not have checksum
+     */
+    static void copyFromInputStreamToOutputStream(FileObject src, FileObject dest, int threads, ExpectedChecksum checksum) throws IOException {
+        long size = getSize(src).orElse(CopyStreamEvent.UNKNOWN_STREAM_SIZE);
+        final TransferEventBus.Transfer transfer = TransferEventBus.getInstance().start(src.toString(), size);
+        CopyStreamListener listener = new CopyStreamListener() {
             @Override
             public void bytesTransferred(CopyStreamEvent event) {
                 /* do nothing */
@@ -152,14 +176,12 @@ public final class FileProvisionUtil {
 
             @Override
             public void bytesTransferred(long totalBytesTransferred, int bytesTransferred, long streamSize) {
-                synchronized (System.out) {
-                    printer.handleProgress(totalBytesTransferred, streamSize);
-                }
+                // rendered by the event bus, so this does not contend with other transfers
+                transfer.add(bytesTransferred);
             }
         };
 
-        long size = getSize(src).orElse(CopyStreamEvent.UNKNOWN_STREAM_SIZE);
-
+        boolean success = false;
         try (FileContent srcContent = src.getContent();
             FileContent destContent = dest.getContent();
             InputStream inputStream = srcContent.getInputStream();
@@ -167,13 +189,21 @@ public final class FileProvisionUtil {
             // a larger buffer improves copy performance
             // we can also split this (local file copy) out into a plugin later
             final int largeBuffer = 100;
-            Util.copyStream(inputStream, outputStream, Util.DEFAULT_COPY_BUFFER_SIZE * largeBuffer, size, listener);
+            if (checksum == null) {
+                Util.copyStream(inputStream, outputStream, Util.DEFAULT_COPY_BUFFER_SIZE * largeBuffer, size, listener);
+            } else {
+                // digest in the same pass rather than re-reading the file afterwards
+                ExpectedChecksum.VerifyingOutputStream verifyingStream = checksum.verifying(outputStream);
+                Util.copyStream(inputStream, verifyingStream, Util.DEFAULT_COPY_BUFFER_SIZE * largeBuffer, size, listener);
+                verifyingStream.check(src.toString());
+            }
+            success = true;
         } finally {
-            if (size == CopyStreamEvent.UNKNOWN_STREAM_SIZE) {
-                System.out.println('\r' + "100%                                                                ");
+            if (success) {
+                transfer.complete();
+            } else {
+                transfer.fail();
             }
-            // finalize output from the printer
-            System.out.println();
         }
     }
 
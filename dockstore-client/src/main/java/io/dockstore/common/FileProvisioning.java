@@ -24,27 +24,30 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.dockstore.client.cli.Client;
 import io.dockstore.provision.PreProvisionInterface;
 import io.dockstore.provision.ProvisionInterface;
+import io.dockstore.provision.TransferEventBus;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.configuration2.INIConfiguration;
 import org.apache.commons.configuration2.SubnodeConfiguration;
 import org.apache.commons.io.FileUtils;
@@ -76,7 +79,10 @@ public class FileProvisioning {
     private static final String FILE_PROVISION_RETRIES = "file-provision-retries";
     private static final Logger LOG = LoggerFactory.getLogger(FileProvisioning.class);
     private final int threads;
-    private final boolean cache;
+    private final FileProvisionCache inputCache;
+    private final FileProvisionScheduler scheduler;
+    private final SegmentedHttpDownloader segmentedDownloader;
+    private final LocalFileCopier localFileCopier;
 
     private List<ProvisionInterface> plugins;
     private List<PreProvisionInterface> preProvisionPlugins;
@@ -89,7 +95,12 @@ public class FileProvisioning {
     public FileProvisioning(String configFile) {
         this.config = Utilities.parseConfig(configFile);
         this.threads = config.getInt(FileProvisioning.FILE_PROVISION_THREADS, FileProvisioning.DEFAULT_THREADS);
-        this.cache = isCacheOn(config);
+        this.inputCache = isCacheOn(config) ? FileProvisionCache.fromConfig(config) : null;
+        this.scheduler = new FileProvisionScheduler(threads,
+            FileProvisionScheduler.parseSchemeLimits(config.getString(FileProvisionScheduler.FILE_PROVISION_SCHEME_THREADS, "")));
+        this.segmentedDownloader = SegmentedHttpDownloader.fromConfig(config, config.getInt(FILE_PROVISION_RETRIES, DEFAULT_RETRIES)).orElse(null);
+        this.localFileCopier = new LocalFileCopier(config.getBoolean(LocalFileCopier.FILE_PROVISION_REFLINK, true), threads);
+        ProvisionMetrics.getInstance().exportOnExit(config.getString(ProvisionMetrics.FILE_PROVISION_METRICS, ""), threads);
         try {
             PluginManager pluginManager = FileProvisionUtil.getPluginManager(config);
 
@@ -184,16 +195,20 @@ public class FileProvisioning {
      */
     public static void retryWrapper(ProvisionInterface provisionInterface, String targetPath, Path destinationPath, int maxRetries,
             boolean download, int threads) {
-        retryWrapper(provisionInterface, targetPath, destinationPath, maxRetries, download, null, threads);
+        retryWrapper(provisionInterface, targetPath, destinationPath, maxRetries, download, null, threads, null);
     }
 
+    /**
+     * @param checksum checked once provisionInterface reports a successful download, for plugins that cannot check it themselves, may be null
+     */
     private static void retryWrapper(ProvisionInterface provisionInterface, String targetPath, Path destinationPath, int maxRetries,
-            boolean download, String metadata, int threads) {
+            boolean download, String metadata, int threads, ExpectedChecksum checksum) {
         if (provisionInterface == null) {
             provisionInterface = new FileProvisionUtilPluginWrapper(threads);
         }
         boolean success;
         int retries = 0;
+        final long startNanos = System.nanoTime();
         do {
             if (retries > 0) {
                 long waitTime = getWaitTimeExp(retries);
@@ -205,42 +220,187 @@ public class FileProvisioning {
                     throw new RuntimeException("Could not wait for retry");
                 }
             }
-            if (download) {
-                success = provisionInterface.downloadFrom(targetPath, destinationPath);
-            } else {
-                // note that this is reversed
-                success = provisionInterface.uploadTo(targetPath, destinationPath, Optional.ofNullable(metadata));
+            // ends whatever progress the plugin reported but did not finish, such as transfers of unknown size
+            final TransferEventBus.Scope scope = TransferEventBus.getInstance().openScope();
+            success = false;
+            try {
+                if (download && provisionInterface.supportsResume(targetPath)) {
+                    success = resumableDownload(provisionInterface, targetPath, destinationPath);
+                } else if (download) {
+                    success = provisionInterface.downloadFrom(targetPath, destinationPath);
+                } else {
+                    // note that this is reversed
+                    success = provisionInterface.uploadTo(targetPath, destinationPath, Optional.ofNullable(metadata));
+                }
+            } finally {
+                scope.end(success);
+            }
+            if (success && download) {
+                success = matchesChecksum(checksum, destinationPath);
             }
 
             if (!success) {
                 LOG.error("Could not provision " + targetPath + " to " + destinationPath + " , for retry " + retries);
             }
         } while (!success && retries++ < maxRetries);
+        ProvisionMetrics.getInstance().record(download ? ProvisionMetrics.DOWNLOAD : ProvisionMetrics.UPLOAD, findMetricsName(provisionInterface),
+            findScheme(targetPath), success ? sizeOf(destinationPath) : 0, System.nanoTime() - startNanos, Math.min(retries, maxRetries), success);
         if (!success) {
             throw new RuntimeException("Could not provision: " + targetPath + " to " + destinationPath);
         }
     }
 
+    /**
+     * @return the name that provisioning metrics are recorded under for a plugin
+     */
+    private static String findMetricsName(ProvisionInterface provisionInterface) {
+        return provisionInterface instanceof FileProvisionUtilPluginWrapper ? "vfs2" : provisionInterface.getClass().getName();
+    }
+
+    private static long sizeOf(Path path) {
+        try {
+            return Files.isRegularFile(path) ? Files.size(path) : 0;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Download to a partial file next to the destination, continuing from whatever an earlier attempt or run left behind.
+     *
+     * @return true on success
+     */
+    private static boolean resumableDownload(ProvisionInterface provisionInterface, String targetPath, Path destinationPath) {
+        final Path partPath = DownloadJournal.getPartPath(destinationPath);
+        try {
+            if (destinationPath.getParent() != null) {
+                Files.createDirectories(destinationPath.getParent());
+            }
+            DownloadJournal journal = DownloadJournal.open(partPath, targetPath, FileProvisionCache.findValidator(targetPath).orElse(""));
+            // a fresh download has no partial file yet
+            final long offset = journal.isSegmented() || !Files.exists(partPath) ? 0 : Math.min(journal.getContiguousOffset(), Files.size(partPath));
+            boolean success;
+            if (offset > 0) {
+                System.out.println("Resuming " + targetPath + " from byte " + offset);
+                try (FileChannel channel = FileChannel.open(partPath, StandardOpenOption.WRITE)) {
+                    channel.truncate(offset);
+                }
+                success = provisionInterface.resumeDownloadFrom(targetPath, partPath, offset);
+            } else {
+                // segmented downloads pick up their own journal
+                success = provisionInterface.downloadFrom(targetPath, partPath);
+            }
+            if (success) {
+                Files.move(partPath, destinationPath, StandardCopyOption.REPLACE_EXISTING);
+                DownloadJournal.load(partPath).delete();
+                return true;
+            }
+            // sequential downloads leave everything they wrote on disk, segmented downloads journal their own progress
+            journal = DownloadJournal.load(partPath);
+            if (!journal.isSegmented() && Files.exists(partPath)) {
+                journal.reset(-1, false);
+                journal.addCompleted(0, Files.size(partPath));
+                journal.save();
+            }
+            return false;
+        } catch (IOException e) {
+            LOG.error("Could not resume " + targetPath + " into " + partPath, e);
+            return false;
+        }
+    }
+
+    /**
+     * Checks a downloaded file against its expected checksum, discarding it on a mismatch so that a retry starts from scratch.
+     *
+     * @param checksum the expected checksum, may be null
+     * @param file     the downloaded file
+     * @return true if there is no checksum or the file matches it
+     */
+    private static boolean matchesChecksum(ExpectedChecksum checksum, Path file) {
+        if (checksum == null) {
+            return true;
+        }
+        try {
+            checksum.verify(file);
+            return true;
+        } catch (ExpectedChecksum.MismatchException e) {
+            LOG.error(e.getMessage());
+            FileUtils.deleteQuietly(file.toFile());
+            DownloadJournal.load(file).delete();
+            return false;
+        } catch (IOException e) {
+            LOG.error("Could not verify the checksum of " + file, e);
+            return false;
+        }
+    }
+
     public void provisionInputFiles(String parameterFilePath, List<Pair<String, Path>> inputFiles) {
-        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        provisionInputFiles(parameterFilePath, inputFiles, Map.of());
+    }
 
-        List<Future> futures = new ArrayList<>();
+    /**
+     * Inputs handled by the same plugin are handed to it as one set, see {@link ProvisionInterface#downloadFromSet(List, List)},
+     * everything else is provisioned one file at a time.
+     *
+     * @param parameterFilePath path of the parameter file
+     * @param inputFiles        pairs of where to download input files from and where to download them to
+     * @param checksums         expected checksums in the form algorithm$hex (e.g. the CWL checksum field), keyed by where files are downloaded from
+     */
+    public void provisionInputFiles(String parameterFilePath, List<Pair<String, Path>> inputFiles, Map<String, String> checksums) {
+        Multimap<ProvisionInterface, InputFile> downloadSets = ArrayListMultimap.create();
+        List<InputFile> singleFiles = new ArrayList<>();
         for (Pair<String, Path> inputFile : inputFiles) {
-            Future<Object> submit = executorService.submit(() -> {
-                provisionInputFile(parameterFilePath, inputFile.getLeft(), inputFile.getRight());
+            InputFile input = resolveInputFile(inputFile.getLeft(), inputFile.getRight(), checksums.get(inputFile.getLeft()));
+            Optional<ProvisionInterface> plugin = findPlugin(input.scheme);
+            if (plugin.isPresent()) {
+                downloadSets.put(plugin.get(), input);
+            } else {
+                singleFiles.add(input);
+            }
+        }
+        List<Future> futures = new ArrayList<>();
+        for (Map.Entry<ProvisionInterface, Collection<InputFile>> entry : downloadSets.asMap().entrySet()) {
+            if (entry.getValue().size() == 1) {
+                singleFiles.addAll(entry.getValue());
+            } else {
+                futures.add(scheduler.submitCoordinator(() -> {
+                    provisionInputFileSet(entry.getKey(), new ArrayList<>(entry.getValue()));
+                    return true;
+                }));
+            }
+        }
+        for (InputFile input : singleFiles) {
+            Future<Object> submit = scheduler.submitTransfer(input.scheme, () -> {
+                provisionInputFile(parameterFilePath, input);
                 return true;
             });
             futures.add(submit);
         }
-        for (Future future : futures) {
-            try {
-                future.get();
-            } catch (InterruptedException | ExecutionException e) {
-                System.err.println("Input file downloading interrupted");
-                throw new RuntimeException(e.getCause());
+        try {
+            for (Future future : futures) {
+                try {
+                    future.get();
+                } catch (InterruptedException | ExecutionException e) {
+                    System.err.println("Input file downloading interrupted");
+                    futures.forEach(pending -> pending.cancel(true));
+                    throw new RuntimeException(e.getCause());
+                }
+            }
+        } finally {
+            if (inputCache != null) {
+                inputCache.flush();
             }
+            // finish the progress view before anything else is printed
+            TransferEventBus.getInstance().flush();
+        }
+    }
+
+    private static String findScheme(String path) {
+        try {
+            return URI.create(path).getScheme();
+        } catch (IllegalArgumentException e) {
+            return null;
         }
-        executorService.shutdownNow();
     }
 
     protected static URI createURIFromUnencodedPath(String filepath) {
@@ -251,58 +411,20 @@ public class FileProvisioning {
     }
 
     /**
-     * This is an entry point from both WDL and CWL.
-     * This method downloads both local and remote files into the working directory.
+     * Works out where an input file will actually be downloaded from, giving pre-provisioning plugins a chance to
+     * substitute a path that a provisioning plugin can handle.
      *
-     * @param parameterFilePath path of the parameter file
-     * @param targetPath        path for target file
-     * @param localPath         the absolute path where we will download files to
+     * @param originalTargetPath path for target file
+     * @param localPath          the absolute path where we will download files to
+     * @param checksum           the checksum the file is expected to have, may be null
+     * @return the input file
      */
-    private void provisionInputFile(String parameterFilePath, String targetPath, Path localPath) {
-
-        Path potentialCachedFile = null;
-        // check if a file exists in the cache and if it does, link/copy it into place
-        synchronized (LOG) {
-            if (cache) {
-                // check cache for cached files
-                final String cacheDirectory = getCacheDirectory(config);
-                // create cache directory
-                final Path cachePath = Paths.get(cacheDirectory);
-                if (Files.notExists(cachePath)) {
-                    if (!cachePath.toFile().mkdirs()) {
-                        throw new RuntimeException("Could not create dockstore cache: " + cacheDirectory);
-                    }
-                }
-
-                final String sha256 = DigestUtils.sha256Hex(targetPath);
-                final String sha256Prefix = sha256.substring(0, 2);
-                final String sha256Suffix = sha256.substring(2);
-                potentialCachedFile = Paths.get(cacheDirectory, sha256Prefix, sha256Suffix);
-                if (Files.exists(potentialCachedFile)) {
-                    System.out.println("Found file " + targetPath + " in cache, hard-linking");
-                    try {
-                        final Path parentPath = localPath.getParent();
-                        if (Files.notExists(parentPath)) {
-                            Files.createDirectory(parentPath);
-                        }
-                        Files.createLink(localPath, potentialCachedFile);
-                    } catch (IOException e) {
-                        LOG.error("Cannot create hard link to cached file, you may want to move your cache \n" + e.getMessage());
-                        try {
-                            Files.copy(potentialCachedFile, localPath);
-                        } catch (IOException e1) {
-                            LOG.error("Could not copy " + targetPath + " to " + localPath, e);
-                            throw new RuntimeException("Could not copy " + targetPath + " to " + localPath, e1);
-                        }
-                        System.out.println("Found file " + targetPath + " in cache, copied");
-                    }
-                }
-            }
-        }
-
+    private InputFile resolveInputFile(String originalTargetPath, Path localPath, String checksum) {
+        String targetPath = originalTargetPath;
+        String scheme = null;
         URI objectIdentifier = createURIFromUnencodedPath(targetPath);    // throws IllegalArgumentException if it isn't a valid URI
         if (objectIdentifier.getScheme() != null) {
-            String scheme = objectIdentifier.getScheme().toLowerCase();
+            scheme = objectIdentifier.getScheme().toLowerCase();
             for (PreProvisionInterface plugin : preProvisionPlugins) {
                 List<String> list = plugin.prepareDownload(targetPath);
                 Optional<ImmutablePair<String, String>> newTarget = findSupportedTargetPath(plugins, list);
@@ -313,11 +435,53 @@ public class FileProvisioning {
                     break;
                 }
             }
+        }
+        return new InputFile(originalTargetPath, objectIdentifier, targetPath, scheme, localPath, checksum);
+    }
+
+    private Optional<ProvisionInterface> findPlugin(String scheme) {
+        if (scheme == null) {
+            return Optional.empty();
+        }
+        return plugins.stream()
+            .filter(provision -> provision.schemesHandled().contains(scheme.toUpperCase()) || provision.schemesHandled().contains(scheme.toLowerCase()))
+            .findFirst();
+    }
+
+    /**
+     * This is an entry point from both WDL and CWL.
+     * This method downloads both local and remote files into the working directory.
+     *
+     * @param parameterFilePath path of the parameter file
+     * @param input             the input file
+     */
+    private void provisionInputFile(String parameterFilePath, InputFile input) {
+        if (inputCache != null) {
+            ProvisionMetrics.getInstance()
+                .recordCache(inputCache.provision(input.originalTargetPath, findBaseDirectory(parameterFilePath), input.localPath,
+                    () -> provisionUncachedInputFile(parameterFilePath, input)));
+        } else {
+            provisionUncachedInputFile(parameterFilePath, input);
+        }
+    }
+
+    /**
+     * Downloads a local or remote file into the working directory without consulting the cache.
+     *
+     * @param parameterFilePath path of the parameter file
+     * @param input             the input file
+     */
+    private void provisionUncachedInputFile(String parameterFilePath, InputFile input) {
+        final String targetPath = input.targetPath;
+        final Path localPath = input.localPath;
+        final URI objectIdentifier = input.objectIdentifier;
+        final ExpectedChecksum expectedChecksum = ExpectedChecksum.parse(input.checksum).orElse(null);
+        if (input.scheme != null) {
             for (ProvisionInterface provision : plugins) {
-                if (provision.schemesHandled().contains(scheme.toUpperCase()) || provision.schemesHandled()
-                        .contains(scheme.toLowerCase())) {
+                if (provision.schemesHandled().contains(input.scheme.toUpperCase()) || provision.schemesHandled()
+                        .contains(input.scheme.toLowerCase())) {
                     System.out.println("Calling on plugin " + provision.getClass().getName() + " to provision " + targetPath);
-                    handleDownloadProvisionWithRetries(targetPath, localPath, provision);
+                    handleDownloadProvisionWithRetries(targetPath, localPath, provision, findChecksum(provision, input));
                 }
             }
         }
@@ -325,76 +489,207 @@ public class FileProvisioning {
         if (!Files.exists(localPath) || "./".equals(targetPath)) {
             // check if we can use a plugin
             boolean localFileType = objectIdentifier.getScheme() == null;
-            if (!localFileType) {
-                handleDownloadProvisionWithRetries(targetPath, localPath, null);
+            Optional<Path> fileUriPath = localFileType ? Optional.empty() : findFileUriPath(objectIdentifier);
+            if (fileUriPath.isPresent()) {
+                // file:// does not need to be streamed through vfs2
+                linkOrCopyLocalFile(targetPath, fileUriPath.get(), localPath);
+            } else if (!localFileType) {
+                handleDownloadProvisionWithRetries(targetPath, localPath, null, expectedChecksum);
             } else {
-                // hard link into target location
-                Path actualTargetPath = null;
-                try {
-                    String workingDir = System.getProperty("user.dir");
-                    // TODO: this is basically, if not WDL then try to find out the parent directory
-                    if (!"".equals(parameterFilePath)) {
-                        workingDir = Paths.get(parameterFilePath).toAbsolutePath().getParent().toString();
-                    }
-                    if (targetPath.startsWith("/")) {
-                        // absolute path
-                        actualTargetPath = Paths.get(targetPath);
-                    } else {
-                        // relative path
-                        actualTargetPath = Paths.get(workingDir, targetPath);
-                    }
-                    // create needed directories
-                    File parentFile = localPath.toFile().getParentFile();
-                    if (!parentFile.exists() && !parentFile.mkdirs()) {
-                        throw new IOException("Could not create " + localPath);
-                    }
+                if (targetPath.startsWith("/")) {
+                    // absolute path
+                    linkOrCopyLocalFile(targetPath, Paths.get(targetPath), localPath);
+                } else {
+                    // relative path
+                    linkOrCopyLocalFile(targetPath, findBaseDirectory(parameterFilePath).resolve(targetPath), localPath);
+                }
+            }
+        }
+    }
 
-                    // create link
-                    Files.createLink(localPath, actualTargetPath);
-                } catch (IOException e) {
-                    LOG.info("Could not link " + targetPath + " to " + localPath + " , copying instead", e);
+    /**
+     * @param parameterFilePath path of the parameter file, empty if there is none
+     * @return the directory that relative local input files are relative to
+     */
+    private static Path findBaseDirectory(String parameterFilePath) {
+        // TODO: this is basically, if not WDL then try to find out the parent directory
+        if (!"".equals(parameterFilePath)) {
+            return Paths.get(parameterFilePath).toAbsolutePath().getParent();
+        }
+        return Paths.get(System.getProperty("user.dir"));
+    }
+
+    /**
+     * @return the checksum from the parameter file, or else the one the plugin knows about, null if there is neither
+     */
+    private static ExpectedChecksum findChecksum(ProvisionInterface provision, InputFile input) {
+        return ExpectedChecksum.parse(input.checksum).or(() -> provision.findChecksum(input.targetPath).flatMap(ExpectedChecksum::parse)).orElse(null);
+    }
+
+    /**
+     * Downloads the input files handled by one plugin as a set, bracketed by the plugin's prepareDownloadSet.
+     * The set is split into as many batches as the plugin's scheme may transfer concurrently. Files that the plugin fails
+     * to download as part of a batch, including every file of a batch that failed outright, are retried one at a time.
+     * Inputs that come from the same place are downloaded once, the others are provisioned from that download afterwards.
+     *
+     * @param provision the plugin
+     * @param inputs    the input files
+     */
+    private void provisionInputFileSet(ProvisionInterface provision, List<InputFile> inputs) throws InterruptedException, ExecutionException {
+        Map<String, InputFile> firstBySource = new LinkedHashMap<>();
+        List<InputFile> duplicates = new ArrayList<>();
+        for (InputFile input : inputs) {
+            if (firstBySource.putIfAbsent(input.originalTargetPath, input) != null) {
+                duplicates.add(input);
+            }
+        }
+        downloadInputFileSet(provision, new ArrayList<>(firstBySource.values()));
+        for (InputFile duplicate : duplicates) {
+            final InputFile first = firstBySource.get(duplicate.originalTargetPath);
+            final Runnable copy = () -> linkOrCopyLocalFile(duplicate.originalTargetPath, first.localPath, duplicate.localPath);
+            if (inputCache != null) {
+                // goes through the same per-key lock as every other lookup, and is a hit since the first copy was just added
+                ProvisionMetrics.getInstance()
+                    .recordCache(inputCache.provision(duplicate.originalTargetPath, duplicate.localPath, copy));
+            } else {
+                copy.run();
+            }
+        }
+    }
+
+    private void downloadInputFileSet(ProvisionInterface provision, List<InputFile> inputs) throws InterruptedException, ExecutionException {
+        final String scheme = inputs.get(0).scheme;
+        final List<InputFile> pending = inputs.stream()
+            .filter(input -> inputCache == null || !provisionIfCached(input))
+            .collect(Collectors.toList());
+        if (pending.isEmpty()) {
+            return;
+        }
+        System.out.println("Calling on plugin " + provision.getClass().getName() + " to provision a set of " + pending.size() + " files");
+        final List<String> sourceList = pending.stream().map(input -> input.targetPath).collect(Collectors.toList());
+        final List<Path> destinationList = pending.stream().map(input -> input.localPath).collect(Collectors.toList());
+        final boolean[] downloaded = new boolean[pending.size()];
+        if (provision.prepareDownloadSet(sourceList, destinationList)) {
+            final int batchSize = (pending.size() + scheduler.getConcurrency(scheme) - 1) / scheduler.getConcurrency(scheme);
+            Map<Integer, Future<List<Boolean>>> batches = new LinkedHashMap<>();
+            for (int i = 0; i < pending.size(); i += batchSize) {
+                final int start = i;
+                final int end = Math.min(start + batchSize, pending.size());
+                batches.put(start, scheduler.submitTransfer(scheme, () -> {
+                    final long startNanos = System.nanoTime();
+                    final TransferEventBus.Scope scope = TransferEventBus.getInstance().openScope();
+                    List<Boolean> results = null;
                     try {
-                        if (actualTargetPath.toFile().isDirectory()) {
-                            FileUtils.copyDirectory(actualTargetPath.toFile(), localPath.toFile(), file -> {
-                                String name = file.getName();
-                                return !("datastore".equals(name));
-                            });
-                        } else {
-                            Files.copy(actualTargetPath, localPath);
-                        }
-                    } catch (IOException e1) {
-                        LOG.error("Could not copy " + targetPath + " to " + localPath, e);
-                        if (!Client.SCRIPT.get()) {
-                            throw new RuntimeException("Could not copy " + targetPath + " to " + localPath, e1);
-                        }
-                        LOG.error("Could not copy " + targetPath + " to " + localPath, e1);
+                        results = provision.downloadFromSet(sourceList.subList(start, end), destinationList.subList(start, end));
+                    } finally {
+                        scope.end(results != null && results.stream().allMatch(Boolean.TRUE::equals));
                     }
+                    final long bytes = destinationList.subList(start, end).stream().mapToLong(FileProvisioning::sizeOf).sum();
+                    ProvisionMetrics.getInstance().record(ProvisionMetrics.DOWNLOAD_SET, findMetricsName(provision), scheme, bytes,
+                        System.nanoTime() - startNanos, 0, results != null && results.stream().allMatch(Boolean.TRUE::equals));
+                    return results;
+                }));
+            }
+            for (Map.Entry<Integer, Future<List<Boolean>>> batch : batches.entrySet()) {
+                List<Boolean> results;
+                try {
+                    results = batch.getValue().get();
+                } catch (ExecutionException e) {
+                    LOG.error("Plugin " + provision.getClass().getName() + " could not download a batch of files, downloading them one at a time",
+                        e.getCause());
+                    continue;
+                }
+                for (int i = 0; results != null && i < results.size() && batch.getKey() + i < downloaded.length; i++) {
+                    downloaded[batch.getKey() + i] = Boolean.TRUE.equals(results.get(i));
                 }
             }
+        } else {
+            LOG.error("Plugin " + provision.getClass().getName() + " could not prepare to download a set of files, downloading them one at a time");
         }
 
-        synchronized (LOG) {
-            // cache the file if we got it successfully
-            if (cache) {
-                // do not cache directories
-                if (localPath.toFile().isDirectory()) {
-                    return;
-                }
-                // populate cache
-                if (Files.notExists(potentialCachedFile)) {
-                    System.out.println("Caching file " + localPath + " in cache, hard-linking");
-                    try {
-                        // create parent directory
-                        final Path parentPath = potentialCachedFile.getParent();
-                        if (Files.notExists(parentPath)) {
-                            Files.createDirectory(parentPath);
-                        }
-                        Files.createLink(potentialCachedFile, localPath);
-                    } catch (IOException e) {
-                        LOG.error("Cannot create hard link for local file, skipping", e);
-                    }
+        List<Future> futures = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            final InputFile input = pending.get(i);
+            final ExpectedChecksum checksum = findChecksum(provision, input);
+            if (downloaded[i] && matchesChecksum(checksum, input.localPath)) {
+                addToCache(input);
+                continue;
+            }
+            futures.add(scheduler.submitTransfer(scheme, () -> {
+                LOG.info("Retrying " + input.targetPath + " on its own");
+                handleDownloadProvisionWithRetries(input.targetPath, input.localPath, provision, checksum);
+                addToCache(input);
+                return true;
+            }));
+        }
+        try {
+            for (Future future : futures) {
+                future.get();
+            }
+        } finally {
+            futures.forEach(future -> future.cancel(true));
+        }
+    }
+
+    private boolean provisionIfCached(InputFile input) {
+        final boolean cached = inputCache.provisionIfCached(input.originalTargetPath, input.localPath);
+        ProvisionMetrics.getInstance().recordCache(cached);
+        return cached;
+    }
+
+    private void addToCache(InputFile input) {
+        if (inputCache != null) {
+            inputCache.add(input.originalTargetPath, input.localPath);
+        }
+    }
+
+    private static Optional<Path> findFileUriPath(URI uri) {
+        if (!"file".equalsIgnoreCase(uri.getScheme())) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(Paths.get(uri));
+        } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+            LOG.debug("Cannot treat " + uri + " as a local path", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Hard link a local file into the working directory, falling back to a clone or kernel-side copy across devices.
+     *
+     * @param targetPath       path for target file, as given
+     * @param actualTargetPath the resolved local path for target file
+     * @param localPath        the absolute path where we will put the file
+     */
+    private void linkOrCopyLocalFile(String targetPath, Path actualTargetPath, Path localPath) {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            // create needed directories
+            File parentFile = localPath.toFile().getParentFile();
+            if (!parentFile.exists() && !parentFile.mkdirs()) {
+                throw new IOException("Could not create " + localPath);
+            }
+
+            // create link
+            Files.createLink(localPath, actualTargetPath);
+            success = true;
+        } catch (IOException e) {
+            LOG.info("Could not link " + targetPath + " to " + localPath + " , copying instead", e);
+            try {
+                localFileCopier.copy(actualTargetPath, localPath, name -> !("datastore".equals(name)));
+                success = true;
+            } catch (IOException e1) {
+                LOG.error("Could not copy " + targetPath + " to " + localPath, e);
+                if (!Client.SCRIPT.get()) {
+                    throw new RuntimeException("Could not copy " + targetPath + " to " + localPath, e1);
                 }
+                LOG.error("Could not copy " + targetPath + " to " + localPath, e1);
             }
+        } finally {
+            ProvisionMetrics.getInstance().record(ProvisionMetrics.DOWNLOAD, "local", "file", success ? sizeOf(localPath) : 0,
+                System.nanoTime() - startNanos, 0, success);
         }
     }
 
@@ -427,14 +722,20 @@ public class FileProvisioning {
         return Optional.empty();
     }
 
-    private void handleDownloadProvisionWithRetries(String targetPath, Path localPath, ProvisionInterface provision) {
+    private void handleDownloadProvisionWithRetries(String targetPath, Path localPath, ProvisionInterface provision, ExpectedChecksum checksum) {
         int maxRetries = config.getInt(FILE_PROVISION_RETRIES, DEFAULT_RETRIES);
-        retryWrapper(provision, targetPath, localPath, maxRetries, true, threads);
+        if (provision == null) {
+            // vfs2 checks the checksum while copying
+            retryWrapper(new FileProvisionUtilPluginWrapper(threads, segmentedDownloader, checksum), targetPath, localPath, maxRetries, true, null,
+                threads, null);
+        } else {
+            retryWrapper(provision, targetPath, localPath, maxRetries, true, null, threads, checksum);
+        }
     }
 
     private void handleUploadProvisionWithRetries(String targetPath, Path localPath, ProvisionInterface provision, String metadata) {
         int maxRetries = config.getInt(FILE_PROVISION_RETRIES, DEFAULT_RETRIES);
-        retryWrapper(provision, targetPath, localPath, maxRetries, false, metadata, threads);
+        retryWrapper(provision, targetPath, localPath, maxRetries, false, metadata, threads, null);
     }
 
     /**
@@ -503,12 +804,12 @@ public class FileProvisioning {
                             }
                             nestedFile.createFile();
                             System.out.println("Provisioning from nested file " + file + " to " + nestedFile);
-                            FileProvisionUtil.copyFromInputStreamToOutputStream(file, nestedFile, threads);
+                            copyOutputFile(file, nestedFile, resolvedDestinationPath);
                         }
                     } else {
                         // trigger a copy from the URL to a local file path that's a UUID to avoid collision
                         // check for a local file path
-                        FileProvisionUtil.copyFromInputStreamToOutputStream(src, dest, threads);
+                        copyOutputFile(src, dest, resolvedDestinationPath);
                     }
                 } catch (IOException e) {
                     throw new RuntimeException("Could not provision output files", e);
@@ -519,63 +820,99 @@ public class FileProvisioning {
         }
     }
 
+    /**
+     * Copies one output file through vfs2, recording it in the provisioning metrics.
+     */
+    private void copyOutputFile(FileObject src, FileObject dest, String destPath) throws IOException {
+        final long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            FileProvisionUtil.copyFromInputStreamToOutputStream(src, dest, threads);
+            success = true;
+        } finally {
+            ProvisionMetrics.getInstance().record(ProvisionMetrics.UPLOAD, "vfs2", findScheme(destPath), success ? src.getContent().getSize() : 0,
+                System.nanoTime() - startNanos, 0, success);
+        }
+    }
+
     /**
      * This is an entry point for both WDL and CWL, where registered files are provisioned out.
+     * Each plugin's group of files is uploaded concurrently with the others on the shared scheduler.
      * @param outputSet pairs that describe files that we want to provision out
      */
     public void uploadFiles(List<ImmutablePair<String, FileInfo>> outputSet) {
         Multimap<ProvisionInterface, Pair<String, FileInfo>> map = identifyPlugins(outputSet);
         Map<ProvisionInterface, Collection<Pair<String, FileInfo>>> provisionInterfaceCollectionMap = map.asMap();
+        List<Future> groups = new ArrayList<>();
         for (Map.Entry<ProvisionInterface, Collection<Pair<String, FileInfo>>> entry : provisionInterfaceCollectionMap.entrySet()) {
-            ProvisionInterface pInterface = entry.getKey();
-            Pair<String, FileInfo>[] pairs = entry.getValue().toArray(new Pair[entry.getValue().size()]);
-            List<Optional<String>> metadataList = Stream.of(pairs).map(pair -> Optional.ofNullable(pair.getValue().getMetadata()))
-                    .collect(Collectors.toList());
-            List<Path> srcList = Stream.of(pairs).map(pair -> Paths.get(pair.getKey())).collect(Collectors.toList());
-            List<String> destList = Stream.of(pairs).map(pair -> {
-                String targetLocation = pair.getValue().getUrl();
-                if (pair.getValue().isDirectory()) {
-                    if (!targetLocation.endsWith("/")) {
-                        targetLocation = targetLocation + '/';
-                    }
-                    return targetLocation + FilenameUtils.getName(pair.getKey());
-                } else {
-                    return targetLocation;
-                }
-            }).collect(Collectors.toList());
-
-            try {
-                if (pInterface != null) {
-                    pInterface.prepareFileSet(destList, srcList, metadataList);
+            groups.add(scheduler.submitCoordinator(() -> {
+                uploadFileSet(entry.getKey(), entry.getValue());
+                return true;
+            }));
+        }
+        try {
+            for (Future group : groups) {
+                try {
+                    group.get();
+                } catch (Exception e) {
+                    groups.forEach(pending -> pending.cancel(true));
+                    LOG.error("plugin threw an exception", e);
+                    throw new RuntimeException("plugin threw an exception", e);
                 }
+            }
+        } finally {
+            TransferEventBus.getInstance().flush();
+        }
+    }
 
-                ExecutorService executorService = Executors.newFixedThreadPool(threads);
-
-                List<Future> futures = new ArrayList<>();
-                for (int i = 0; i < pairs.length; i++) {
-                    Pair<String, FileInfo> pair = pairs[i];
-                    String dest = destList.get(i);
-                    Future<Object> submit = executorService.submit(() -> {
-                        provisionOutputFile(pair.getLeft(), dest, pair.getRight().getMetadata(), pInterface);
-                        return true;
-                    });
-                    futures.add(submit);
-                }
-                for (Future future : futures) {
-                    future.get();
+    /**
+     * Uploads the files handled by one plugin, bracketed by the plugin's prepareFileSet and finalizeFileSet.
+     *
+     * @param pInterface the plugin, null for vfs2
+     * @param files      pairs that describe files that we want to provision out
+     */
+    private void uploadFileSet(ProvisionInterface pInterface, Collection<Pair<String, FileInfo>> files) throws InterruptedException, ExecutionException {
+        Pair<String, FileInfo>[] pairs = files.toArray(new Pair[files.size()]);
+        List<Optional<String>> metadataList = Stream.of(pairs).map(pair -> Optional.ofNullable(pair.getValue().getMetadata()))
+                .collect(Collectors.toList());
+        List<Path> srcList = Stream.of(pairs).map(pair -> Paths.get(pair.getKey())).collect(Collectors.toList());
+        List<String> destList = Stream.of(pairs).map(pair -> {
+            String targetLocation = pair.getValue().getUrl();
+            if (pair.getValue().isDirectory()) {
+                if (!targetLocation.endsWith("/")) {
+                    targetLocation = targetLocation + '/';
                 }
+                return targetLocation + FilenameUtils.getName(pair.getKey());
+            } else {
+                return targetLocation;
+            }
+        }).collect(Collectors.toList());
 
-                executorService.shutdownNow();
+        if (pInterface != null) {
+            pInterface.prepareFileSet(destList, srcList, metadataList);
+        }
 
-                if (pInterface != null) {
-                    pInterface.finalizeFileSet(destList, srcList, metadataList);
-                }
-            } catch (Exception e) {
-                LOG.error("plugin threw an exception", e);
-                throw new RuntimeException("plugin threw an exception", e);
+        List<Future> futures = new ArrayList<>();
+        for (int i = 0; i < pairs.length; i++) {
+            Pair<String, FileInfo> pair = pairs[i];
+            String dest = destList.get(i);
+            Future<Object> submit = scheduler.submitTransfer(findScheme(dest), () -> {
+                provisionOutputFile(pair.getLeft(), dest, pair.getRight().getMetadata(), pInterface);
+                return true;
+            });
+            futures.add(submit);
+        }
+        try {
+            for (Future future : futures) {
+                future.get();
             }
+        } finally {
+            futures.forEach(pending -> pending.cancel(true));
         }
 
+        if (pInterface != null) {
+            pInterface.finalizeFileSet(destList, srcList, metadataList);
+        }
     }
 
     @SuppressFBWarnings(value = "NP_NONNULL_PARAM_VIOLATION", justification = "looks like false positive due to https://github.com/spotbugs/spotbugs/issues/523 equivalent for findbugs")
@@ -646,15 +983,49 @@ public class FileProvisioning {
         }
     }
 
+    /**
+     * Describes a single input file, once pre-provisioning plugins have had a chance to say where it should come from
+     */
+    private static final class InputFile {
+        private final String originalTargetPath;
+        private final URI objectIdentifier;
+        private final String targetPath;
+        private final String scheme;
+        private final Path localPath;
+        private final String checksum;
+
+        private InputFile(String originalTargetPath, URI objectIdentifier, String targetPath, String scheme, Path localPath, String checksum) {
+            this.originalTargetPath = originalTargetPath;
+            this.objectIdentifier = objectIdentifier;
+            this.targetPath = targetPath;
+            this.scheme = scheme;
+            this.localPath = localPath;
+            this.checksum = checksum;
+        }
+    }
+
     /**
      * Create a facade to treat normal vfs2 downloading as a plugin
      */
     public static class FileProvisionUtilPluginWrapper implements ProvisionInterface {
 
         private final int threads;
+        private final SegmentedHttpDownloader segmentedDownloader;
+        private final ExpectedChecksum checksum;
 
         FileProvisionUtilPluginWrapper(int threads) {
+            this(threads, null, null);
+        }
+
+        /**
+         * @param threads             number of threads, used for display purposes
+         * @param segmentedDownloader used for the schemes it handles before falling back to a single vfs2 stream, may be null
+         * @param checksum            the checksum downloads must have, may be null
+         */
+        FileProvisionUtilPluginWrapper(int threads, SegmentedHttpDownloader segmentedDownloader, ExpectedChecksum checksum) {
             this.threads = threads;
+            this.segmentedDownloader = segmentedDownloader;
+            this.checksum = checksum;
         }
 
         @Override
@@ -665,7 +1036,42 @@ public class FileProvisioning {
         @Override
         public boolean downloadFrom(String sourcePath, Path destination) {
             printSourceAndDestination(sourcePath, destination);
-            return FileProvisionUtil.downloadFromVFS2(sourcePath, destination, threads);
+            if (segmentedDownloader != null && segmentedDownloader.handles(sourcePath)) {
+                try {
+                    if (segmentedDownloader.download(sourcePath, destination)) {
+                        // segments arrive out of order, so they cannot be digested as they are written
+                        return matchesChecksum(checksum, destination);
+                    }
+                } catch (IOException e) {
+                    // the finished segments stay journaled, so the next attempt only downloads what is missing
+                    LOG.error("Segmented download of " + sourcePath + " failed", e);
+                    return false;
+                }
+            }
+            // the server cannot serve segments, a single stream starts over so any segments journaled earlier are void
+            DownloadJournal.load(destination).delete();
+            return FileProvisionUtil.downloadFromVFS2(sourcePath, destination, threads, checksum);
+        }
+
+        /**
+         * Downloads through vfs2 always write to a partial file, only http(s) can continue one though.
+         */
+        @Override
+        public boolean supportsResume(String sourcePath) {
+            return true;
+        }
+
+        @Override
+        public boolean resumeDownloadFrom(String sourcePath, Path destination, long offset) {
+            if (SegmentedHttpDownloader.isHttp(sourcePath)) {
+                try {
+                    return SegmentedHttpDownloader.resume(sourcePath, destination, offset) && matchesChecksum(checksum, destination);
+                } catch (IOException e) {
+                    LOG.error(e.getMessage(), e);
+                    return false;
+                }
+            }
+            return downloadFrom(sourcePath, destination);
         }
 
         @Override
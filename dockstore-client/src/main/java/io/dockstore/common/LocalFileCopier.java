@@ -0,0 +1,225 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Copies local files without pulling their contents through the JVM heap.
+ *
+ * <p>
+ * Files are first cloned with <code>cp --reflink=always</code> (<code>cp -c</code> on macOS), which shares extents on
+ * copy-on-write filesystems such as XFS and btrfs and is nearly free regardless of size. When cloning is not possible, contents
+ * are copied kernel-side with {@link FileChannel#transferTo}. Whether cloning works is remembered for each pair of filesystems so
+ * that unsupported filesystems cost one failed attempt. Files smaller than {@value #MIN_CLONE_SIZE} bytes are copied rather than
+ * cloned, since starting cp costs more than copying them. Directories are copied with one task per file.
+ * </p>
+ *
+ * <p>
+ * Like the copies this replaced, the POSIX permissions and modification times of files and directories are kept, so that
+ * scripts stay executable.
+ * </p>
+ */
+final class LocalFileCopier {
+
+    static final String FILE_PROVISION_REFLINK = "file-provision-reflink";
+    private static final Logger LOG = LoggerFactory.getLogger(LocalFileCopier.class);
+    static final long MIN_CLONE_SIZE = 1024 * 1024;
+    private static final long CLONE_TIMEOUT_MINUTES = 10;
+    private static final boolean IS_MAC = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("mac");
+    private static final boolean IS_WINDOWS = System.getProperty("os.name", "").toLowerCase(Locale.ROOT).startsWith("windows");
+    private static final Map<String, Boolean> CLONE_SUPPORTED = new ConcurrentHashMap<>();
+
+    private final boolean reflink;
+    private final int threads;
+
+    /**
+     * @param reflink true to try cloning files before copying them
+     * @param threads the number of files of a directory to copy at once
+     */
+    LocalFileCopier(boolean reflink, int threads) {
+        this.reflink = reflink && !IS_WINDOWS;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * Copy a file or a directory.
+     *
+     * @param source the file or directory to copy
+     * @param target where to copy it, which must not exist yet
+     * @param filter decides whether a file or directory name is copied, applied to names below source
+     */
+    void copy(Path source, Path target, Predicate<String> filter) throws IOException {
+        if (Files.isDirectory(source)) {
+            copyDirectory(source, target, filter);
+        } else {
+            if (target.getParent() != null) {
+                Files.createDirectories(target.getParent());
+            }
+            copyFile(source, target);
+        }
+    }
+
+    private void copyDirectory(Path source, Path target, Predicate<String> filter) throws IOException {
+        final List<Path> files = new ArrayList<>();
+        final List<Path> directories = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : paths.filter(path -> isIncluded(source, path, filter)).collect(Collectors.toList())) {
+                if (Files.isDirectory(path)) {
+                    // create the whole tree up front so that files can be copied in any order
+                    Files.createDirectories(target.resolve(source.relativize(path).toString()));
+                    directories.add(path);
+                } else {
+                    files.add(path);
+                }
+            }
+        }
+        if (!files.isEmpty()) {
+            copyFiles(source, target, files);
+        }
+        // copying into a directory changes its modification time, so directories are done last and deepest first
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            copyAttributes(directories.get(i), target.resolve(source.relativize(directories.get(i)).toString()));
+        }
+    }
+
+    private void copyFiles(Path source, Path target, List<Path> files) throws IOException {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.min(threads, files.size()),
+            new ThreadFactoryBuilder().setNameFormat("local-copy-%d").setDaemon(true).build());
+        try {
+            List<Future<Void>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executorService.submit(() -> {
+                    copyFile(file, target.resolve(source.relativize(file).toString()));
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while copying " + source, e);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private static boolean isIncluded(Path root, Path path, Predicate<String> filter) {
+        for (Path name : root.relativize(path)) {
+            if (!name.toString().isEmpty() && !filter.test(name.toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void copyFile(Path source, Path target) throws IOException {
+        if (Files.exists(target, LinkOption.NOFOLLOW_LINKS)) {
+            throw new FileAlreadyExistsException(target.toString());
+        }
+        if (!(reflink && Files.size(source) >= MIN_CLONE_SIZE && tryClone(source, target))) {
+            try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+                FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                final long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+        }
+        copyAttributes(source, target);
+    }
+
+    /**
+     * Gives target the POSIX permissions, where the filesystem has them, and the modification time of source.
+     */
+    private static void copyAttributes(Path source, Path target) throws IOException {
+        final PosixFileAttributeView sourceView = Files.getFileAttributeView(source, PosixFileAttributeView.class);
+        final PosixFileAttributeView targetView = Files.getFileAttributeView(target, PosixFileAttributeView.class);
+        if (sourceView != null && targetView != null) {
+            targetView.setPermissions(sourceView.readAttributes().permissions());
+        }
+        Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+    }
+
+    private boolean tryClone(Path source, Path target) {
+        final String filesystems;
+        try {
+            FileStore sourceStore = Files.getFileStore(source);
+            FileStore targetStore = Files.getFileStore(target.getParent() == null ? target.toAbsolutePath().getParent() : target.getParent());
+            filesystems = sourceStore.name() + '/' + sourceStore.type() + " -> " + targetStore.name() + '/' + targetStore.type();
+        } catch (IOException e) {
+            return false;
+        }
+        if (Boolean.FALSE.equals(CLONE_SUPPORTED.get(filesystems))) {
+            return false;
+        }
+        List<String> command = IS_MAC ? List.of("cp", "-c", source.toString(), target.toString())
+            : List.of("cp", "--reflink=always", source.toString(), target.toString());
+        boolean cloned;
+        try {
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+            cloned = process.waitFor(CLONE_TIMEOUT_MINUTES, TimeUnit.MINUTES) && process.exitValue() == 0;
+            if (!cloned) {
+                process.destroyForcibly();
+            }
+        } catch (IOException e) {
+            LOG.debug("Could not run cp to clone " + source, e);
+            cloned = false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cloned = false;
+        }
+        if (!cloned) {
+            try {
+                // cp may leave an empty file behind
+                Files.deleteIfExists(target);
+            } catch (IOException e) {
+                LOG.debug("Could not clean up " + target, e);
+            }
+            LOG.info("Cannot clone files from " + filesystems + ", copying instead");
+        }
+        CLONE_SUPPORTED.putIfAbsent(filesystems, cloned);
+        return cloned;
+    }
+}
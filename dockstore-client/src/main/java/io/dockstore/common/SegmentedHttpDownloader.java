@@ -0,0 +1,396 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.common;
+
+import com.google.common.base.Splitter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.dockstore.provision.TransferEventBus;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.apache.http.HttpStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads http(s) files as several byte ranges fetched concurrently, so a single large input is not bounded by one TCP stream.
+ *
+ * <p>
+ * The server is probed with a one byte range request first. Servers that ignore ranges, files of unknown size and files too
+ * small to be worth splitting are left to the regular single stream download. Each segment is written with positional writes
+ * into a preallocated file. A failed segment is retried from where it stopped without disturbing the others, and If-Range
+ * ensures segments are never stitched together from different versions of the file. Completed ranges are recorded in a
+ * {@link DownloadJournal} so that a later attempt only fetches what is missing.
+ * </p>
+ */
+final class SegmentedHttpDownloader {
+
+    static final String SEGMENTED_SCHEMES = "file-provision-segmented-schemes";
+    static final String SEGMENTS = "file-provision-segments";
+    static final long MIN_SEGMENT_SIZE = 8L * 1024 * 1024;
+    private static final int DEFAULT_SEGMENTS = 4;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final long JOURNAL_INTERVAL = 64L * 1024 * 1024;
+    private static final long RETRY_MULTIPLIER = 100L;
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+\\d+-\\d+/(\\d+)");
+    private static final Logger LOG = LoggerFactory.getLogger(SegmentedHttpDownloader.class);
+    private static final HttpClient HTTP_CLIENT = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL).build();
+    private static final ExecutorService SEGMENT_POOL = Executors
+        .newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("file-provision-segment-%d").setDaemon(true).build());
+
+    private final Set<String> schemes;
+    private final int segments;
+    private final int maxRetries;
+
+    SegmentedHttpDownloader(Set<String> schemes, int segments, int maxRetries) {
+        this.schemes = schemes;
+        this.segments = Math.max(1, segments);
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * @param config     the dockstore config
+     * @param maxRetries number of times to retry each segment
+     * @return a downloader for the schemes listed in {@value #SEGMENTED_SCHEMES}, empty when there are none
+     */
+    static Optional<SegmentedHttpDownloader> fromConfig(INIConfiguration config, int maxRetries) {
+        Set<String> schemes = new HashSet<>();
+        for (String scheme : Splitter.on(',').trimResults().omitEmptyStrings().split(config.getString(SEGMENTED_SCHEMES, ""))) {
+            String lowerCase = scheme.toLowerCase(Locale.ROOT);
+            if (!"http".equals(lowerCase) && !"https".equals(lowerCase)) {
+                LOG.warn("Segmented downloads only support http and https, ignoring " + scheme);
+                continue;
+            }
+            schemes.add(lowerCase);
+        }
+        if (schemes.isEmpty()) {
+            return Optional.empty();
+        }
+        return Optional.of(new SegmentedHttpDownloader(schemes, config.getInt(SEGMENTS, DEFAULT_SEGMENTS), maxRetries));
+    }
+
+    boolean handles(String path) {
+        try {
+            String scheme = URI.create(path).getScheme();
+            return scheme != null && schemes.contains(scheme.toLowerCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    static boolean isHttp(String path) {
+        try {
+            String scheme = URI.create(path).getScheme();
+            return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Continues a sequential download by appending everything after offset to targetPath.
+     * If the server ignores the range, the file is rewritten from the start instead.
+     *
+     * @param path       where to download from
+     * @param targetPath a file holding the first offset bytes
+     * @param offset     the number of bytes already downloaded
+     * @return true on success
+     */
+    static boolean resume(String path, Path targetPath, long offset) throws IOException {
+        final URI uri = URI.create(path);
+        HttpRequest request = HttpRequest.newBuilder(uri).header("Range", "bytes=" + offset + "-").build();
+        try {
+            HttpResponse<InputStream> response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            try (InputStream inputStream = response.body();
+                FileChannel channel = FileChannel.open(targetPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                long position;
+                long size;
+                if (response.statusCode() == HttpStatus.SC_PARTIAL_CONTENT) {
+                    position = offset;
+                    Matcher matcher = CONTENT_RANGE.matcher(response.headers().firstValue("Content-Range").orElse(""));
+                    size = matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+                } else if (response.statusCode() == HttpStatus.SC_OK) {
+                    LOG.info(uri + " does not support range requests, downloading from the start");
+                    position = 0;
+                    size = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                    channel.truncate(0);
+                } else {
+                    LOG.error("Could not resume " + uri + ", got " + response.statusCode());
+                    return false;
+                }
+                Progress progress = new Progress(path, size, null);
+                progress.skip(position);
+                boolean complete = false;
+                try {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+                    int read = inputStream.read(buffer);
+                    while (read != -1) {
+                        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                        while (byteBuffer.hasRemaining()) {
+                            position += channel.write(byteBuffer, position);
+                        }
+                        progress.add(position - read, read);
+                        read = inputStream.read(buffer);
+                    }
+                    complete = size < 0 || position == size;
+                    return complete;
+                } finally {
+                    progress.finish(complete);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while downloading " + path, e);
+        }
+    }
+
+    /**
+     * @param path       where to download from
+     * @param targetPath where to download to, segments that an earlier attempt journaled as complete are not downloaded again
+     * @return false if the server or file is not suited to a segmented download and nothing was written
+     * @throws IOException if a segment still failed after retries, the partial file and its journal are kept
+     */
+    boolean download(String path, Path targetPath) throws IOException {
+        final URI uri = URI.create(path);
+        Optional<Probe> probe = probe(uri);
+        if (probe.isEmpty() || probe.get().size < 2 * MIN_SEGMENT_SIZE) {
+            return false;
+        }
+        final long size = probe.get().size;
+        final String validator = probe.get().validator;
+        final long segmentSize = Math.max(MIN_SEGMENT_SIZE, (size + segments - 1) / segments);
+
+        if (targetPath.getParent() != null) {
+            Files.createDirectories(targetPath.getParent());
+        }
+        final DownloadJournal journal = DownloadJournal.load(targetPath);
+        final boolean resuming = journal.isSegmented() && journal.getSize() == size && Files.exists(targetPath);
+        if (resuming) {
+            System.out.println("Resuming " + path + " with " + journal.getCompletedBytes() + " of " + size + " bytes already downloaded");
+        } else {
+            System.out.println("Downloading " + path + " in " + ((size + segmentSize - 1) / segmentSize) + " segments");
+            journal.reset(size, true);
+            journal.save();
+        }
+        final Progress progress = new Progress(path, size, journal);
+        progress.skip(journal.getCompletedBytes());
+        boolean success = false;
+        try (FileChannel channel = resuming ? FileChannel.open(targetPath, StandardOpenOption.WRITE)
+            : FileChannel.open(targetPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (!resuming) {
+                // preallocate so that segments can be written anywhere in the file
+                channel.write(ByteBuffer.wrap(new byte[1]), size - 1);
+            }
+            List<Future<Void>> futures = new ArrayList<>();
+            for (long start = 0; start < size; start += segmentSize) {
+                final long first = journal.getCompletedUpTo(start);
+                final long last = Math.min(size, start + segmentSize) - 1;
+                if (first > last) {
+                    continue;
+                }
+                futures.add(SEGMENT_POOL.submit(() -> {
+                    downloadSegmentWithRetries(uri, validator, channel, first, last, progress);
+                    return null;
+                }));
+            }
+            try {
+                IOException failure = null;
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        // let the other segments finish, so that a retry only downloads what is missing from the failed ones
+                        final IOException cause = e.getCause() instanceof IOException ? (IOException)e.getCause() : new IOException(e.getCause());
+                        if (failure == null) {
+                            failure = cause;
+                        } else {
+                            failure.addSuppressed(cause);
+                        }
+                    }
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            } catch (InterruptedException e) {
+                futures.forEach(pending -> pending.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while downloading " + path, e);
+            }
+            success = true;
+            return true;
+        } finally {
+            progress.finish(success);
+            if (success) {
+                journal.delete();
+            } else {
+                journal.save();
+            }
+        }
+    }
+
+    private void downloadSegmentWithRetries(URI uri, String validator, FileChannel channel, long first, long last, Progress progress)
+        throws IOException, InterruptedException {
+        final AtomicLong position = new AtomicLong(first);
+        int retries = 0;
+        while (true) {
+            try {
+                downloadSegment(uri, validator, channel, position, last, progress);
+                return;
+            } catch (IOException e) {
+                if (retries++ >= maxRetries) {
+                    throw new IOException("Could not download bytes " + position.get() + "-" + last + " of " + uri, e);
+                }
+                // resume the segment from wherever it got to
+                LOG.warn("Retrying bytes " + position.get() + "-" + last + " of " + uri + ": " + e.getMessage());
+                Thread.sleep((long)Math.pow(2, retries) * RETRY_MULTIPLIER);
+            }
+        }
+    }
+
+    /**
+     * Downloads the range from position to last, advancing position as bytes are written.
+     */
+    private void downloadSegment(URI uri, String validator, FileChannel channel, AtomicLong position, long last, Progress progress)
+        throws IOException, InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(uri).header("Range", "bytes=" + position.get() + "-" + last);
+        if (validator != null) {
+            builder.header("If-Range", validator);
+        }
+        HttpResponse<InputStream> response = HTTP_CLIENT.send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream inputStream = response.body()) {
+            if (response.statusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                // a 200 here means the file changed since it was probed
+                throw new IOException("Expected a partial response for " + uri + " but got " + response.statusCode());
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (position.get() <= last) {
+                int read = inputStream.read(buffer, 0, (int)Math.min(buffer.length, last - position.get() + 1));
+                if (read == -1) {
+                    throw new IOException("Connection closed with " + (last - position.get() + 1) + " bytes of the segment left");
+                }
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, read);
+                final long start = position.get();
+                while (byteBuffer.hasRemaining()) {
+                    position.addAndGet(channel.write(byteBuffer, position.get()));
+                }
+                progress.add(start, read);
+            }
+        }
+    }
+
+    private static Optional<Probe> probe(URI uri) {
+        HttpRequest request = HttpRequest.newBuilder(uri).header("Range", "bytes=0-0").build();
+        try {
+            HttpResponse<InputStream> response = HTTP_CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            // do not read the body, a server that ignores the range would send the whole file
+            response.body().close();
+            if (response.statusCode() != HttpStatus.SC_PARTIAL_CONTENT) {
+                LOG.info(uri + " does not support range requests, downloading as a single stream");
+                return Optional.empty();
+            }
+            Optional<String> contentRange = response.headers().firstValue("Content-Range");
+            Matcher matcher = CONTENT_RANGE.matcher(contentRange.orElse(""));
+            if (!matcher.matches()) {
+                return Optional.empty();
+            }
+            // only strong validators are allowed in If-Range
+            String validator = response.headers().firstValue("ETag").filter(eTag -> !eTag.startsWith("W/"))
+                .orElse(response.headers().firstValue("Last-Modified").orElse(null));
+            return Optional.of(new Probe(Long.parseLong(matcher.group(1)), validator));
+        } catch (IOException | NumberFormatException e) {
+            LOG.info("Could not probe " + uri + " for range support", e);
+            return Optional.empty();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+    }
+
+    private static final class Probe {
+        private final long size;
+        private final String validator;
+
+        private Probe(long size, String validator) {
+            this.size = size;
+            this.validator = validator;
+        }
+    }
+
+    /**
+     * Progress across all segments of one download, journaled every {@value #JOURNAL_INTERVAL} bytes.
+     */
+    private static final class Progress {
+        private final TransferEventBus.Transfer transfer;
+        private final DownloadJournal journal;
+        private final AtomicLong sinceSave = new AtomicLong();
+
+        private Progress(String name, long size, DownloadJournal journal) {
+            this.transfer = TransferEventBus.getInstance().start(name, size);
+            this.journal = journal;
+        }
+
+        /**
+         * Count bytes that were already on disk.
+         */
+        private void skip(long bytes) {
+            transfer.skip(bytes);
+        }
+
+        private void add(long start, long bytes) {
+            transfer.add(bytes);
+            if (journal != null && bytes > 0) {
+                journal.addCompleted(start, start + bytes);
+                if (sinceSave.addAndGet(bytes) >= JOURNAL_INTERVAL) {
+                    sinceSave.set(0);
+                    journal.save();
+                }
+            }
+        }
+
+        private void finish(boolean success) {
+            if (success) {
+                transfer.complete();
+            } else {
+                transfer.fail();
+            }
+        }
+    }
+}
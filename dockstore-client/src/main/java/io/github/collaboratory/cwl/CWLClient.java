@@ -521,6 +521,7 @@ public class CWLClient extends BaseLanguageClient implements LanguageClientInter
             final List<?> files = (List<?>)getInputs.invoke(cwlObject);
 
             List<Pair<String, Path>> pairs = new ArrayList<>();
+            Map<String, String> checksums = new HashMap<>();
 
             // for each file input from the CWL, compare the IDs from CWL to the input JSON
             for (Object file : files) {
@@ -535,9 +536,9 @@ public class CWLClient extends BaseLanguageClient implements LanguageClientInter
                 cwlInputFileID = cleanFileId(cwlInputFileID);
                 // to be clear, these are secondary files as defined by CWL, not secondary descriptors
                 List<String> secondaryFiles = getSecondaryFileStrings(file);
-                pairs.addAll(pullFilesHelper(inputsOutputs, fileMap, cwlInputFileID, secondaryFiles));
+                pairs.addAll(pullFilesHelper(inputsOutputs, fileMap, checksums, cwlInputFileID, secondaryFiles));
             }
-            fileProvisioning.provisionInputFiles(this.originalTestParameterFilePath, pairs);
+            fileProvisioning.provisionInputFiles(this.originalTestParameterFilePath, pairs, checksums);
         } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException e) {
             LOG.error("Reflection issue, this is likely a coding problem.");
             throw new RuntimeException();
@@ -579,12 +580,13 @@ public class CWLClient extends BaseLanguageClient implements LanguageClientInter
     /**
      * @param inputsOutputs  json parameter file
      * @param fileMap        a record of the files that we have provisioned
+     * @param checksums      a record of the checksums given for files, keyed by path
      * @param cwlInputFileID the file id from the CWL file
      * @param secondaryFiles a record of secondary files that were identified
      * @return a list of pairs of remote URLs to input files paired with where we want to download it to
      */
     private List<Pair<String, Path>> pullFilesHelper(Map<String, Object> inputsOutputs, Map<String, FileProvisioning.FileInfo> fileMap,
-            String cwlInputFileID, List<String> secondaryFiles) {
+            Map<String, String> checksums, String cwlInputFileID, List<String> secondaryFiles) {
 
         List<Pair<String, Path>> inputSet = new ArrayList<>();
 
@@ -601,10 +603,11 @@ public class CWLClient extends BaseLanguageClient implements LanguageClientInter
                         String path = getPathOrLocation(lhm);
                         // notice I'm putting key:path together so they are unique in the hash
                         if (path != null && stringObjectEntry.getKey().equals(cwlInputFileID)) {
+                            recordChecksum(lhm, path, checksums);
                             inputSet.addAll(doProcessFile(stringObjectEntry.getKey() + ":" + path, path, cwlInputFileID, fileMap, secondaryFiles));
                         }
                     } else if (entry instanceof ArrayList) {
-                        inputSet.addAll(processArrayofArrayOfFiles(entry, stringObjectEntry, cwlInputFileID, fileMap, secondaryFiles));
+                        inputSet.addAll(processArrayofArrayOfFiles(entry, stringObjectEntry, cwlInputFileID, fileMap, checksums, secondaryFiles));
                     }
                 }
                 // in this case the input is a single instance and not an array
@@ -612,6 +615,7 @@ public class CWLClient extends BaseLanguageClient implements LanguageClientInter
                 Map param = (HashMap)stringObjectEntry.getValue();
                 String path = getPathOrLocation(param);
                 if (path != null && stringObjectEntry.getKey().equals(cwlInputFileID)) {
+                    recordChecksum(param, path, checksums);
                     inputSet.addAll(doProcessFile(stringObjectEntry.getKey(), path, cwlInputFileID, fileMap, secondaryFiles));
                 }
             }
@@ -620,7 +624,7 @@ public class CWLClient extends BaseLanguageClient implements LanguageClientInter
     }
 
     private List<Pair<String, Path>> processArrayofArrayOfFiles(Object entry, Map.Entry<String, Object> stringObjectEntry,
-            String cwlInputFileID, Map<String, FileProvisioning.FileInfo> fileMap, List<String> secondaryFiles) {
+            String cwlInputFileID, Map<String, FileProvisioning.FileInfo> fileMap, Map<String, String> checksums, List<String> secondaryFiles) {
         List<Pair<String, Path>> inputSet = new ArrayList<>();
         try {
             ArrayList<Map> filesArray = (ArrayList)entry;
@@ -628,6 +632,7 @@ public class CWLClient extends BaseLanguageClient implements LanguageClientInter
                 String path = getPathOrLocation(file);
                 // notice I'm putting key:path together so they are unique in the hash
                 if (path != null && stringObjectEntry.getKey().equals(cwlInputFileID)) {
+                    recordChecksum(file, path, checksums);
                     inputSet.addAll(doProcessFile(stringObjectEntry.getKey() + ":" + path, path, cwlInputFileID, fileMap, secondaryFiles));
                 }
             }
@@ -646,6 +651,16 @@ public class CWLClient extends BaseLanguageClient implements LanguageClientInter
         return ObjectUtils.firstNonNull(getString(param, "path"), getString(param, "location"));
     }
 
+    /**
+     * Remembers the CWL checksum field (e.g. sha1$47a013e660d408619d894b20806b1d5086aab03b) of a file so that its download can be verified
+     */
+    private void recordChecksum(Map param, String path, Map<String, String> checksums) {
+        String checksum = getString(param, "checksum");
+        if (checksum != null) {
+            checksums.put(path, checksum);
+        }
+    }
+
     /**
      * Looks like this is intended to copy one file from source to a local destination
      *
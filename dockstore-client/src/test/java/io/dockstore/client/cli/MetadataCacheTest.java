@@ -0,0 +1,129 @@
+package io.dockstore.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.apache.commons.configuration2.INIConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MetadataCacheTest {
+
+    private static final String ETAG = "\"v1\"";
+    private static final String WORKFLOW = "{\"full_workflow_path\":\"github.com/org/repo\"}";
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private final List<String> requests = new ArrayList<>();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            final String ifNoneMatch = exchange.getRequestHeaders().getFirst(HttpHeaders.IF_NONE_MATCH);
+            requests.add(exchange.getRequestMethod() + " " + (ifNoneMatch == null ? "" : ifNoneMatch));
+            exchange.getResponseHeaders().add(HttpHeaders.ETAG, ETAG);
+            if (ETAG.equals(ifNoneMatch)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+            final byte[] body = WORKFLOW.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.createContext("/unvalidated/", exchange -> {
+            requests.add(exchange.getRequestMethod() + " ");
+            final byte[] body = WORKFLOW.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testRevalidation() {
+        Client client = ClientBuilder.newClient().register(new MetadataCache(tempDir, 0));
+        assertEquals(WORKFLOW, get(client, "/workflows/path/workflow/github.com%2Forg%2Frepo/published"));
+        assertEquals(WORKFLOW, get(client, "/workflows/path/workflow/github.com%2Forg%2Frepo/published"), "A 304 should be answered from the cache");
+        assertEquals(List.of("GET ", "GET " + ETAG), requests);
+    }
+
+    @Test
+    void testFreshResponsesAndInvalidation() {
+        Client client = ClientBuilder.newClient().register(new MetadataCache(tempDir, TimeUnit.HOURS.toMillis(1)));
+        get(client, "/workflows/path/workflow/github.com%2Forg%2Frepo/published");
+        assertEquals(WORKFLOW, get(client, "/workflows/path/workflow/github.com%2Forg%2Frepo/published"));
+        assertEquals(1, requests.size(), "A fresh response should not be requested again");
+
+        // only lookups by path are cached
+        get(client, "/workflows/published");
+        get(client, "/workflows/published");
+        assertEquals(3, requests.size());
+
+        client.target(url("/workflows/1/refresh")).request().put(Entity.json("{}")).close();
+        get(client, "/workflows/path/workflow/github.com%2Forg%2Frepo/published");
+        assertEquals(List.of("GET ", "GET ", "GET ", "PUT ", "GET "), requests, "Changing a workflow should clear the cache");
+    }
+
+    @Test
+    void testResponsesWithoutValidators() throws IOException {
+        Client client = ClientBuilder.newClient().register(new MetadataCache(tempDir, 0));
+        assertEquals(WORKFLOW, get(client, "/unvalidated/workflows/path/workflow/github.com%2Forg%2Frepo/published"));
+        assertEquals(WORKFLOW, get(client, "/unvalidated/workflows/path/workflow/github.com%2Forg%2Frepo/published"));
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count(), "A response that cannot be revalidated should not be stored without a TTL");
+        }
+
+        client = ClientBuilder.newClient().register(new MetadataCache(tempDir, TimeUnit.HOURS.toMillis(1)));
+        get(client, "/unvalidated/workflows/path/workflow/github.com%2Forg%2Frepo/published");
+        assertEquals(WORKFLOW, get(client, "/unvalidated/workflows/path/workflow/github.com%2Forg%2Frepo/published"));
+        assertEquals(3, requests.size(), "A fresh response should be used even without validators");
+    }
+
+    @Test
+    void testClientTtl() {
+        INIConfiguration config = new INIConfiguration();
+        assertEquals(0, io.dockstore.client.cli.Client.getMetadataCacheTtlMillis(config), "Lookups should always be revalidated by default");
+        config.setProperty(io.dockstore.client.cli.Client.METADATA_CACHE_TTL, 300);
+        assertEquals(TimeUnit.MINUTES.toMillis(5), io.dockstore.client.cli.Client.getMetadataCacheTtlMillis(config));
+    }
+
+    private String get(Client client, String path) {
+        return client.target(url(path)).request(MediaType.APPLICATION_JSON).get(String.class);
+    }
+
+    private String url(String path) {
+        return "http://localhost:" + server.getAddress().getPort() + path;
+    }
+}
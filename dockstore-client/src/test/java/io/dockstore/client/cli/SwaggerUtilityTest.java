@@ -0,0 +1,82 @@
+package io.dockstore.client.cli;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SwaggerUtilityTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testUnzipStream() throws IOException {
+        final byte[] zip = zip(Map.of("Dockstore.cwl", "cwlVersion: v1.0", "tools/sort.cwl", "class: CommandLineTool"));
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(zip);
+        SwaggerUtility.unzipStream(inputStream, tempDir.toFile());
+
+        assertEquals("cwlVersion: v1.0", Files.readString(tempDir.resolve("Dockstore.cwl")));
+        assertEquals("class: CommandLineTool", Files.readString(tempDir.resolve("tools/sort.cwl")));
+    }
+
+    @Test
+    void testUnzipStreamZipSlip() throws IOException {
+        final byte[] zip = zip(Map.of("../outside.txt", "oops"));
+        final Path unzipDirectory = Files.createDirectories(tempDir.resolve("unzip"));
+        assertThrows(IOException.class, () -> SwaggerUtility.unzipStream(new ByteArrayInputStream(zip), unzipDirectory.toFile()));
+        assertFalse(Files.exists(tempDir.resolve("outside.txt")), "Nothing should be written outside of the directory");
+    }
+
+    @Test
+    void testUnzipFile() throws IOException {
+        Map<String, String> files = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            files.put("modules/module" + i % 10 + "/main" + i + ".nf", "process p" + i + " {}");
+        }
+        final Path zipFile = tempDir.resolve("entry.zip");
+        Files.write(zipFile, zip(files));
+        final Path unzipDirectory = tempDir.resolve("unzip");
+
+        SwaggerUtility.unzipFile(zipFile.toFile(), unzipDirectory.toFile(), true);
+
+        for (Map.Entry<String, String> file : files.entrySet()) {
+            assertEquals(file.getValue(), Files.readString(unzipDirectory.resolve(file.getKey())));
+        }
+        assertFalse(Files.exists(zipFile), "The zip should be deleted");
+    }
+
+    @Test
+    void testUnzipFileZipSlip() throws IOException {
+        final Path zipFile = tempDir.resolve("entry.zip");
+        Files.write(zipFile, zip(Map.of("main.nf", "workflow {}", "../../outside.txt", "oops")));
+        final Path unzipDirectory = tempDir.resolve("nested/unzip");
+
+        assertThrows(IOException.class, () -> SwaggerUtility.unzipFile(zipFile.toFile(), unzipDirectory.toFile()));
+        assertFalse(Files.exists(unzipDirectory.resolve("main.nf")), "Nothing should be extracted from a zip with an unsafe entry");
+    }
+
+    private static byte[] zip(Map<String, String> files) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                zipOutputStream.putNextEntry(new ZipEntry(file.getKey()));
+                zipOutputStream.write(file.getValue().getBytes(StandardCharsets.UTF_8));
+                zipOutputStream.closeEntry();
+            }
+        }
+        return outputStream.toByteArray();
+    }
+}
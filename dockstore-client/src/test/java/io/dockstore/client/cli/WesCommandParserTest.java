@@ -7,10 +7,20 @@ import static io.dockstore.client.cli.nested.AbstractEntryClient.LIST;
 import static io.dockstore.client.cli.nested.AbstractEntryClient.LOGS;
 import static io.dockstore.client.cli.nested.AbstractEntryClient.SERVICE_INFO;
 import static io.dockstore.client.cli.nested.AbstractEntryClient.STATUS;
+import static io.dockstore.client.cli.nested.AbstractEntryClient.WATCH;
+import static io.dockstore.client.cli.nested.WesCommandParser.ALL;
+import static io.dockstore.client.cli.nested.WesCommandParser.BATCH;
+import static io.dockstore.client.cli.nested.WesCommandParser.BUNDLE_ATTACHMENTS;
+import static io.dockstore.client.cli.nested.WesCommandParser.CONCURRENCY;
 import static io.dockstore.client.cli.nested.WesCommandParser.COUNT;
 import static io.dockstore.client.cli.nested.WesCommandParser.ENTRY;
+import static io.dockstore.client.cli.nested.WesCommandParser.FOLLOW;
 import static io.dockstore.client.cli.nested.WesCommandParser.ID;
+import static io.dockstore.client.cli.nested.WesCommandParser.ID_FILE;
+import static io.dockstore.client.cli.nested.WesCommandParser.INTERVAL;
 import static io.dockstore.client.cli.nested.WesCommandParser.PAGE_TOKEN;
+import static io.dockstore.client.cli.nested.WesCommandParser.RATE;
+import static io.dockstore.client.cli.nested.WesCommandParser.STATE;
 import static io.dockstore.client.cli.nested.WesCommandParser.WES_URL;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
@@ -21,6 +31,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
 import io.dockstore.client.cli.nested.WesCommandParser;
+import java.util.List;
 import org.junit.jupiter.api.Test;
 
 class WesCommandParserTest {
@@ -132,6 +143,78 @@ class WesCommandParserTest {
         assertEquals("my/fake/entry", wesCommandParser.commandLaunch.getEntry(), "The parsed entry should be 'my/fake/entry'");
     }
 
+    @Test
+    void testCommandLaunchBatch() {
+        final String[] args = {
+            LAUNCH,
+            ENTRY,
+            "my/fake/entry",
+            BATCH,
+            "cohort.txt",
+            RATE,
+            "0.5",
+            CONCURRENCY,
+            "8",
+            BUNDLE_ATTACHMENTS
+        };
+
+        WesCommandParser wesCommandParser = new WesCommandParser();
+        JCommander parser = wesCommandParser.jCommander;
+        parser.parse(args);
+
+        assertEquals(LAUNCH, parser.getParsedCommand(), "Parsed command should be 'launch'");
+        assertEquals("cohort.txt", wesCommandParser.commandLaunch.getBatch(), "The parsed batch file should be 'cohort.txt'");
+        assertNull(wesCommandParser.commandLaunch.getBatchOutput(), "The batch output should default to null");
+        assertEquals(0.5, wesCommandParser.commandLaunch.getRate(), "The parsed rate should be 0.5");
+        assertEquals(8, wesCommandParser.commandLaunch.getConcurrency(), "The parsed concurrency should be 8");
+        assertTrue(wesCommandParser.commandLaunch.isBundleAttachments(), "Attachments should be bundled");
+    }
+
+    @Test
+    void testCommandRunListStates() {
+        final String[] args = {
+            LIST,
+            ALL,
+            STATE,
+            "RUNNING",
+            "queued"
+        };
+
+        WesCommandParser wesCommandParser = new WesCommandParser();
+        JCommander parser = wesCommandParser.jCommander;
+        parser.parse(args);
+
+        assertEquals(LIST, parser.getParsedCommand(), "Parsed command should be 'list'");
+        assertTrue(wesCommandParser.commandRunList.isAll(), "All runs should be listed");
+        assertEquals(List.of("RUNNING", "queued"), wesCommandParser.commandRunList.getStates(), "Both states should be parsed");
+    }
+
+    @Test
+    void testCommandWatch() {
+        final String[] args = {
+            WATCH,
+            ID,
+            "run-1",
+            "run-2",
+            ID_FILE,
+            "cohort.txt.runs.jsonl",
+            INTERVAL,
+            "30",
+            CONCURRENCY,
+            "16"
+        };
+
+        WesCommandParser wesCommandParser = new WesCommandParser();
+        JCommander parser = wesCommandParser.jCommander;
+        parser.parse(args);
+
+        assertEquals(WATCH, parser.getParsedCommand(), "Parsed command should be 'watch'");
+        assertEquals(List.of("run-1", "run-2"), wesCommandParser.commandWatch.getIds(), "Both run IDs should be parsed");
+        assertEquals("cohort.txt.runs.jsonl", wesCommandParser.commandWatch.getIdFile(), "The parsed ID file should be 'cohort.txt.runs.jsonl'");
+        assertEquals(30, wesCommandParser.commandWatch.getInterval(), "The parsed interval should be 30");
+        assertEquals(16, wesCommandParser.commandWatch.getConcurrency(), "The parsed concurrency should be 16");
+    }
+
     @Test
     void testCommandLaunchNoEntry() {
         final String[] args = {
@@ -341,5 +424,26 @@ class WesCommandParserTest {
 
         assertEquals(LOGS, parser.getParsedCommand(), "Parsed command should be '" + LOGS + "'");
         assertEquals("123456", wesCommandParser.commandRunLogs.getId(), "The parsed entry should be '123456'");
+        assertFalse(wesCommandParser.commandRunLogs.isFollow(), "Logs should not be followed by default");
+    }
+
+    @Test
+    void testCommandRunLogsFollow() {
+        final String[] args = {
+            LOGS,
+            ID,
+            "123456",
+            FOLLOW,
+            INTERVAL,
+            "30"
+        };
+
+        WesCommandParser wesCommandParser = new WesCommandParser();
+        JCommander parser = wesCommandParser.jCommander;
+        parser.parse(args);
+
+        assertEquals(LOGS, parser.getParsedCommand(), "Parsed command should be '" + LOGS + "'");
+        assertTrue(wesCommandParser.commandRunLogs.isFollow(), "Logs should be followed");
+        assertEquals(30, wesCommandParser.commandRunLogs.getInterval(), "The interval should be parsed");
     }
 }
@@ -1,12 +1,25 @@
 package io.dockstore.client.cli;
 
+import static io.dockstore.client.cli.ArgumentUtility.LAUNCH;
+import static io.dockstore.client.cli.nested.WesCommandParser.BATCH;
+import static io.dockstore.client.cli.nested.WesCommandParser.BATCH_OUTPUT;
+import static io.dockstore.client.cli.nested.WesCommandParser.ENTRY;
+import static io.dockstore.client.cli.nested.WesCommandParser.INLINE_WORKFLOW;
+import static io.dockstore.client.cli.nested.WesCommandParser.RATE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static uk.org.webcompere.systemstubs.SystemStubs.catchSystemExit;
 
+import com.google.gson.Gson;
+import io.dockstore.client.cli.nested.ApiClientExtended;
+import io.dockstore.client.cli.nested.WesCommandParser;
 import io.dockstore.client.cli.nested.WesLauncher;
 import io.dockstore.client.cli.nested.WesRequestData;
 import io.dockstore.client.cli.nested.WorkflowClient;
@@ -20,10 +33,16 @@ import io.openapi.wes.client.ApiException;
 import io.openapi.wes.client.api.WorkflowExecutionServiceApi;
 import io.openapi.wes.client.model.RunId;
 import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.ArgumentMatchers;
 import uk.org.webcompere.systemstubs.jupiter.SystemStub;
 import uk.org.webcompere.systemstubs.jupiter.SystemStubsExtension;
@@ -87,6 +106,12 @@ class WesLauncherTest {
             ArgumentMatchers.isNull(),
             any(String.class)
         )).thenReturn(fakeWorkflow);
+        when(workflowApi.getPublishedWorkflowByPath(
+            any(String.class),
+            any(WorkflowSubClass.class),
+            ArgumentMatchers.eq("versions"),
+            ArgumentMatchers.isNull()
+        )).thenReturn(fakeWorkflow);
 
         // WorkflowClient function mocks
         when(workflowClient.getClient()).thenReturn(client);
@@ -136,6 +161,72 @@ class WesLauncherTest {
         assertTrue(systemOutRule.getText().contains(RUN_ID), "The runId should be printed out");
     }
 
+    @Test
+    public void testLaunchLooksUpEntryOnce() throws ApiException {
+        WorkflowClient workflowClient = mockWorkflowClient("configNoContent");
+        WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi = mockWesApi();
+
+        WesLauncher.launchWesCommand(clientWorkflowExecutionServiceApi, workflowClient, "my/entry/path:v1", false, null, null, false);
+        assertTrue(systemOutRule.getText().contains(RUN_ID), "The runId should be printed out");
+        verify(workflowClient.getWorkflowsApi(), times(1)).getPublishedWorkflowByPath(any(), any(), any(), any());
+        verify(workflowClient, never()).getVersionID(any(String.class));
+    }
+
+    @Test
+    public void testLaunchFallsBackToAllVersions() throws ApiException {
+        WorkflowClient workflowClient = mockWorkflowClient("configNoContent");
+        WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi = mockWesApi();
+
+        // The fake workflow has no master version, so every version is fetched to pick the latest one
+        WesLauncher.launchWesCommand(clientWorkflowExecutionServiceApi, workflowClient, "my/entry/path", false, null, null, false);
+        assertTrue(systemOutRule.getText().contains(RUN_ID), "The runId should be printed out");
+        verify(workflowClient.getWorkflowsApi(), times(1)).getPublishedWorkflowByPath(any(), any(), ArgumentMatchers.isNull(), ArgumentMatchers.eq("master"));
+        verify(workflowClient.getWorkflowsApi(), times(1)).getPublishedWorkflowByPath(any(), any(), ArgumentMatchers.eq("versions"), ArgumentMatchers.isNull());
+    }
+
+    @Test
+    public void testLaunchBatchRecordsFailedRuns(@TempDir Path tempDir) throws Exception {
+        WorkflowClient workflowClient = mockWorkflowClient("configNoContent");
+        WorkflowExecutionServiceApi clientWorkflowExecutionServiceApi = mockWesApi();
+        when(clientWorkflowExecutionServiceApi.getApiClient()).thenReturn(mock(ApiClientExtended.class));
+
+        final List<String> paramPaths = new ArrayList<>();
+        for (String name : List.of("first.json", "bad.json", "third.json")) {
+            paramPaths.add(Files.writeString(tempDir.resolve(name), "{}").toString());
+        }
+        // The WES server rejects one of the runs
+        when(clientWorkflowExecutionServiceApi.runWorkflow(ArgumentMatchers.argThat(file -> file != null && file.getName().equals("bad.json")),
+            any(String.class), any(String.class), any(String.class), any(String.class), any(String.class), any(List.class)))
+            .thenThrow(new ApiException("Invalid parameters"));
+        final Path batch = Files.write(tempDir.resolve("batch.txt"), paramPaths);
+        final Path output = tempDir.resolve("runs.jsonl");
+
+        WesCommandParser wesCommandParser = new WesCommandParser();
+        wesCommandParser.jCommander.parse(LAUNCH, ENTRY, "my/entry/path:v1", INLINE_WORKFLOW, BATCH, batch.toString(), BATCH_OUTPUT, output.toString(),
+            RATE, "100");
+
+        // A failed run is reported with a non-zero exit once the others have been launched
+        catchSystemExit(() -> WesLauncher.launchWesBatch(clientWorkflowExecutionServiceApi, workflowClient, wesCommandParser.commandLaunch));
+        assertTrue(systemOutRule.getText().contains("Launched 2 of 3 runs"), "The launched runs should be counted");
+
+        final Gson gson = new Gson();
+        final Map<String, Map<?, ?>> results = Files.readAllLines(output, StandardCharsets.UTF_8).stream().map(line -> gson.fromJson(line, Map.class))
+            .collect(Collectors.toMap(result -> (String)result.get("params"), result -> result));
+        assertEquals(3, results.size(), "Every parameter file should have a result");
+        assertFalse((Boolean)results.get(paramPaths.get(1)).get("success"));
+        assertTrue(((String)results.get(paramPaths.get(1)).get("error")).contains("Invalid parameters"), "The failure should be recorded");
+        for (String paramPath : List.of(paramPaths.get(0), paramPaths.get(2))) {
+            assertTrue((Boolean)results.get(paramPath).get("success"));
+            assertEquals(RUN_ID, results.get(paramPath).get("runId"));
+        }
+
+        // The entry is looked up and downloaded once for the whole batch
+        verify(clientWorkflowExecutionServiceApi, times(3)).runWorkflow(any(File.class), any(String.class), any(String.class), any(String.class),
+            any(String.class), any(String.class), any(List.class));
+        verify(workflowClient.getWorkflowsApi(), times(1)).getPublishedWorkflowByPath(any(), any(), any(), any());
+        verify(workflowClient, times(1)).downloadWorkflowZip(any(Workflow.class), any(WorkflowVersion.class), ArgumentMatchers.isNull(), any(File.class));
+    }
+
     @Test
     public void testLaunchWithExistingFile() throws ApiException {
         WorkflowClient workflowClient = mockWorkflowClient("configNoContent");
@@ -0,0 +1,66 @@
+package io.dockstore.client.cli.nested;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
+import org.glassfish.jersey.media.multipart.MultiPart;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ApiClientExtendedTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testWriteBundle() throws IOException {
+        Path workflowDir = Files.createDirectories(tempDir.resolve("workflow/tools"));
+        Files.writeString(tempDir.resolve("workflow/main.wdl"), "version 1.0", StandardCharsets.UTF_8);
+        Files.writeString(workflowDir.resolve("align.wdl"), "task align {}", StandardCharsets.UTF_8);
+        final String prefix = tempDir.resolve("workflow").toString();
+        List<WesFile> attachments = List.of(
+            new WesFile(tempDir.resolve("workflow/main.wdl").toString(), prefix, null),
+            new WesFile(workflowDir.resolve("align.wdl").toString(), prefix, null));
+
+        Path bundle = tempDir.resolve(ApiClientExtended.ATTACHMENT_BUNDLE_NAME);
+        ApiClientExtended.writeBundle(bundle, attachments);
+
+        List<String> names = new ArrayList<>();
+        List<String> contents = new ArrayList<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(Files.newInputStream(bundle))) {
+            for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+                names.add(entry.getName());
+                contents.add(new String(zipInputStream.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(List.of("main.wdl", "tools/align.wdl"), names, "Entries should keep the relative names used as WES attachments");
+        assertEquals(List.of("version 1.0", "task align {}"), contents);
+    }
+
+    @Test
+    void testPrebuiltBundleIsSentAsIs() throws Exception {
+        Path bundle = tempDir.resolve("bundle.zip");
+        Files.writeString(tempDir.resolve("main.wdl"), "version 1.0", StandardCharsets.UTF_8);
+        ApiClientExtended.writeBundle(bundle, List.of(tempDir.resolve("main.wdl").toFile()));
+        ApiClientExtended.AttachmentBundle attachmentBundle = new ApiClientExtended.AttachmentBundle(bundle);
+
+        MultiPart multiPart = new MultiPart();
+        new ApiClientExtended(new WesRequestData("myUrl", "myBearerToken"))
+            .createBundlePart(multiPart, ApiClientExtended.WORKFLOW_ATTACHMENT, List.of(attachmentBundle));
+
+        FormDataBodyPart bodyPart = (FormDataBodyPart)multiPart.getBodyParts().get(0);
+        assertSame(attachmentBundle, bodyPart.getEntity(), "The bundle should not be packed again");
+        assertEquals(ApiClientExtended.ATTACHMENT_BUNDLE_NAME, bodyPart.getContentDisposition().getFileName());
+        assertTrue(Files.exists(bundle), "The bundle is deleted by its owner, not by the request");
+    }
+}
@@ -0,0 +1,60 @@
+package io.dockstore.client.cli.nested;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+class ConcurrentRefresherTest {
+
+    private static final int CONCURRENCY = 3;
+
+    @Test
+    void testRefreshAll() {
+        final List<String> paths = IntStream.range(0, 20).mapToObj(i -> "github.com/org/repo" + i).collect(Collectors.toList());
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final List<String> output = new CopyOnWriteArrayList<>();
+
+        final List<String> refreshed = new ConcurrentRefresher(CONCURRENCY, 1000, output::add).refreshAll("workflows", paths, Function.identity(), path -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                // finish in roughly the reverse order, the result should still follow the input
+                TimeUnit.MILLISECONDS.sleep(paths.size() - paths.indexOf(path));
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+            if (path.endsWith("repo7") || path.endsWith("repo3")) {
+                throw new RuntimeException("Could not find repository");
+            }
+            return path + ":refreshed";
+        });
+
+        List<String> expected = paths.stream().filter(path -> !path.endsWith("repo7") && !path.endsWith("repo3")).map(path -> path + ":refreshed")
+            .collect(Collectors.toList());
+        assertEquals(expected, refreshed);
+        assertTrue(maxInFlight.get() <= CONCURRENCY, "At most " + CONCURRENCY + " refreshes should run at once");
+        assertEquals(paths.size(), output.stream().filter(line -> line.matches("\\[\\d+/20\\] .*")).count(), "Each entry should report progress");
+        final int summary = output.indexOf("Refreshed 18 of 20 workflows");
+        assertTrue(summary >= 0);
+        assertEquals(List.of("Could not refresh 2 workflows:", "  github.com/org/repo3: Could not find repository",
+            "  github.com/org/repo7: Could not find repository"), output.subList(summary + 1, output.size()));
+    }
+
+    @Test
+    void testRefreshNothing() {
+        final List<String> output = new CopyOnWriteArrayList<>();
+        assertEquals(Collections.emptyList(), new ConcurrentRefresher(1, 1, output::add).refreshAll("tools", List.of(), Function.identity(), path -> path));
+        assertEquals(List.of("Refreshed 0 of 0 tools"), output);
+    }
+}
@@ -0,0 +1,204 @@
+package io.dockstore.client.cli.nested;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.sun.net.httpserver.HttpServer;
+import io.openapi.wes.client.ApiException;
+import io.openapi.wes.client.model.RunStatus;
+import io.openapi.wes.client.model.State;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WesAsyncClientTest {
+
+    private HttpServer server;
+    private final List<String> authorizations = new ArrayList<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/ga4gh/wes/v1/runs/", exchange -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            synchronized (authorizations) {
+                authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            }
+            final String runId = exchange.getRequestURI().getPath().split("/")[5];
+            final boolean missing = "missing".equals(runId);
+            final byte[] body = (missing ? "{\"msg\":\"not found\"}" : "{\"run_id\":\"" + runId + "\",\"state\":\"RUNNING\"}")
+                .getBytes(StandardCharsets.UTF_8);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            inFlight.decrementAndGet();
+            exchange.sendResponseHeaders(missing ? 404 : 200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testGetRunStatus() throws Exception {
+        try (WesAsyncClient client = new WesAsyncClient(createApiClient(), 2)) {
+            List<CompletableFuture<RunStatus>> statuses = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                statuses.add(client.getRunStatus("run-" + i));
+            }
+            for (int i = 0; i < 10; i++) {
+                RunStatus status = statuses.get(i).get();
+                assertEquals("run-" + i, status.getRunId());
+                assertEquals(State.RUNNING, status.getState());
+            }
+        }
+        assertEquals(List.of("Bearer token"), authorizations.stream().distinct().toList(), "Every request should carry the bearer token");
+        assertEquals(2, maxInFlight.get(), "No more than two requests should be in flight");
+    }
+
+    @Test
+    void testFailedRequest() throws Exception {
+        try (WesAsyncClient client = new WesAsyncClient(createApiClient())) {
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> client.getRunStatus("missing").get());
+            ApiException apiException = assertInstanceOf(ApiException.class, exception.getCause());
+            assertEquals(404, apiException.getCode());
+        }
+    }
+
+    @Test
+    void testRequestsThatFailBeforeTheyAreSent() throws Exception {
+        try (WesAsyncClient client = new WesAsyncClient(createApiClient(), 1)) {
+            // The invalid URLs queue behind the request in flight and all fail as soon as it completes
+            CompletableFuture<RunStatus> status = client.getRunStatus("run-1");
+            List<CompletableFuture<byte[]>> logs = new ArrayList<>();
+            for (int i = 0; i < 10000; i++) {
+                logs.add(client.getLogRange("http://[invalid/" + i, 0));
+            }
+            assertEquals("run-1", status.get().getRunId());
+            for (CompletableFuture<byte[]> log : logs) {
+                ExecutionException exception = assertThrows(ExecutionException.class, log::get);
+                assertInstanceOf(ApiException.class, exception.getCause());
+            }
+        }
+    }
+
+    @Test
+    void testGetLogRange() throws Exception {
+        final byte[] log = "line 1\nline 2\n".getBytes(StandardCharsets.UTF_8);
+        server.createContext("/logs/", exchange -> {
+            synchronized (authorizations) {
+                authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            }
+            final String range = exchange.getRequestHeaders().getFirst("Range");
+            final int offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            final boolean ignoresRange = exchange.getRequestURI().getPath().endsWith("stderr");
+            final byte[] body = ignoresRange ? log : Arrays.copyOfRange(log, Math.min(offset, log.length), log.length);
+            exchange.sendResponseHeaders(ignoresRange ? 200 : (offset >= log.length ? 416 : 206), offset >= log.length && !ignoresRange ? -1 : body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        try (WesAsyncClient client = new WesAsyncClient(createApiClient())) {
+            assertEquals("line 2\n", new String(client.getLogRange("/logs/run-1/stdout", 7).get(), StandardCharsets.UTF_8));
+            assertEquals("line 2\n", new String(client.getLogRange("/logs/run-1/stderr", 7).get(), StandardCharsets.UTF_8),
+                "The log should be cut at the offset when the server ignores the range");
+            assertEquals(0, client.getLogRange("/logs/run-1/stdout", log.length).get().length);
+        }
+        assertEquals(List.of("Bearer token"), authorizations.stream().distinct().toList(), "Log URLs on the WES server should carry the bearer token");
+    }
+
+    @Test
+    void testRedirectsKeepCredentialsOnTheSameOrigin() throws Exception {
+        final List<String> otherAuthorizations = Collections.synchronizedList(new ArrayList<>());
+        final HttpServer other = startOtherServer(otherAuthorizations, "{\"run_id\":\"moved\",\"state\":\"COMPLETE\"}");
+        redirect("/ga4gh/wes/v1/runs/renamed/", 307, "/ga4gh/wes/v1/runs/run-1/status");
+        redirect("/ga4gh/wes/v1/runs/moved/", 302, "http://localhost:" + other.getAddress().getPort() + "/runs/moved/status");
+        try (WesAsyncClient client = new WesAsyncClient(createApiClient())) {
+            assertEquals("run-1", client.getRunStatus("renamed").get().getRunId());
+            RunStatus moved = client.getRunStatus("moved").get();
+            assertEquals("moved", moved.getRunId());
+            assertEquals(State.COMPLETE, moved.getState());
+        } finally {
+            other.stop(0);
+        }
+        assertEquals(List.of("Bearer token"), authorizations.stream().distinct().toList(), "Requests to the WES server should carry the bearer token");
+        assertEquals(1, otherAuthorizations.size());
+        assertNull(otherAuthorizations.get(0), "The bearer token must not follow a redirect to another origin");
+    }
+
+    @Test
+    void testLogRedirectToAnotherOriginDropsCredentials() throws Exception {
+        final List<String> otherAuthorizations = Collections.synchronizedList(new ArrayList<>());
+        final HttpServer other = startOtherServer(otherAuthorizations, "line 1\nline 2\n");
+        // Servers often redirect log URLs to presigned bucket URLs
+        redirect("/ga4gh/wes/v1/logs/", 302, "http://localhost:" + other.getAddress().getPort() + "/bucket/stdout");
+        try (WesAsyncClient client = new WesAsyncClient(createApiClient())) {
+            assertEquals("line 2\n", new String(client.getLogRange("logs/run-1/stdout", 7).get(), StandardCharsets.UTF_8));
+        } finally {
+            other.stop(0);
+        }
+        assertEquals(List.of("Bearer token"), authorizations, "The log URL on the WES server should carry the bearer token");
+        assertEquals(1, otherAuthorizations.size());
+        assertNull(otherAuthorizations.get(0), "The bearer token must not follow a redirect to another origin");
+    }
+
+    private void redirect(String path, int statusCode, String location) {
+        server.createContext(path, exchange -> {
+            synchronized (authorizations) {
+                authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            }
+            exchange.getResponseHeaders().add("Location", location);
+            exchange.sendResponseHeaders(statusCode, -1);
+            exchange.close();
+        });
+    }
+
+    /**
+     * @return a server on another port, so another origin, that answers every request with the body
+     */
+    private static HttpServer startOtherServer(List<String> otherAuthorizations, String response) throws IOException {
+        HttpServer other = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        other.createContext("/", exchange -> {
+            otherAuthorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            final byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
+            }
+        });
+        other.start();
+        return other;
+    }
+
+    private ApiClientExtended createApiClient() {
+        final String url = "http://localhost:" + server.getAddress().getPort() + "/ga4gh/wes/v1";
+        ApiClientExtended apiClient = new ApiClientExtended(new WesRequestData(url, "Bearer token"));
+        apiClient.setBasePath(url);
+        return apiClient;
+    }
+}
@@ -0,0 +1,63 @@
+package io.dockstore.client.cli.nested;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WesAttachmentManifestTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testUnchangedFilesAreNotHashedAgain() throws IOException {
+        Path attachment = tempDir.resolve("params.json");
+        Files.writeString(attachment, "{}", StandardCharsets.UTF_8);
+        FileTime lastModified = Files.getLastModifiedTime(attachment);
+        Path manifestPath = tempDir.resolve(WesAttachmentManifest.MANIFEST_FILENAME);
+
+        WesAttachmentManifest manifest = new WesAttachmentManifest(manifestPath);
+        assertEquals(DigestUtils.sha256Hex("{}"), manifest.sha256(attachment.toFile()));
+        manifest.save();
+
+        // Same size and modification time, so the new contents are not noticed
+        Files.writeString(attachment, "[]", StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(attachment, lastModified);
+        assertEquals(DigestUtils.sha256Hex("{}"), new WesAttachmentManifest(manifestPath).sha256(attachment.toFile()));
+
+        Files.setLastModifiedTime(attachment, FileTime.fromMillis(lastModified.toMillis() + 1000));
+        assertEquals(DigestUtils.sha256Hex("[]"), new WesAttachmentManifest(manifestPath).sha256(attachment.toFile()));
+    }
+
+    @Test
+    void testDeduplicateAttachments() throws IOException {
+        Path local = Files.createDirectories(tempDir.resolve("local"));
+        Path provisioned = Files.createDirectories(tempDir.resolve("provisioned"));
+        Files.writeString(local.resolve("workflow.cwl"), "cwlVersion: v1.0", StandardCharsets.UTF_8);
+        Files.writeString(provisioned.resolve("workflow.cwl"), "cwlVersion: v1.0", StandardCharsets.UTF_8);
+        Files.writeString(provisioned.resolve("tool.cwl"), "class: CommandLineTool", StandardCharsets.UTF_8);
+        Files.writeString(provisioned.resolve("params.json"), "{}", StandardCharsets.UTF_8);
+
+        WesAttachmentManifest manifest = new WesAttachmentManifest(tempDir.resolve(WesAttachmentManifest.MANIFEST_FILENAME));
+        List<File> attachments = List.of(
+            new WesFile(local.resolve("workflow.cwl").toString(), local.toString(), null),
+            new WesFile(provisioned.resolve("workflow.cwl").toString(), provisioned.toString(), null),
+            new WesFile(provisioned.resolve("tool.cwl").toString(), provisioned.toString(), null),
+            new WesFile(provisioned.resolve("params.json").toString(), provisioned.toString(), null));
+        Map<String, String> published = Map.of("tool.cwl", DigestUtils.sha256Hex("class: CommandLineTool"), "params.json", DigestUtils.sha256Hex("[]"));
+
+        List<File> deduplicated = WesLauncher.deduplicateAttachments(attachments, manifest, published, false);
+        assertEquals(List.of("workflow.cwl", "params.json"), deduplicated.stream().map(File::getName).toList());
+        assertEquals(attachments.get(0), deduplicated.get(0), "The first of two identical attachments should be kept");
+    }
+}
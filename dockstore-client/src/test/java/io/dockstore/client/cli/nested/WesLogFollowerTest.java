@@ -0,0 +1,91 @@
+package io.dockstore.client.cli.nested;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.openapi.wes.client.model.Log;
+import io.openapi.wes.client.model.RunLog;
+import io.openapi.wes.client.model.State;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class WesLogFollowerTest {
+
+    @Test
+    void testCompleteUtf8Length() {
+        final byte[] text = "n\u00e9".getBytes(StandardCharsets.UTF_8);
+        assertEquals(3, WesLogFollower.completeUtf8Length(text));
+        assertEquals(1, WesLogFollower.completeUtf8Length(Arrays.copyOf(text, 2)), "A character cut short should be left for the next poll");
+        assertEquals(0, WesLogFollower.completeUtf8Length(new byte[0]));
+    }
+
+    @Test
+    void testFollowPrintsOnlyChanges() throws Exception {
+        final String stdout = "line 1\nline 2\nline 3\n";
+        WesAsyncClient client = Mockito.mock(WesAsyncClient.class);
+        when(client.getRunLog("run-1")).thenReturn(
+            CompletableFuture.completedFuture(runLog(State.RUNNING, task("align", null))),
+            CompletableFuture.completedFuture(runLog(State.RUNNING, task("align", "/logs/align/stdout"))),
+            CompletableFuture.completedFuture(runLog(State.RUNNING, task("align", "/logs/align/stdout"))),
+            CompletableFuture.completedFuture(runLog(State.COMPLETE, task("align", "/logs/align/stdout"))));
+        // the log grows by one line per poll
+        final int[] polls = {0};
+        when(client.getLogRange(anyString(), anyLong())).thenAnswer(invocation -> {
+            final int available = ++polls[0] * "line 1\n".length();
+            final long offset = invocation.getArgument(1);
+            return CompletableFuture.completedFuture(stdout.substring((int)offset, available).getBytes(StandardCharsets.UTF_8));
+        });
+
+        List<String> events = new ArrayList<>();
+        assertEquals(State.COMPLETE, new WesLogFollower(client, 1, events::add).follow("run-1"));
+
+        verify(client).getLogRange("/logs/align/stdout", 0);
+        verify(client).getLogRange("/logs/align/stdout", "line 1\n".length());
+        verify(client).getLogRange("/logs/align/stdout", 2 * "line 1\n".length());
+        assertEquals(2, events.stream().filter(event -> event.contains("\"state\"")).count());
+        assertEquals(2, events.stream().filter(event -> event.contains("\"log\"")).count(), "The task should only be printed when it changes");
+        assertEquals(3, events.stream().filter(event -> event.contains("\"stream\":\"stdout\"")).count());
+        assertTrue(events.stream().anyMatch(event -> event.contains("\"offset\":7,\"text\":\"line 2\\n\"")));
+    }
+
+    @Test
+    void testSettledStreamsAreNotRead() throws Exception {
+        WesAsyncClient client = Mockito.mock(WesAsyncClient.class);
+        final Log running = task("align", "/logs/align/stdout");
+        final Log ended = task("align", "/logs/align/stdout").endTime("2023-01-01T00:00:00Z").exitCode(0);
+        when(client.getRunLog("run-1")).thenReturn(
+            CompletableFuture.completedFuture(runLog(State.RUNNING, running)),
+            CompletableFuture.completedFuture(runLog(State.RUNNING, running)),
+            CompletableFuture.completedFuture(runLog(State.RUNNING, ended)),
+            CompletableFuture.completedFuture(runLog(State.RUNNING, ended)),
+            CompletableFuture.completedFuture(runLog(State.COMPLETE, ended)));
+        // nothing is written until the task ends
+        when(client.getLogRange(anyString(), anyLong())).thenReturn(
+            CompletableFuture.completedFuture(new byte[0]),
+            CompletableFuture.completedFuture("done\n".getBytes(StandardCharsets.UTF_8)));
+
+        List<String> events = new ArrayList<>();
+        assertEquals(State.COMPLETE, new WesLogFollower(client, 1, events::add).follow("run-1"));
+
+        verify(client, times(2)).getLogRange("/logs/align/stdout", 0);
+        assertTrue(events.stream().anyMatch(event -> event.contains("\"text\":\"done\\n\"")), "The ended task should get a final read");
+    }
+
+    private static RunLog runLog(State state, Log task) {
+        return new RunLog().runId("run-1").state(state).taskLogs(List.of(task));
+    }
+
+    private static Log task(String name, String stdout) {
+        return new Log().name(name).stdout(stdout);
+    }
+}
@@ -0,0 +1,58 @@
+package io.dockstore.client.cli.nested;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.when;
+
+import io.openapi.wes.client.ApiException;
+import io.openapi.wes.client.api.WorkflowExecutionServiceApi;
+import io.openapi.wes.client.model.RunListResponse;
+import io.openapi.wes.client.model.RunStatus;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class WesRunIteratorTest {
+
+    @Test
+    void testFollowsPageTokens() throws ApiException {
+        WorkflowExecutionServiceApi api = Mockito.mock(WorkflowExecutionServiceApi.class);
+        when(api.listRuns(anyLong(), isNull())).thenReturn(page("first", "run-1", "run-2"));
+        when(api.listRuns(anyLong(), eq("first"))).thenReturn(page("second"));
+        when(api.listRuns(anyLong(), eq("second"))).thenReturn(page("", "run-3"));
+
+        List<String> runIds = new ArrayList<>();
+        try (WesRunIterator runs = new WesRunIterator(api, 2, null)) {
+            runs.forEachRemaining(run -> runIds.add(run.getRunId()));
+        }
+        assertEquals(List.of("run-1", "run-2", "run-3"), runIds, "Empty pages should be skipped");
+    }
+
+    @Test
+    void testFailedPage() throws ApiException {
+        WorkflowExecutionServiceApi api = Mockito.mock(WorkflowExecutionServiceApi.class);
+        when(api.listRuns(anyLong(), isNull())).thenReturn(page("first", "run-1"));
+        when(api.listRuns(anyLong(), eq("first"))).thenThrow(new ApiException("unavailable"));
+
+        try (WesRunIterator runs = new WesRunIterator(api, 1, null)) {
+            assertEquals("run-1", runs.next().getRunId());
+            IllegalStateException exception = assertThrows(IllegalStateException.class, runs::hasNext);
+            assertEquals(ApiException.class, exception.getCause().getClass());
+            assertFalse(runs.hasNext(), "Nothing is listed after a failed page");
+        }
+    }
+
+    private static RunListResponse page(String nextPageToken, String... runIds) {
+        RunListResponse response = new RunListResponse().nextPageToken(nextPageToken);
+        response.setRuns(new ArrayList<>());
+        for (String runId : runIds) {
+            response.getRuns().add(new RunStatus().runId(runId));
+        }
+        return response;
+    }
+}
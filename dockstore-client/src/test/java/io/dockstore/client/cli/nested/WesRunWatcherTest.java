@@ -0,0 +1,91 @@
+package io.dockstore.client.cli.nested;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.openapi.wes.client.ApiException;
+import io.openapi.wes.client.api.WorkflowExecutionServiceApi;
+import io.openapi.wes.client.model.RunListResponse;
+import io.openapi.wes.client.model.RunStatus;
+import io.openapi.wes.client.model.State;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class WesRunWatcherTest {
+
+    @Test
+    void testNextInterval() {
+        assertEquals(40, WesRunWatcher.nextInterval(null, 0, false, 10));
+        assertEquals(40, WesRunWatcher.nextInterval(State.QUEUED, 0, true, 10));
+        assertEquals(10, WesRunWatcher.nextInterval(State.RUNNING, 40, true, 10));
+        assertEquals(15, WesRunWatcher.nextInterval(State.RUNNING, 10, false, 10));
+        assertEquals(80, WesRunWatcher.nextInterval(State.RUNNING, 80, false, 10), "Backing off stops at eight times the state's interval");
+        assertEquals(320, WesRunWatcher.nextInterval(State.QUEUED, 320, false, 10));
+    }
+
+    @Test
+    void testWatchIndividually() throws ApiException, InterruptedException {
+        WorkflowExecutionServiceApi api = Mockito.mock(WorkflowExecutionServiceApi.class);
+        when(api.getRunStatus("run-1")).thenReturn(status("run-1", State.QUEUED), status("run-1", State.RUNNING), status("run-1", State.COMPLETE));
+        when(api.getRunStatus("run-2")).thenThrow(new ApiException("unavailable")).thenReturn(status("run-2", State.EXECUTOR_ERROR));
+
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        Map<String, State> finished = new WesRunWatcher(api, 1, 2, events::add).watch(List.of("run-1", "run-2"));
+
+        assertEquals(Map.of("run-1", State.COMPLETE, "run-2", State.EXECUTOR_ERROR), finished);
+        assertEquals(4, events.size(), "Every state change should be printed once");
+        assertTrue(events.get(0).contains("\"runId\":\"run-1\",\"state\":\"QUEUED\""));
+        verify(api, never()).listRuns(anyLong(), any());
+    }
+
+    @Test
+    void testWatchStopsForLostRuns() throws ApiException, InterruptedException {
+        WorkflowExecutionServiceApi api = Mockito.mock(WorkflowExecutionServiceApi.class);
+        when(api.getRunStatus("run-1")).thenReturn(status("run-1", State.RUNNING), status("run-1", State.COMPLETE));
+        when(api.getRunStatus("missing")).thenThrow(new ApiException(404, "Not found"));
+        when(api.getRunStatus("flaky")).thenThrow(new ApiException("unavailable"));
+
+        List<String> events = Collections.synchronizedList(new ArrayList<>());
+        WesRunWatcher watcher = new WesRunWatcher(api, 1, 2, events::add);
+        Map<String, State> finished = watcher.watch(List.of("run-1", "missing", "flaky"));
+
+        assertEquals(Map.of("run-1", State.COMPLETE), finished);
+        assertEquals(List.of("missing", "flaky"), new ArrayList<>(watcher.getLostRuns().keySet()));
+        assertEquals("not found", watcher.getLostRuns().get("missing"));
+        assertTrue(events.stream().anyMatch(event -> event.contains("\"runId\":\"missing\"") && event.contains("\"error\":\"not found\"")),
+            "A run that cannot be found should be reported");
+        verify(api, times(1)).getRunStatus("missing");
+        verify(api, times(WesRunWatcher.MAX_FAILED_POLLS)).getRunStatus("flaky");
+    }
+
+    @Test
+    void testWatchByListing() throws ApiException, InterruptedException {
+        WorkflowExecutionServiceApi api = Mockito.mock(WorkflowExecutionServiceApi.class);
+        List<String> runIds = IntStream.range(0, 10).mapToObj(i -> "run-" + i).collect(Collectors.toList());
+        List<RunStatus> completed = runIds.stream().map(runId -> status(runId, State.COMPLETE)).collect(Collectors.toList());
+        when(api.listRuns(anyLong(), any())).thenReturn(new RunListResponse().runs(completed.subList(0, 5)).nextPageToken("next"));
+        when(api.listRuns(anyLong(), Mockito.eq("next"))).thenReturn(new RunListResponse().runs(completed.subList(5, 10)).nextPageToken(""));
+
+        Map<String, State> finished = new WesRunWatcher(api, 1, 2, event -> { }).watch(runIds);
+
+        assertEquals(10, finished.size());
+        assertTrue(finished.values().stream().allMatch(State.COMPLETE::equals));
+        verify(api, never()).getRunStatus(any());
+    }
+
+    private static RunStatus status(String runId, State state) {
+        return new RunStatus().runId(runId).state(state);
+    }
+}
@@ -0,0 +1,57 @@
+package io.dockstore.common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ExpectedChecksumTest {
+
+    private static final byte[] CONTENTS = "The quick brown fox jumps over the lazy dog".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testAlgorithms() throws IOException {
+        Path file = Files.write(tempDir.resolve("fox.txt"), CONTENTS);
+        ExpectedChecksum.parse("md5$9e107d9d372bb6826bd81d3542a419d6").get().verify(file);
+        ExpectedChecksum.parse("sha1$2fd4e1c67a2d28fced849ee1bb76e7391b93eb12").get().verify(file);
+        ExpectedChecksum.parse("SHA-256$D7A8FBB307D7809469CA9ABCB0082E4F8D5651E46D3CDB762D02D0BF37C9E592").get().verify(file);
+        ExpectedChecksum.parse("crc32c$22620404").get().verify(file);
+    }
+
+    @Test
+    void testVerifyingStream() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ExpectedChecksum.VerifyingOutputStream verifying = ExpectedChecksum.parse("md5$9e107d9d372bb6826bd81d3542a419d6").get().verifying(out);
+        verifying.write(CONTENTS, 0, 10);
+        verifying.write(CONTENTS[10]);
+        verifying.write(CONTENTS, 11, CONTENTS.length - 11);
+        verifying.check("fox");
+        assertArrayEquals(CONTENTS, out.toByteArray());
+    }
+
+    @Test
+    void testMismatch() throws IOException {
+        Path file = Files.write(tempDir.resolve("fox.txt"), CONTENTS);
+        assertThrows(ExpectedChecksum.MismatchException.class,
+            () -> ExpectedChecksum.parse("sha1$0000000000000000000000000000000000000000").get().verify(file));
+    }
+
+    @Test
+    void testUnsupportedChecksums() {
+        assertFalse(ExpectedChecksum.parse(null).isPresent());
+        assertFalse(ExpectedChecksum.parse("47a013e660d408619d894b20806b1d5086aab03b").isPresent());
+        assertFalse(ExpectedChecksum.parse("whirlpool$abcd").isPresent());
+        assertTrue(ExpectedChecksum.parse("sha512$abcd").isPresent());
+    }
+}
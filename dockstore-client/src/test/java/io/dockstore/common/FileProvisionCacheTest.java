@@ -0,0 +1,253 @@
+package io.dockstore.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileProvisionCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testConcurrentRequestsCoalesce() throws Exception {
+        FileProvisionCache cache = new FileProvisionCache(tempDir.resolve("cache").toString());
+        AtomicInteger downloads = new AtomicInteger();
+        final int requests = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(requests);
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            Path localPath = tempDir.resolve("inputs" + i).resolve("input.txt");
+            futures.add(executorService.submit(() -> cache.provision("s3://bucket/input.txt", localPath, () -> {
+                downloads.incrementAndGet();
+                write(localPath, "contents");
+            })));
+        }
+        int hits = 0;
+        for (Future<Boolean> future : futures) {
+            hits += future.get() ? 1 : 0;
+        }
+        executorService.shutdownNow();
+        assertEquals(1, downloads.get());
+        assertEquals(requests - 1, hits);
+        for (int i = 0; i < requests; i++) {
+            assertEquals("contents", Files.readString(tempDir.resolve("inputs" + i).resolve("input.txt")));
+        }
+    }
+
+    @Test
+    void testIdenticalContentsShareABlob() throws IOException {
+        FileProvisionCache cache = new FileProvisionCache(tempDir.resolve("cache").toString());
+        Path first = tempDir.resolve("first").resolve("a.txt");
+        Path second = tempDir.resolve("second").resolve("b.txt");
+        assertFalse(cache.provision("s3://bucket/a.txt", first, () -> write(first, "same")));
+        assertFalse(cache.provision("s3://mirror/b.txt", second, () -> write(second, "same")));
+
+        Path firstKey = FileProvisionCache.getShardedPath(cache.getCacheDirectory(), FileProvisionCache.createKey("s3://bucket/a.txt", ""));
+        Path secondKey = FileProvisionCache.getShardedPath(cache.getCacheDirectory(), FileProvisionCache.createKey("s3://mirror/b.txt", ""));
+        assertTrue(Files.isSameFile(firstKey, secondKey));
+    }
+
+    @Test
+    void testDownloadSetsUseTheCache() throws IOException {
+        FileProvisionCache cache = new FileProvisionCache(tempDir.resolve("cache").toString());
+        Path first = tempDir.resolve("first").resolve("a.txt");
+        Path second = tempDir.resolve("second").resolve("a.txt");
+        assertFalse(cache.provisionIfCached("s3://bucket/a.txt", first));
+        write(first, "batched");
+        cache.add("s3://bucket/a.txt", first);
+        // adding a file that is already cached is not another miss
+        cache.add("s3://bucket/a.txt", first);
+        assertTrue(cache.provisionIfCached("s3://bucket/a.txt", second));
+        assertEquals("batched", Files.readString(second));
+        assertEquals(1, cache.getStatistics().getHits());
+        assertEquals(1, cache.getStatistics().getMisses());
+
+        // a duplicate input in the same set is provisioned from the first download through the coalescing path
+        Path third = tempDir.resolve("third").resolve("a.txt");
+        assertTrue(cache.provision("s3://bucket/a.txt", third, () -> write(third, "downloaded again")));
+        assertEquals("batched", Files.readString(third));
+        assertEquals(1, cache.getStatistics().getMisses());
+    }
+
+    @Test
+    void testLocalValidatorChangesWithContents() throws IOException {
+        Path input = tempDir.resolve("local.txt");
+        write(input, "one");
+        String before = FileProvisionCache.findValidator(input.toString()).orElseThrow();
+        write(input, "three");
+        String after = FileProvisionCache.findValidator(input.toString()).orElseThrow();
+        assertNotEquals(before, after);
+        assertNotEquals(FileProvisionCache.createKey(input.toString(), before), FileProvisionCache.createKey(input.toString(), after));
+    }
+
+    @Test
+    void testRelativeValidatorUsesBaseDirectory() throws IOException {
+        Path first = tempDir.resolve("first");
+        Path second = tempDir.resolve("second");
+        write(first.resolve("input.txt"), "one");
+        write(second.resolve("input.txt"), "three");
+        String firstValidator = FileProvisionCache.findValidator("input.txt", first).orElseThrow();
+        assertNotEquals(firstValidator, FileProvisionCache.findValidator("input.txt", second).orElseThrow());
+        assertEquals(FileProvisionCache.findValidator(first.resolve("input.txt").toString()), Optional.of(firstValidator));
+
+        FileProvisionCache cache = new FileProvisionCache(tempDir.resolve("cache").toString());
+        Path local = tempDir.resolve("local1.txt");
+        Path other = tempDir.resolve("local2.txt");
+        assertFalse(cache.provision("input.txt", first, local, () -> write(local, "one")));
+        assertFalse(cache.provision("input.txt", second, other, () -> write(other, "three")),
+            "The same relative path in another directory is a different file");
+        assertEquals("three", Files.readString(other));
+    }
+
+    @Test
+    void testPruneEvictsLeastRecentlyUsed() throws IOException {
+        FileProvisionCache cache = new FileProvisionCache(tempDir.resolve("cache").toString(), 0, FileProvisionCache.EvictionPolicy.LRU);
+        Path old = tempDir.resolve("old.txt");
+        Path recent = tempDir.resolve("recent.txt");
+        cache.provision("s3://bucket/old.txt", old, () -> write(old, "0123456789"));
+        cache.provision("s3://bucket/recent.txt", recent, () -> write(recent, "9876543210"));
+        Path again = tempDir.resolve("again").resolve("recent.txt");
+        assertTrue(cache.provision("s3://bucket/recent.txt", again, () -> write(again, "9876543210")));
+
+        assertEquals(20, cache.getSize());
+        assertEquals(1, cache.prune(15));
+        assertEquals(10, cache.getSize());
+        assertFalse(Files.exists(FileProvisionCache.getShardedPath(cache.getCacheDirectory(), FileProvisionCache.createKey("s3://bucket/old.txt", ""))));
+        assertTrue(Files.exists(FileProvisionCache.getShardedPath(cache.getCacheDirectory(), FileProvisionCache.createKey("s3://bucket/recent.txt", ""))));
+        // files already provisioned out of the cache survive eviction
+        assertEquals("0123456789", Files.readString(old));
+
+        FileProvisionCache.Statistics statistics = new FileProvisionCache(cache.getCacheDirectory().toString()).getStatistics();
+        assertEquals(1, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(10, statistics.getBytesSaved());
+        assertEquals(1, statistics.getEvictions());
+    }
+
+    @Test
+    void testPinsAreCounted() {
+        FileProvisionCache cache = new FileProvisionCache(tempDir.resolve("cache").toString());
+        Path localPath = tempDir.resolve("input.txt");
+        cache.provision("s3://bucket/input.txt", localPath, () -> write(localPath, "0123456789"));
+        final String key = FileProvisionCache.createKey("s3://bucket/input.txt", "");
+
+        // two threads provisioning the same key, the first one finishes while the second still needs the entry
+        cache.pin(key);
+        cache.pin(key);
+        cache.unpin(key);
+        assertEquals(0, cache.prune(0), "A key should stay pinned until every thread provisioning it is done");
+        cache.unpin(key);
+        assertEquals(1, cache.prune(0));
+    }
+
+    @Test
+    void testBudgetIsEnforcedWhenProvisioning() {
+        FileProvisionCache cache = new FileProvisionCache(tempDir.resolve("cache").toString(), 15, FileProvisionCache.EvictionPolicy.LFU);
+        for (int i = 0; i < 3; i++) {
+            Path localPath = tempDir.resolve("input" + i);
+            cache.provision("s3://bucket/input" + i, localPath, () -> write(localPath, "0123456789"));
+            // identical contents are only counted once
+            assertEquals(10, cache.getSize());
+        }
+        for (int i = 3; i < 6; i++) {
+            Path localPath = tempDir.resolve("input" + i);
+            final String contents = "different" + i;
+            cache.provision("s3://bucket/input" + i, localPath, () -> write(localPath, contents));
+            assertTrue(cache.getSize() <= 15);
+        }
+    }
+
+    @Test
+    void testIndexIsWrittenOnFlush() {
+        FileProvisionCache cache = new FileProvisionCache(tempDir.resolve("cache").toString());
+        for (int i = 0; i < 3; i++) {
+            Path localPath = tempDir.resolve("input" + i);
+            cache.provision("s3://bucket/input" + i, localPath, () -> write(localPath, "0123456789"));
+        }
+        final Path indexPath = cache.getCacheDirectory().resolve(FileProvisionCacheIndex.INDEX_FILENAME);
+        assertFalse(Files.exists(indexPath), "Accesses should not rewrite the index each time");
+
+        cache.flush();
+        FileProvisionCache reopened = new FileProvisionCache(cache.getCacheDirectory().toString());
+        assertEquals(3, reopened.getEntryCount());
+        assertEquals(10, reopened.getSize());
+        assertEquals(3, reopened.getStatistics().getMisses());
+    }
+
+    @Test
+    void testFlushMergesOtherProcesses() {
+        // two launches sharing a cache directory, each only knows what it provisioned itself
+        final String cacheDirectory = tempDir.resolve("cache").toString();
+        FileProvisionCache first = new FileProvisionCache(cacheDirectory);
+        FileProvisionCache second = new FileProvisionCache(cacheDirectory);
+        Path a = tempDir.resolve("a.txt");
+        Path b = tempDir.resolve("b.txt");
+        first.provision("s3://bucket/a.txt", a, () -> write(a, "0123456789"));
+        second.provision("s3://bucket/b.txt", b, () -> write(b, "abcdefghij"));
+        first.flush();
+        second.flush();
+        assertEquals(2, second.getEntryCount(), "A flush should pick up what other processes wrote");
+
+        Path again = tempDir.resolve("again.txt");
+        assertTrue(first.provision("s3://bucket/b.txt", again, () -> write(again, "abcdefghij")));
+        first.flush();
+
+        FileProvisionCache reopened = new FileProvisionCache(cacheDirectory);
+        assertEquals(2, reopened.getEntryCount());
+        assertEquals(20, reopened.getSize(), "Every entry should count towards the budget");
+        assertEquals(1, reopened.getStatistics().getHits());
+        assertEquals(2, reopened.getStatistics().getMisses());
+        assertEquals(1, reopened.prune(10));
+        assertEquals(10, new FileProvisionCache(cacheDirectory).getSize());
+    }
+
+    @Test
+    void testVerifyRemovesCorruptFiles() throws IOException {
+        FileProvisionCache cache = new FileProvisionCache(tempDir.resolve("cache").toString());
+        Path localPath = tempDir.resolve("input.txt");
+        cache.provision("s3://bucket/input.txt", localPath, () -> write(localPath, "contents"));
+        Path keyPath = FileProvisionCache.getShardedPath(cache.getCacheDirectory(), FileProvisionCache.createKey("s3://bucket/input.txt", ""));
+        Files.delete(localPath);
+        write(keyPath, "tampered");
+
+        FileProvisionCache.VerifyResult result = cache.verify();
+        assertEquals(1, result.getChecked());
+        assertEquals(1, result.getCorrupt());
+        assertFalse(Files.exists(keyPath));
+        assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    void testParseSize() {
+        assertEquals(0, FileProvisionCache.parseSize("0"));
+        assertEquals(1536, FileProvisionCache.parseSize("1536"));
+        assertEquals(2048, FileProvisionCache.parseSize("2K"));
+        assertEquals(200L * 1024 * 1024 * 1024, FileProvisionCache.parseSize("200GB"));
+    }
+
+    private static void write(Path path, String contents) {
+        try {
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, contents, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
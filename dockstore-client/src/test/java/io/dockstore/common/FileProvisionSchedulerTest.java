@@ -0,0 +1,82 @@
+package io.dockstore.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class FileProvisionSchedulerTest {
+
+    @Test
+    void testSchemeLimit() throws Exception {
+        FileProvisionScheduler scheduler = new FileProvisionScheduler(4, Map.of("s3", 1));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(scheduler.submitTransfer("S3", () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return true;
+            }));
+        }
+        for (Future<Boolean> future : futures) {
+            assertTrue(future.get());
+        }
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void testQueuedSchemeDoesNotBlockOtherSchemes() throws Exception {
+        FileProvisionScheduler scheduler = new FileProvisionScheduler(2, Map.of("s3", 1));
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < 3; i++) {
+            scheduler.submitTransfer("s3", () -> release.await(5, TimeUnit.SECONDS));
+        }
+        // one pool thread is busy with s3 and the other s3 transfers are queued, so https still gets a thread
+        Future<String> other = scheduler.submitTransfer("https", () -> "done");
+        assertEquals("done", other.get(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void testCoordinatorsOverlap() throws Exception {
+        FileProvisionScheduler scheduler = new FileProvisionScheduler(1, Map.of());
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        List<Future<Boolean>> groups = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            groups.add(scheduler.submitCoordinator(() -> {
+                bothStarted.countDown();
+                // waiting on a transfer from a coordinator must not starve the single transfer thread
+                return bothStarted.await(5, TimeUnit.SECONDS) && scheduler.submitTransfer(null, () -> true).get();
+            }));
+        }
+        for (Future<Boolean> group : groups) {
+            assertTrue(group.get(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void testConcurrency() {
+        FileProvisionScheduler scheduler = new FileProvisionScheduler(4, Map.of("s3", 2, "gs", 8));
+        assertEquals(2, scheduler.getConcurrency("S3"));
+        assertEquals(4, scheduler.getConcurrency("gs"));
+        assertEquals(4, scheduler.getConcurrency(null));
+    }
+
+    @Test
+    void testParseSchemeLimits() {
+        assertEquals(Map.of("s3", 4, "gs", 2), FileProvisionScheduler.parseSchemeLimits("s3:4, gs:2"));
+        assertEquals(Map.of(), FileProvisionScheduler.parseSchemeLimits(""));
+        assertThrows(IllegalArgumentException.class, () -> FileProvisionScheduler.parseSchemeLimits("s3"));
+    }
+}
@@ -1,11 +1,22 @@
 package io.dockstore.common;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import io.dockstore.provision.ProvisionInterface;
 import java.io.File;
 import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
@@ -13,10 +24,14 @@ import java.util.Optional;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mockito;
 
 class FileProvisionTest {
 
+    @TempDir
+    Path tempDir;
+
     @Test
     void testFindSupportedTargetPath() {
         ProvisionInterface s3Mock = Mockito.mock(ProvisionInterface.class);
@@ -52,4 +67,43 @@ class FileProvisionTest {
         File inputFile = FileUtils.getFile("src", "test", "resources", "testDirectory With Spaces", "hello.txt");
         assertEquals(URI.create(encodedPath), FileProvisioning.createURIFromUnencodedPath(inputFile.getPath()));
     }
+
+    @Test
+    void testRetryResumesPartialDownload() throws Exception {
+        ProvisionInterface plugin = Mockito.mock(ProvisionInterface.class);
+        when(plugin.supportsResume(anyString())).thenReturn(true);
+        // the first attempt dies after the first half of the file
+        when(plugin.downloadFrom(eq("s3://bucket/input.txt"), any())).thenAnswer(invocation -> {
+            Files.writeString(invocation.getArgument(1), "hello ", StandardCharsets.UTF_8);
+            return false;
+        });
+        when(plugin.resumeDownloadFrom(eq("s3://bucket/input.txt"), any(), eq(6L))).thenAnswer(invocation -> {
+            Files.writeString(invocation.getArgument(1), "world", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+            return true;
+        });
+
+        Path destination = tempDir.resolve("input.txt");
+        FileProvisioning.retryWrapper(plugin, "s3://bucket/input.txt", destination, 1, true, 1);
+        assertEquals("hello world", Files.readString(destination));
+        verify(plugin).resumeDownloadFrom("s3://bucket/input.txt", DownloadJournal.getPartPath(destination), 6L);
+        assertFalse(Files.exists(DownloadJournal.getPartPath(destination)));
+        assertFalse(Files.exists(DownloadJournal.getJournalPath(DownloadJournal.getPartPath(destination))));
+    }
+
+    @Test
+    void testFirstDownloadWithoutPartialFile() throws Exception {
+        ProvisionInterface plugin = Mockito.mock(ProvisionInterface.class);
+        when(plugin.supportsResume(anyString())).thenReturn(true);
+        when(plugin.downloadFrom(eq("s3://bucket/input.txt"), any())).thenAnswer(invocation -> {
+            Files.writeString(invocation.getArgument(1), "hello world", StandardCharsets.UTF_8);
+            return true;
+        });
+
+        Path destination = tempDir.resolve("nested").resolve("input.txt");
+        FileProvisioning.retryWrapper(plugin, "s3://bucket/input.txt", destination, 1, true, 1);
+        assertEquals("hello world", Files.readString(destination));
+        verify(plugin).downloadFrom("s3://bucket/input.txt", DownloadJournal.getPartPath(destination));
+        verify(plugin, never()).resumeDownloadFrom(anyString(), any(), anyLong());
+        assertFalse(Files.exists(DownloadJournal.getPartPath(destination)));
+    }
 }
@@ -0,0 +1,88 @@
+package io.dockstore.common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Instant;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class LocalFileCopierTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCopyFile() throws IOException {
+        byte[] contents = new byte[3 * 1024 * 1024 + 7];
+        new Random(0).nextBytes(contents);
+        Path source = Files.write(tempDir.resolve("genome.fa"), contents);
+        Path target = tempDir.resolve("work").resolve("genome.fa");
+        new LocalFileCopier(false, 1).copy(source, target, name -> true);
+        assertArrayEquals(contents, Files.readAllBytes(target));
+    }
+
+    @Test
+    void testCloneFallsBackToCopy() throws IOException {
+        byte[] contents = new byte[(int)LocalFileCopier.MIN_CLONE_SIZE];
+        new Random(0).nextBytes(contents);
+        Path source = Files.write(tempDir.resolve("reads.fq"), contents);
+        LocalFileCopier copier = new LocalFileCopier(true, 1);
+        // whether or not the filesystem can clone, the result must be the same
+        for (int i = 0; i < 2; i++) {
+            Path target = tempDir.resolve("copy" + i);
+            copier.copy(source, target, name -> true);
+            assertArrayEquals(contents, Files.readAllBytes(target));
+        }
+    }
+
+    @Test
+    void testKeepsPermissionsAndModificationTime() throws IOException {
+        final FileTime modified = FileTime.from(Instant.parse("2020-01-01T00:00:00Z"));
+        Path source = Files.createDirectories(tempDir.resolve("scripts"));
+        Path script = Files.writeString(source.resolve("run.sh"), "#!/bin/sh\necho hello\n");
+        Files.setPosixFilePermissions(script, PosixFilePermissions.fromString("rwxr-x---"));
+        Files.setLastModifiedTime(script, modified);
+        Files.setLastModifiedTime(source, modified);
+
+        Path target = tempDir.resolve("work").resolve("scripts");
+        new LocalFileCopier(true, 2).copy(source, target, name -> true);
+        assertEquals("rwxr-x---", PosixFilePermissions.toString(Files.getPosixFilePermissions(target.resolve("run.sh"))));
+        assertEquals(modified, Files.getLastModifiedTime(target.resolve("run.sh")));
+        assertEquals(modified, Files.getLastModifiedTime(target), "Directories should keep their modification time too");
+    }
+
+    @Test
+    void testCopyDirectorySkipsFilteredNames() throws IOException {
+        Path source = Files.createDirectories(tempDir.resolve("inputs"));
+        Files.writeString(Files.createDirectories(source.resolve("a/b")).resolve("one.txt"), "one");
+        Files.writeString(source.resolve("two.txt"), "two");
+        Files.writeString(Files.createDirectories(source.resolve("datastore/x")).resolve("three.txt"), "three");
+        Files.createDirectories(source.resolve("empty"));
+
+        Path target = tempDir.resolve("work").resolve("inputs");
+        new LocalFileCopier(true, 4).copy(source, target, name -> !"datastore".equals(name));
+        assertEquals("one", Files.readString(target.resolve("a/b/one.txt")));
+        assertEquals("two", Files.readString(target.resolve("two.txt")));
+        assertFalse(Files.exists(target.resolve("datastore")));
+        assertTrue(Files.isDirectory(target.resolve("empty")));
+    }
+
+    @Test
+    void testDoesNotOverwrite() throws IOException {
+        Path source = Files.writeString(tempDir.resolve("source.txt"), "new");
+        Path target = Files.writeString(tempDir.resolve("target.txt"), "old");
+        assertThrows(FileAlreadyExistsException.class, () -> new LocalFileCopier(false, 1).copyFile(source, target));
+        assertEquals("old", Files.readString(target));
+    }
+}
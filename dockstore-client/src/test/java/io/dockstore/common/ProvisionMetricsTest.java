@@ -0,0 +1,91 @@
+package io.dockstore.common;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProvisionMetricsTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testHistogramPercentiles() {
+        ProvisionMetrics.Histogram histogram = new ProvisionMetrics.Histogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        assertWithin(500_000, histogram.getPercentile(50));
+        assertWithin(900_000, histogram.getPercentile(90));
+        assertWithin(990_000, histogram.getPercentile(99));
+        assertEquals(1_000_000, histogram.getPercentile(100));
+        assertEquals(0, new ProvisionMetrics.Histogram().getPercentile(50));
+    }
+
+    @Test
+    void testBucketsCoverEveryValue() {
+        for (long value : new long[] {0, 1, 15, 16, 17, 31, 32, 1000, 123_456_789, Long.MAX_VALUE}) {
+            final long highest = ProvisionMetrics.Histogram.highestValueIn(ProvisionMetrics.Histogram.indexOf(value));
+            assertTrue(highest >= value && (highest - value) <= value / 16, value + " is in a bucket up to " + highest);
+        }
+    }
+
+    @Test
+    void testJson() throws IOException {
+        ProvisionMetrics metrics = createMetrics();
+        Path path = tempDir.resolve("metrics.json");
+        metrics.write(path);
+        JsonObject root = JsonParser.parseString(Files.readString(path, StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals(4, root.get("threads").getAsInt());
+        assertEquals(1, root.getAsJsonObject("cache").get("hits").getAsInt());
+        assertEquals(2, root.getAsJsonObject("cache").get("misses").getAsInt());
+        JsonObject s3 = root.getAsJsonArray("operations").get(0).getAsJsonObject();
+        assertEquals("s3", s3.get("scheme").getAsString());
+        assertEquals(2, s3.get("count").getAsInt());
+        assertEquals(1, s3.get("failures").getAsInt());
+        assertEquals(3, s3.get("retries").getAsInt());
+        assertEquals(1000, s3.get("bytes").getAsLong());
+    }
+
+    @Test
+    void testPrometheus() throws IOException {
+        ProvisionMetrics metrics = createMetrics();
+        Path path = tempDir.resolve("metrics.prom");
+        metrics.write(path);
+        String contents = Files.readString(path, StandardCharsets.UTF_8);
+        assertTrue(contents.contains("# TYPE dockstore_provision_operations_total counter\n"));
+        assertTrue(contents.contains("dockstore_provision_operations_total{operation=\"download\",plugin=\"io.dockstore.S3Plugin\",scheme=\"s3\"} 2\n"));
+        assertTrue(contents.contains("dockstore_provision_bytes_total{operation=\"upload\",plugin=\"vfs2\",scheme=\"file\"} 2048\n"));
+        assertTrue(contents.contains("dockstore_provision_latency_seconds_count{operation=\"download\",plugin=\"io.dockstore.S3Plugin\",scheme=\"s3\"} 2\n"));
+        assertTrue(contents.contains("quantile=\"0.99\""));
+        assertTrue(contents.contains("dockstore_provision_cache_hits_total 1\n"));
+        assertTrue(contents.contains("dockstore_provision_threads 4\n"));
+    }
+
+    private static ProvisionMetrics createMetrics() {
+        ProvisionMetrics metrics = new ProvisionMetrics();
+        metrics.exportOnExit("", 4);
+        metrics.record(ProvisionMetrics.DOWNLOAD, "io.dockstore.S3Plugin", "S3", 1000, TimeUnit.MILLISECONDS.toNanos(100), 1, true);
+        metrics.record(ProvisionMetrics.DOWNLOAD, "io.dockstore.S3Plugin", "s3", 0, TimeUnit.SECONDS.toNanos(2), 2, false);
+        metrics.record(ProvisionMetrics.UPLOAD, "vfs2", null, 2048, TimeUnit.MILLISECONDS.toNanos(1), 0, true);
+        metrics.recordCache(true);
+        metrics.recordCache(false);
+        metrics.recordCache(false);
+        return metrics;
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(expected - actual) <= expected / 16, "expected about " + expected + " but was " + actual);
+    }
+}
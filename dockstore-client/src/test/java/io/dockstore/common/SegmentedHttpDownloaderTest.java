@@ -0,0 +1,187 @@
+package io.dockstore.common;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentedHttpDownloaderTest {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+    private static final byte[] CONTENTS = new byte[(int)(SegmentedHttpDownloader.MIN_SEGMENT_SIZE * 3 + 12345)];
+
+    @TempDir
+    Path tempDir;
+
+    private HttpServer server;
+    private final AtomicInteger rangeRequests = new AtomicInteger();
+    private final AtomicLong servedBytes = new AtomicLong();
+    private final AtomicBoolean failOnce = new AtomicBoolean();
+    private volatile String lastRange;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        new Random(0).nextBytes(CONTENTS);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/ranged", this::serveRange);
+        server.createContext("/plain", exchange -> {
+            exchange.sendResponseHeaders(200, CONTENTS.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(CONTENTS);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    void testSegmentedDownload() throws IOException {
+        SegmentedHttpDownloader downloader = new SegmentedHttpDownloader(Set.of("http"), 4, 2);
+        Path target = tempDir.resolve("nested").resolve("genome.fa");
+        assertTrue(downloader.handles(url("/ranged")));
+        assertTrue(downloader.download(url("/ranged"), target));
+        assertArrayEquals(CONTENTS, Files.readAllBytes(target));
+        // one probe plus four segments
+        assertEquals(5, rangeRequests.get());
+    }
+
+    @Test
+    void testOnlyFailedSegmentIsRetried() throws IOException {
+        failOnce.set(true);
+        SegmentedHttpDownloader downloader = new SegmentedHttpDownloader(Set.of("http"), 4, 2);
+        Path target = tempDir.resolve("genome.fa");
+        assertTrue(downloader.download(url("/ranged"), target));
+        assertArrayEquals(CONTENTS, Files.readAllBytes(target));
+        assertEquals(6, rangeRequests.get());
+    }
+
+    @Test
+    void testResumesJournaledSegments() throws IOException {
+        failOnce.set(true);
+        Path target = tempDir.resolve("genome.fa.part");
+        assertThrows(IOException.class, () -> new SegmentedHttpDownloader(Set.of("http"), 4, 0).download(url("/ranged"), target));
+        assertTrue(Files.exists(target));
+        assertTrue(Files.exists(DownloadJournal.getJournalPath(target)));
+
+        rangeRequests.set(0);
+        servedBytes.set(0);
+        assertTrue(new SegmentedHttpDownloader(Set.of("http"), 4, 0).download(url("/ranged"), target));
+        assertArrayEquals(CONTENTS, Files.readAllBytes(target));
+        // one probe plus the rest of the failed segment
+        assertEquals(2, rangeRequests.get());
+        assertTrue(servedBytes.get() <= CONTENTS.length - SegmentedHttpDownloader.MIN_SEGMENT_SIZE / 2);
+        assertFalse(Files.exists(DownloadJournal.getJournalPath(target)));
+    }
+
+    @Test
+    void testResumeAppendsFromOffset() throws IOException {
+        Path target = tempDir.resolve("genome.fa.part");
+        final int offset = 1000;
+        Files.write(target, Arrays.copyOf(CONTENTS, offset));
+        assertTrue(SegmentedHttpDownloader.resume(url("/ranged"), target, offset));
+        assertArrayEquals(CONTENTS, Files.readAllBytes(target));
+        assertEquals("bytes=" + offset + "-", lastRange);
+    }
+
+    @Test
+    void testResumeStartsOverWithoutRangeSupport() throws IOException {
+        Path target = tempDir.resolve("genome.fa.part");
+        Files.write(target, new byte[]{1, 2, 3});
+        assertTrue(SegmentedHttpDownloader.resume(url("/plain"), target, 3));
+        assertArrayEquals(CONTENTS, Files.readAllBytes(target));
+    }
+
+    @Test
+    void testFallsBackWithoutRangeSupport() throws IOException {
+        SegmentedHttpDownloader downloader = new SegmentedHttpDownloader(Set.of("http"), 4, 2);
+        Path target = tempDir.resolve("genome.fa");
+        assertFalse(downloader.download(url("/plain"), target));
+        assertFalse(Files.exists(target));
+        assertFalse(downloader.handles("s3://bucket/genome.fa"));
+    }
+
+    @Test
+    void testWrapperKeepsSegmentsForTheRetry() throws IOException {
+        failOnce.set(true);
+        Path target = tempDir.resolve("genome.fa.part");
+        FileProvisioning.FileProvisionUtilPluginWrapper wrapper = new FileProvisioning.FileProvisionUtilPluginWrapper(1,
+            new SegmentedHttpDownloader(Set.of("http"), 4, 0), null);
+        assertFalse(wrapper.downloadFrom(url("/ranged"), target), "A failed segment should fail the attempt");
+        assertTrue(Files.exists(DownloadJournal.getJournalPath(target)), "The finished segments should be kept for the next attempt");
+
+        rangeRequests.set(0);
+        assertTrue(wrapper.downloadFrom(url("/ranged"), target));
+        assertArrayEquals(CONTENTS, Files.readAllBytes(target));
+        // one probe plus the rest of the failed segment, rather than the whole file again
+        assertEquals(2, rangeRequests.get());
+        assertFalse(Files.exists(DownloadJournal.getJournalPath(target)));
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private void serveRange(HttpExchange exchange) throws IOException {
+        lastRange = exchange.getRequestHeaders().getFirst("Range");
+        if (lastRange == null) {
+            // a single stream, as downloaded by vfs2
+            exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().add("Content-Length", String.valueOf(CONTENTS.length));
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, CONTENTS.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(CONTENTS);
+            }
+            return;
+        }
+        Matcher matcher = RANGE.matcher(lastRange);
+        assertTrue(matcher.matches());
+        rangeRequests.incrementAndGet();
+        int first = Integer.parseInt(matcher.group(1));
+        int last = matcher.group(2).isEmpty() ? CONTENTS.length - 1 : Integer.parseInt(matcher.group(2));
+        exchange.getResponseHeaders().add("Content-Range", "bytes " + first + "-" + last + "/" + CONTENTS.length);
+        exchange.getResponseHeaders().add("ETag", "\"v1\"");
+        exchange.sendResponseHeaders(206, last - first + 1);
+        try (OutputStream body = exchange.getResponseBody()) {
+            if (first > 0 && failOnce.compareAndSet(true, false)) {
+                // drop the connection halfway through one segment
+                body.write(CONTENTS, first, (last - first + 1) / 2);
+                servedBytes.addAndGet((last - first + 1) / 2);
+                body.flush();
+                exchange.close();
+                return;
+            }
+            body.write(CONTENTS, first, last - first + 1);
+            servedBytes.addAndGet(last - first + 1);
+        }
+    }
+}
@@ -15,138 +15,73 @@
  */
 package io.dockstore.provision;
 
-import java.io.Console;
-import java.math.BigDecimal;
-import java.math.MathContext;
-import java.math.RoundingMode;
-import org.apache.commons.lang3.StringUtils;
-
 /**
  * A printer of the progress for file provisioning plugins.
  *
+ * <p>
+ * Progress is published to the {@link TransferEventBus}, which renders all transfers in the process together, so calling
+ * {@link #handleProgress(long, long)} is cheap and does not need to be synchronized on <code>System.out</code>.
+ * Plugins that can count bytes as they go may also use {@link TransferEventBus#start(String, long)} directly.
+ * </p>
+ *
+ * <p>
+ * The transfer belongs to the {@link TransferEventBus.Scope} that was open when the printer was created, so it is ended when
+ * Dockstore's call into the plugin returns even if {@link #finish(boolean)} is never called, and even if progress is reported
+ * from another thread.
+ * </p>
+ *
  * @author dyuen
  */
 public class ProgressPrinter {
-    private static final int SIZE_OF_PROGRESS_BAR = 50;
-    private static final int MAX_HEADER_LENGTH = 30;
-    private static final int PROGRESS_INCREMENT = 1;
-    private static final String INDETERMINATE_INDICATOR = "##########";
-    private final int threads;
     private final String header;
-    private boolean printedBefore = false;
-    private int progress = 0;
-    private int spinnerIndex = 0;
-    private boolean spinnerAscending = true;
+    private final TransferEventBus.Scope scope = TransferEventBus.currentScope();
+    private TransferEventBus.Transfer transfer;
+    private long reported = 0;
 
     public ProgressPrinter() {
-        this.threads = 1;
-        this.header = "";
+        this(1, "");
     }
 
+    /**
+     * @param threads unused, all transfers are rendered together regardless of how many run at once
+     * @param header  what is being transferred
+     */
     public ProgressPrinter(int threads, String header) {
-        this.threads = threads;
-        if (header.length() > MAX_HEADER_LENGTH * 2) {
-            this.header = StringUtils.truncate(header, MAX_HEADER_LENGTH) + "..." + StringUtils.truncate(header, header.length() - MAX_HEADER_LENGTH, Integer.MAX_VALUE) + " ";
-        } else {
-            this.header = header;
-        }
+        this.header = header;
     }
 
     /**
-     * Call to report on progress
+     * Call to report on progress, from one thread at a time
      *
      * @param totalBytesTransferred bytes transferred so far
      * @param streamSize            total bytes to be transferred
      */
     public void handleProgress(long totalBytesTransferred, long streamSize) {
-
-        if (streamSize <= 0) { // Unknown size
-            if (System.console() != null) {
-                System.out.print(generateIndeterminateBar());
-
-                if (spinnerAscending) {
-                    spinnerIndex++;
-                    if (spinnerIndex == SIZE_OF_PROGRESS_BAR) {
-                        spinnerIndex = SIZE_OF_PROGRESS_BAR - 1;
-                        spinnerAscending = false;
-                    }
-                } else {
-                    spinnerIndex--;
-                    if (spinnerIndex < 0) {
-                        spinnerIndex = 0;
-                        spinnerAscending = true;
-                    }
-                }
-            }
-        } else {
-            BigDecimal numerator = BigDecimal.valueOf(totalBytesTransferred);
-            BigDecimal denominator = BigDecimal.valueOf(streamSize);
-            BigDecimal fraction = numerator.divide(denominator, new MathContext(2, RoundingMode.HALF_EVEN));
-            BigDecimal percentage = fraction.movePointRight(2);
-
-            if (percentage.intValue() == progress) {
-                /* don't bother refreshing if no progress made */
-                return;
-            }
-
-            BigDecimal outOfTwenty = fraction.multiply(new BigDecimal(SIZE_OF_PROGRESS_BAR));
-            StringBuilder builder = new StringBuilder(header);
-            if (threads == 1) {
-                if (printedBefore) {
-                    builder.append('\r');
-                }
-            }
-
-            builder.append("[");
-            for (int i = 0; i < SIZE_OF_PROGRESS_BAR; i++) {
-                if (i < outOfTwenty.intValue()) {
-                    builder.append("#");
-                } else {
-                    builder.append(" ");
-                }
-            }
-
-            builder.append("] ");
-            builder.append(percentage.setScale(0, BigDecimal.ROUND_HALF_EVEN).toPlainString()).append("%");
-
-            Console console = System.console();
-
-            if (console != null || numerator.equals(denominator)) {
-                if (threads == 1) {
-                    System.out.print(builder);
-                } else {
-                    // do not refresh too often with multithreading
-                    if (percentage.intValue() < progress + PROGRESS_INCREMENT) {
-                        return;
-                    }
-
-                    System.out.println(builder);
-                }
-            }
-            // track progress
-            printedBefore = true;
-            progress = percentage.intValue();
+        if (transfer == null) {
+            transfer = TransferEventBus.getInstance().start(header, streamSize, scope);
+        } else if (streamSize != transfer.getSize()) {
+            transfer.setSize(streamSize);
+        }
+        transfer.add(totalBytesTransferred - reported);
+        reported = totalBytesTransferred;
+        if (streamSize > 0 && totalBytesTransferred >= streamSize) {
+            transfer.complete();
         }
     }
 
-    private String generateIndeterminateBar() {
-        final StringBuilder sb = new StringBuilder("\r[");
-        if (spinnerIndex < INDETERMINATE_INDICATOR.length()) {
-            sb.append(INDETERMINATE_INDICATOR);
-            for (int i = INDETERMINATE_INDICATOR.length(); i < SIZE_OF_PROGRESS_BAR; i++) {
-                sb.append(' ');
-            }
+    /**
+     * Call when the transfer is over, needed when its size was unknown
+     *
+     * @param success true if the transfer succeeded
+     */
+    public void finish(boolean success) {
+        if (transfer == null) {
+            return;
+        }
+        if (success) {
+            transfer.complete();
         } else {
-            final int limit = Math.min(spinnerIndex, SIZE_OF_PROGRESS_BAR - INDETERMINATE_INDICATOR.length());
-            for (int i = 0; i < limit; i++) {
-                sb.append(' ');
-            }
-            sb.append(INDETERMINATE_INDICATOR);
-            for (int i = limit + INDETERMINATE_INDICATOR.length(); i < SIZE_OF_PROGRESS_BAR; i++) {
-                sb.append(' ');
-            }
+            transfer.fail();
         }
-        sb.append("] Unknown size");
-        return sb.toString();
     }
 }
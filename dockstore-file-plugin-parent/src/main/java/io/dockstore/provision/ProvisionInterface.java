@@ -16,6 +16,7 @@
 package io.dockstore.provision;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -42,6 +43,71 @@ public interface ProvisionInterface extends ExtensionPoint {
      */
     boolean downloadFrom(String sourcePath, Path destination);
 
+    /**
+     * Optional method that can be overridden.
+     * Whether this plugin can continue an interrupted download with {@link #resumeDownloadFrom(String, Path, long)}.
+     * When true, downloads are written to a partial file next to their destination that is kept across retries
+     * and re-runs until the download completes.
+     * @param sourcePath a string indicating a source for a file
+     * @return true if resumeDownloadFrom is implemented for this source
+     */
+    default boolean supportsResume(String sourcePath) {
+        return false;
+    }
+
+    /**
+     * Optional method that can be overridden, see {@link #supportsResume(String)}.
+     * Continue copying from a particular file source into a destination that already holds the first offset bytes,
+     * for example with an HTTP Range request. Implementations that cannot resume this particular source may rewrite
+     * the destination from the beginning instead.
+     * @param sourcePath a string indicating a source for a file
+     * @param destination a local file path holding the first offset bytes of the file, where the rest should be appended
+     * @param offset the number of bytes already downloaded
+     * @return true on success
+     */
+    default boolean resumeDownloadFrom(String sourcePath, Path destination, long offset) {
+        return downloadFrom(sourcePath, destination);
+    }
+
+    /**
+     * Optional method that can be overridden.
+     * Look up a checksum that the file source already knows about, for example one stored in object metadata, so that
+     * downloads can be verified when the parameter file does not provide a checksum.
+     * @param sourcePath a string indicating a source for a file
+     * @return a checksum in the form algorithm$hex (md5, sha1, sha256, sha512 or crc32c), empty if unknown
+     */
+    default Optional<String> findChecksum(String sourcePath) {
+        return Optional.empty();
+    }
+
+    /**
+     * Optional method that can be overridden.
+     * Called before downloading a set of files handled by this plugin, can be used to look up objects or open connections in bulk.
+     * @param sourcePaths all sources that will be downloaded
+     * @param destinations all local file paths they will be downloaded to
+     * @return true on success, false to have each file downloaded on its own with {@link #downloadFrom(String, Path)}
+     */
+    default boolean prepareDownloadSet(List<String> sourcePaths, List<Path> destinations) {
+        return true;
+    }
+
+    /**
+     * Optional method that can be overridden.
+     * Handle copying a batch of files at once, for example by pipelining requests over shared connections.
+     * A large set of files may be split into several batches that are downloaded concurrently.
+     * Files that are reported as failed are retried one at a time with {@link #downloadFrom(String, Path)}.
+     * @param sourcePaths sources for each file in the batch
+     * @param destinations local file paths where each file should be downloaded to
+     * @return whether each file was downloaded successfully, in the same order as sourcePaths
+     */
+    default List<Boolean> downloadFromSet(List<String> sourcePaths, List<Path> destinations) {
+        List<Boolean> results = new ArrayList<>();
+        for (int i = 0; i < sourcePaths.size(); i++) {
+            results.add(downloadFrom(sourcePaths.get(i), destinations.get(i)));
+        }
+        return results;
+    }
+
     /**
      * Handle copying to a particular file source
      * @param destPath a string indicating a destination for a file, for example
@@ -0,0 +1,305 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.provision;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects progress from every file transfer in the process, whether it is run by Dockstore itself or by a plugin.
+ *
+ * <p>
+ * Transfers only add to their own {@link LongAdder}, so reporting progress never takes a lock or writes to the console.
+ * A single renderer thread samples all transfers every {@value #SAMPLE_INTERVAL_MILLIS} ms while any are running and prints
+ * one aggregate progress view, or JSON lines when machine-readable output is requested (e.g. <code>--script</code>).
+ * </p>
+ *
+ * <p>
+ * Dockstore calls plugins inside a {@link Scope}. Transfers a plugin starts while handling the call, including through a
+ * {@link ProgressPrinter} created during the call, are ended with the scope if the plugin did not end them itself, so that
+ * transfers of unknown size or that failed part way do not stay active forever.
+ * </p>
+ */
+public final class TransferEventBus {
+
+    static final long SAMPLE_INTERVAL_MILLIS = 250;
+    private static final TransferEventBus INSTANCE = new TransferEventBus();
+    private static final ThreadLocal<Scope> CURRENT_SCOPE = new ThreadLocal<>();
+
+    private final Set<Transfer> active = ConcurrentHashMap.newKeySet();
+    private final Queue<Transfer> finished = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "transfer-progress");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final TransferProgressRenderer renderer = new TransferProgressRenderer();
+    private ScheduledFuture<?> sampling;
+
+    private TransferEventBus() {
+        // singleton
+    }
+
+    /**
+     * @return the bus shared by Dockstore and all plugins
+     */
+    public static TransferEventBus getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param json true to print progress as one JSON object per line instead of a progress bar
+     */
+    public void setJsonOutput(boolean json) {
+        renderer.setJson(json);
+    }
+
+    /**
+     * Register a transfer that is about to start.
+     *
+     * @param name what is being transferred, usually the remote path
+     * @param size the number of bytes that will be transferred, zero or less if unknown
+     * @return the transfer to report progress on, which must be completed or failed when it ends
+     */
+    public Transfer start(String name, long size) {
+        return start(name, size, CURRENT_SCOPE.get());
+    }
+
+    /**
+     * @param scope the scope that ends the transfer if nothing else does, may be null
+     */
+    Transfer start(String name, long size, Scope scope) {
+        Transfer transfer = new Transfer(this, name, size);
+        active.add(transfer);
+        if (scope != null) {
+            scope.add(transfer);
+        }
+        ensureSampling();
+        return transfer;
+    }
+
+    /**
+     * Opens a scope on the current thread, which lasts until {@link Scope#end(boolean)} is called on the same thread.
+     *
+     * @return the scope
+     */
+    public Scope openScope() {
+        Scope scope = new Scope(CURRENT_SCOPE.get());
+        CURRENT_SCOPE.set(scope);
+        return scope;
+    }
+
+    /**
+     * @return the innermost scope open on the current thread, null if there is none
+     */
+    static Scope currentScope() {
+        return CURRENT_SCOPE.get();
+    }
+
+    /**
+     * @return the number of transfers that have neither completed nor failed
+     */
+    int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * @return true while the renderer thread samples the transfers
+     */
+    synchronized boolean isSampling() {
+        return sampling != null;
+    }
+
+    /**
+     * Render whatever has not been rendered yet, for example before printing something else.
+     */
+    public void flush() {
+        try {
+            sampler.submit(this::sample).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void finished(Transfer transfer) {
+        finished.add(transfer);
+        active.remove(transfer);
+    }
+
+    private synchronized void ensureSampling() {
+        if (sampling == null) {
+            sampling = sampler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL_MILLIS, SAMPLE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs on the renderer thread only.
+     */
+    private void sample() {
+        List<Transfer> done = new ArrayList<>();
+        for (Transfer transfer = finished.poll(); transfer != null; transfer = finished.poll()) {
+            done.add(transfer);
+        }
+        List<Transfer> running = new ArrayList<>();
+        for (Transfer transfer : active) {
+            // a transfer that ended since it was polled above is rendered with the next sample
+            if (!transfer.ended.get()) {
+                running.add(transfer);
+            }
+        }
+        renderer.render(running, done, System.nanoTime());
+        stopIfIdle();
+    }
+
+    private synchronized void stopIfIdle() {
+        if (active.isEmpty() && finished.isEmpty() && sampling != null) {
+            sampling.cancel(false);
+            sampling = null;
+            renderer.reset();
+        }
+    }
+
+    /**
+     * The transfers started for one call into a plugin.
+     */
+    public static final class Scope {
+        private final Scope parent;
+        private final Set<Transfer> transfers = ConcurrentHashMap.newKeySet();
+
+        private Scope(Scope parent) {
+            this.parent = parent;
+        }
+
+        private void add(Transfer transfer) {
+            transfers.add(transfer);
+        }
+
+        /**
+         * Ends every transfer of the scope that is still active, and restores the scope that was open before this one.
+         *
+         * @param success true to complete the transfers, false to fail them
+         */
+        public void end(boolean success) {
+            for (Transfer transfer : transfers) {
+                transfer.end(!success);
+            }
+            transfers.clear();
+            if (CURRENT_SCOPE.get() == this) {
+                if (parent == null) {
+                    CURRENT_SCOPE.remove();
+                } else {
+                    CURRENT_SCOPE.set(parent);
+                }
+            }
+        }
+    }
+
+    /**
+     * A single file transfer. Methods may be called from any thread.
+     */
+    public static final class Transfer {
+        private final TransferEventBus bus;
+        private final String name;
+        private final long startNanos = System.nanoTime();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final AtomicBoolean ended = new AtomicBoolean();
+        private volatile long size;
+        private volatile boolean failed;
+        private volatile long endNanos;
+
+        private Transfer(TransferEventBus bus, String name, long size) {
+            this.bus = bus;
+            this.name = name;
+            this.size = size;
+        }
+
+        /**
+         * @param transferred the number of bytes transferred since the last call
+         */
+        public void add(long transferred) {
+            bytes.add(transferred);
+        }
+
+        /**
+         * @param alreadyTransferred bytes that an earlier attempt transferred, which count towards progress but not throughput
+         */
+        public void skip(long alreadyTransferred) {
+            bytes.add(alreadyTransferred);
+            skipped.add(alreadyTransferred);
+        }
+
+        /**
+         * @param totalSize the number of bytes that will be transferred, if it was not known at the start
+         */
+        public void setSize(long totalSize) {
+            this.size = totalSize;
+        }
+
+        public void complete() {
+            end(false);
+        }
+
+        public void fail() {
+            end(true);
+        }
+
+        private void end(boolean failure) {
+            if (ended.compareAndSet(false, true)) {
+                this.failed = failure;
+                this.endNanos = System.nanoTime();
+                bus.finished(this);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        long getTransferredBytes() {
+            return bytes.sum() - skipped.sum();
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isFailed() {
+            return failed;
+        }
+
+        long getDurationNanos() {
+            return (ended.get() ? endNanos : System.nanoTime()) - startNanos;
+        }
+    }
+}
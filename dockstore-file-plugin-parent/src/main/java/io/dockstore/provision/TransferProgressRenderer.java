@@ -0,0 +1,234 @@
+/*
+ *    Copyright 2023 OICR and UCSC
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+package io.dockstore.provision;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turns samples of the {@link TransferEventBus} into an aggregate progress bar or JSON lines.
+ * Only ever called from the bus's renderer thread.
+ */
+class TransferProgressRenderer {
+
+    private static final int SIZE_OF_PROGRESS_BAR = 50;
+    private static final int PERCENT = 100;
+    private static final int BYTES_PER_UNIT = 1024;
+    private static final String[] UNITS = {"B", "KiB", "MiB", "GiB", "TiB", "PiB"};
+    private static final double RATE_SMOOTHING = 0.3;
+    private static final long JSON_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final PrintStream out;
+    private volatile boolean json;
+    private int completedFiles;
+    private int failedFiles;
+    private long finishedBytes;
+    private long finishedTransferredBytes;
+    private long lastTransferredBytes;
+    private long lastSampleNanos;
+    private long lastJsonNanos;
+    private double bytesPerSecond;
+    private int lastLineLength;
+
+    TransferProgressRenderer() {
+        this(null);
+    }
+
+    /**
+     * @param out where progress is printed, null for whatever System.out is at the time
+     */
+    TransferProgressRenderer(PrintStream out) {
+        this.out = out;
+    }
+
+    void setJson(boolean jsonOutput) {
+        this.json = jsonOutput;
+    }
+
+    void render(List<TransferEventBus.Transfer> active, List<TransferEventBus.Transfer> done, long nowNanos) {
+        for (TransferEventBus.Transfer transfer : done) {
+            if (transfer.isFailed()) {
+                failedFiles++;
+            } else {
+                completedFiles++;
+            }
+            finishedBytes += transfer.getBytes();
+            finishedTransferredBytes += transfer.getTransferredBytes();
+            renderFinished(transfer);
+        }
+
+        long bytes = finishedBytes;
+        long transferredBytes = finishedTransferredBytes;
+        long totalBytes = finishedBytes;
+        for (TransferEventBus.Transfer transfer : active) {
+            bytes += transfer.getBytes();
+            transferredBytes += transfer.getTransferredBytes();
+            totalBytes = totalBytes < 0 || transfer.getSize() <= 0 ? -1 : totalBytes + transfer.getSize();
+        }
+        if (lastSampleNanos != 0 && nowNanos > lastSampleNanos) {
+            double rate = (transferredBytes - lastTransferredBytes) * NANOS_PER_SECOND / (nowNanos - lastSampleNanos);
+            bytesPerSecond = bytesPerSecond == 0 ? rate : RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * bytesPerSecond;
+        }
+        lastSampleNanos = nowNanos;
+        lastTransferredBytes = transferredBytes;
+
+        final int files = active.size() + completedFiles + failedFiles;
+        if (json) {
+            if (!active.isEmpty() && nowNanos - lastJsonNanos >= JSON_INTERVAL_NANOS) {
+                lastJsonNanos = nowNanos;
+                out().println(progressJson(active, files, bytes, totalBytes));
+            }
+        } else if (System.console() != null && !active.isEmpty()) {
+            printLine(progressBar(files, bytes, totalBytes), false);
+        }
+    }
+
+    /**
+     * Called once nothing is being transferred anymore, so that the next set of transfers starts from zero.
+     */
+    void reset() {
+        if (lastLineLength > 0) {
+            out().println();
+        }
+        completedFiles = 0;
+        failedFiles = 0;
+        finishedBytes = 0;
+        finishedTransferredBytes = 0;
+        lastTransferredBytes = 0;
+        lastSampleNanos = 0;
+        lastJsonNanos = 0;
+        bytesPerSecond = 0;
+        lastLineLength = 0;
+    }
+
+    private void renderFinished(TransferEventBus.Transfer transfer) {
+        final double seconds = transfer.getDurationNanos() / NANOS_PER_SECOND;
+        if (json) {
+            out().println("{\"event\":\"" + (transfer.isFailed() ? "failed" : "complete") + "\",\"name\":" + quote(transfer.getName())
+                + ",\"bytes\":" + transfer.getBytes() + ",\"size\":" + transfer.getSize() + ",\"seconds\":" + String.format(Locale.ROOT, "%.3f", seconds)
+                + "}");
+        } else if (transfer.isFailed()) {
+            printLine("Failed to transfer " + transfer.getName() + " after " + formatBytes(transfer.getBytes()), true);
+        } else {
+            final double rate = seconds > 0 ? transfer.getTransferredBytes() / seconds : 0;
+            printLine("Transferred " + transfer.getName() + " (" + formatBytes(transfer.getBytes()) + ") in "
+                + String.format(Locale.ROOT, "%.1f", seconds) + " s at " + formatBytes((long)rate) + "/s", true);
+        }
+    }
+
+    /**
+     * Progress bars are redrawn in place, other lines are printed above the bar.
+     */
+    private void printLine(String line, boolean permanent) {
+        final StringBuilder builder = new StringBuilder();
+        if (lastLineLength > 0) {
+            builder.append('\r');
+        }
+        builder.append(line);
+        for (int i = line.length(); i < lastLineLength; i++) {
+            builder.append(' ');
+        }
+        if (permanent) {
+            out().println(builder);
+            lastLineLength = 0;
+        } else {
+            out().print(builder);
+            out().flush();
+            lastLineLength = line.length();
+        }
+    }
+
+    private String progressBar(int files, long bytes, long totalBytes) {
+        final StringBuilder builder = new StringBuilder("[");
+        final int filled = totalBytes > 0 ? (int)Math.min(SIZE_OF_PROGRESS_BAR, bytes * SIZE_OF_PROGRESS_BAR / totalBytes) : 0;
+        builder.append("#".repeat(filled)).append(" ".repeat(SIZE_OF_PROGRESS_BAR - filled)).append("] ");
+        if (totalBytes > 0) {
+            builder.append(Math.min(PERCENT, bytes * PERCENT / totalBytes)).append("% ");
+        }
+        builder.append(completedFiles).append(" of ").append(files).append(" files, ").append(formatBytes(bytes));
+        if (totalBytes > 0) {
+            builder.append(" of ").append(formatBytes(totalBytes));
+        }
+        builder.append(", ").append(formatBytes((long)bytesPerSecond)).append("/s");
+        if (failedFiles > 0) {
+            builder.append(", ").append(failedFiles).append(" failed");
+        }
+        return builder.toString();
+    }
+
+    private String progressJson(List<TransferEventBus.Transfer> active, int files, long bytes, long totalBytes) {
+        final StringBuilder builder = new StringBuilder("{\"event\":\"progress\"");
+        builder.append(",\"files\":").append(files).append(",\"completedFiles\":").append(completedFiles).append(",\"failedFiles\":").append(failedFiles)
+            .append(",\"bytes\":").append(bytes).append(",\"totalBytes\":").append(totalBytes).append(",\"bytesPerSecond\":").append((long)bytesPerSecond)
+            .append(",\"transfers\":[");
+        for (int i = 0; i < active.size(); i++) {
+            TransferEventBus.Transfer transfer = active.get(i);
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"name\":").append(quote(transfer.getName())).append(",\"bytes\":").append(transfer.getBytes()).append(",\"size\":")
+                .append(transfer.getSize()).append('}');
+        }
+        return builder.append("]}").toString();
+    }
+
+    private PrintStream out() {
+        return out != null ? out : System.out;
+    }
+
+    static String formatBytes(long bytes) {
+        double value = bytes;
+        int unit = 0;
+        while (value >= BYTES_PER_UNIT && unit < UNITS.length - 1) {
+            value /= BYTES_PER_UNIT;
+            unit++;
+        }
+        return unit == 0 ? bytes + " B" : String.format(Locale.ROOT, "%.1f %s", value, UNITS[unit]);
+    }
+
+    static String quote(String value) {
+        final StringBuilder builder = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            switch (c) {
+            case '"':
+                builder.append("\\\"");
+                break;
+            case '\\':
+                builder.append("\\\\");
+                break;
+            case '\n':
+                builder.append("\\n");
+                break;
+            case '\r':
+                builder.append("\\r");
+                break;
+            case '\t':
+                builder.append("\\t");
+                break;
+            default:
+                if (c < ' ') {
+                    builder.append(String.format("\\u%04x", (int)c));
+                } else {
+                    builder.append(c);
+                }
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -0,0 +1,77 @@
+package io.dockstore.provision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class TransferEventBusTest {
+
+    private final TransferEventBus bus = TransferEventBus.getInstance();
+
+    @AfterEach
+    void drain() {
+        bus.flush();
+    }
+
+    @Test
+    void testScopeEndsTransfersOfUnknownSize() throws Exception {
+        final int before = bus.getActiveCount();
+        TransferEventBus.Scope scope = bus.openScope();
+        ProgressPrinter printer = new ProgressPrinter(1, "s3://bucket/unknown-size");
+        // plugins often report progress from their own threads
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> printer.handleProgress(1024, -1)).get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(before + 1, bus.getActiveCount());
+        assertTrue(bus.isSampling());
+
+        scope.end(true);
+        assertEquals(before, bus.getActiveCount(), "The transfer should end with the call into the plugin");
+        bus.flush();
+        assertFalse(bus.isSampling(), "Sampling should stop once nothing is being transferred");
+    }
+
+    @Test
+    void testFailedScopeFailsTransfers() {
+        TransferEventBus.Scope scope = bus.openScope();
+        TransferEventBus.Transfer transfer = bus.start("s3://bucket/failed", 100);
+        transfer.add(10);
+        scope.end(false);
+        assertTrue(transfer.isFailed());
+        assertEquals(10, transfer.getBytes());
+    }
+
+    @Test
+    void testTransfersEndedByThePluginAreKept() {
+        TransferEventBus.Scope scope = bus.openScope();
+        ProgressPrinter printer = new ProgressPrinter(1, "s3://bucket/known-size");
+        printer.handleProgress(5, 10);
+        printer.handleProgress(10, 10);
+        TransferEventBus.Transfer failed = bus.start("s3://bucket/other", 10);
+        failed.fail();
+        scope.end(true);
+        assertTrue(failed.isFailed(), "Ending the scope should not change how a transfer ended");
+    }
+
+    @Test
+    void testScopesNest() {
+        assertNull(TransferEventBus.currentScope());
+        TransferEventBus.Scope outer = bus.openScope();
+        TransferEventBus.Scope inner = bus.openScope();
+        assertSame(inner, TransferEventBus.currentScope());
+        inner.end(true);
+        assertSame(outer, TransferEventBus.currentScope());
+        outer.end(true);
+        assertNull(TransferEventBus.currentScope());
+    }
+}
@@ -0,0 +1,56 @@
+package io.dockstore.provision;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class TransferProgressRendererTest {
+
+    @Test
+    void testFormatBytes() {
+        assertEquals("512 B", TransferProgressRenderer.formatBytes(512));
+        assertEquals("1.5 KiB", TransferProgressRenderer.formatBytes(1536));
+        assertEquals("2.0 GiB", TransferProgressRenderer.formatBytes(2L * 1024 * 1024 * 1024));
+    }
+
+    @Test
+    void testQuote() {
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", TransferProgressRenderer.quote("a\"b\\c\nd\u0001"));
+    }
+
+    @Test
+    void testJsonEvents() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        TransferProgressRenderer renderer = new TransferProgressRenderer(new PrintStream(output, true, StandardCharsets.UTF_8));
+        renderer.setJson(true);
+        TransferEventBus bus = TransferEventBus.getInstance();
+        TransferEventBus.Transfer known = bus.start("known", 100);
+        TransferEventBus.Transfer unknown = bus.start("unknown", -1);
+        TransferEventBus.Transfer done = bus.start("done", 10);
+        known.add(40);
+        unknown.add(7);
+        done.add(10);
+        done.complete();
+        try {
+            final long now = System.nanoTime();
+            renderer.render(List.of(known), List.of(done), now);
+            renderer.render(List.of(known, unknown), List.of(), now + TimeUnit.SECONDS.toNanos(1));
+        } finally {
+            known.complete();
+            unknown.complete();
+            bus.flush();
+        }
+
+        String[] lines = output.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].startsWith("{\"event\":\"complete\",\"name\":\"done\",\"bytes\":10,\"size\":10"));
+        assertTrue(lines[1].startsWith("{\"event\":\"progress\",\"files\":2,\"completedFiles\":1,\"failedFiles\":0,\"bytes\":50,\"totalBytes\":110"));
+        assertTrue(lines[2].contains("\"bytes\":57,\"totalBytes\":-1"), "An unknown size makes the total unknown");
+    }
+}